@@ -0,0 +1,617 @@
+package com.m0les.embedded;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The pooled red-black engine shared by {@link Tree}, {@link LongTree} and the primitive-valued Trees. Everything
+ * that only rearranges Nodes (rebalancing, removal, navigation and recycling) is done here, once. Each subclass
+ * supplies its Node class, holding a key and value of its own types, along with the key comparisons of its insert
+ * and find, so that those compare primitive fields directly.</p>
+ * 
+ * @note This is package-private: callers only ever see the concrete Trees.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <N> The class of Nodes in the Tree
+ * @param <L> The class of Links through which the Nodes are pooled
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+abstract class AbstractTree<N extends AbstractTree.AbstractNode<N>, L> implements Recycler, Metered {
+	/**
+	 * Create a Tree drawing its Nodes from a pool.
+	 * 
+	 * @param pool
+	 *            The pool of Nodes to fill the tree with (Must not be null).
+	 * @throws NullPointerException
+	 *             If the pool is null.
+	 */
+	AbstractTree(Allocator<L> pool) throws NullPointerException {
+		if (null == pool) {
+			throw NULL_POOL;
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * The complete Node-removal operation, including all cases of the
+	 * procedure.
+	 * 
+	 * @note This method has a high McCabe cyclomatic complexity. This is a
+	 *       necessary downside to the "high efficiency" nature of this
+	 *       implementation. Using the fully monolithic implementation saves on
+	 *       the overhead of stack-frame management.
+	 * 
+	 * @param node
+	 *            The Node to remove from this Tree
+	 */
+	public synchronized void remove(N node) {
+		/* If the Node has two non-null children, then swap values with the
+		 * greatest element in its lesser-branch and remove that former
+		 * "greatest lesser" node (which must have < 2 non-null children).
+		 */
+		if (null != node.greater && null != node.lesser) {
+			N newNode = node.lesser.findGreatest();
+			node.copy(newNode);
+			node = newNode;
+		}
+		// Node now has 0 or 1 non-null children.
+		N parent = node.parent;
+		N child = null != node.lesser ? node.lesser : node.greater;
+		if (node == head) {
+			head = child;
+			if (null != head) {
+				head.parent = null;
+				head.prime = false;
+			}
+			discard(node);
+			return;
+		}
+		if (parent.lesser == node) {
+			parent.lesser = child;
+		} else {
+			parent.greater = child;
+		}
+		if (null != child) {
+			child.parent = parent;
+		}
+		if (!node.prime) {
+			discard(node);
+			if (isPrime(child)) {
+				child.prime = false;
+			} else {
+				node = child;
+				// Delete case 1
+				while (null != parent) {
+					boolean left = parent.lesser == node;
+					// Delete case 2
+					N sibling;
+					if (left) {
+						sibling = parent.greater;
+					} else {
+						sibling = parent.lesser;
+					}
+					if (isPrime(sibling)) {
+						parent.prime = true;
+						sibling.prime = false;
+						if (left) {
+							rotate(parent, DIR_LEFT);
+							sibling = parent.greater;
+						} else {
+							rotate(parent, DIR_RIGHT);
+							sibling = parent.lesser;
+						}
+					}
+					// Delete case 3
+					if (!(isPrime(sibling.lesser) || isPrime(sibling.greater))) {
+						sibling.prime = true;
+						// Delete case 4
+						if (parent.prime) {
+							parent.prime = false;
+							return;
+						} else {
+							node = parent;
+							parent = node.parent;
+						}
+					} else {
+						// Delete case 5
+						if (left && isPrime(sibling.lesser)) {
+							sibling.prime = true;
+							sibling.lesser.prime = false;
+							rotate(sibling, DIR_RIGHT);
+							sibling = parent.greater;
+						} else if (!left && isPrime(sibling.greater)) {
+							sibling.prime = true;
+							sibling.greater.prime = false;
+							rotate(sibling, DIR_LEFT);
+							sibling = parent.lesser;
+						}
+						// Delete case 6
+						sibling.prime = parent.prime;
+						parent.prime = false;
+						if (left) {
+							if (sibling.greater != null) {
+								sibling.greater.prime = false;
+							}
+							rotate(parent, DIR_LEFT);
+						} else {
+							if (sibling.lesser != null) {
+								sibling.lesser.prime = false;
+							}
+							rotate(parent, DIR_RIGHT);
+						}
+						return;
+					}
+				}
+			}
+		} else {
+			// A prime Node with at most one child has none, so nothing needs rebalancing
+			discard(node);
+		}
+	}
+
+	/**
+	 * Get the first value (lowest key) in the Tree.
+	 * 
+	 * @return The lowest-keyed Node in this Tree
+	 */
+	public synchronized N getFirst() {
+		if (null == head) {
+			return null;
+		}
+		return head.findLeast();
+	}
+
+	/**
+	 * Get the last value (highest key) in the Tree.
+	 * 
+	 * @return The highest-keyed Node in this Tree
+	 */
+	public synchronized N getLast() {
+		if (null == head) {
+			return null;
+		}
+		return head.findGreatest();
+	}
+
+	/**
+	 * Remove every Node in this Tree and recycle them. After this call, the
+	 * tree shall be empty and ready to add new entries. Any Nodes detached
+	 * earlier by {@link #detachAll()} are recycled too.
+	 */
+	public synchronized void removeAll() {
+		detachAll();
+		while (recycleDetached(Integer.MAX_VALUE)) {
+			// Keep going, however large the Tree was
+		}
+	}
+
+	/**
+	 * Remove every Node in this Tree without recycling them yet. The Tree is
+	 * empty and ready to add new entries straight away, and the detached Nodes
+	 * are recycled by later calls to {@link #recycleDetached(int)}.
+	 * 
+	 * @note Detached Nodes keep their values (and count against the pool)
+	 *       until they're recycled. Detaching again before the last lot have
+	 *       all been recycled walks down the greater side of the new lot to
+	 *       join them.
+	 */
+	public synchronized void detachAll() {
+		if (null == head) {
+			return;
+		}
+		if (null != detached) {
+			head.findGreatest().greater = detached;
+		}
+		detached = head;
+		head = null;
+	}
+
+	/**
+	 * Do up-to maxSteps steps of recycling the Nodes detached by
+	 * {@link #detachAll()}. Each step either recycles a Node or makes one
+	 * rotation, and recycling n Nodes takes fewer than 2n steps. Nothing is
+	 * recursive, so however deep the detached tree is the stack isn't.
+	 * 
+	 * @param maxSteps
+	 *            The most steps to take while holding the monitor
+	 * @return True if there are still detached Nodes to recycle, false if
+	 *         there are none left.
+	 */
+	public synchronized boolean recycleDetached(int maxSteps) {
+		N node = detached;
+		while (null != node && 0 < maxSteps--) {
+			final N lesser = node.lesser;
+			if (null == lesser) {
+				final N next = node.greater;
+				discard(node);
+				node = next;
+			} else {
+				// Rotate right, so the Nodes left to recycle become a chain through greater
+				node.lesser = lesser.greater;
+				lesser.greater = node;
+				node = lesser;
+			}
+		}
+		detached = node;
+		return null != node;
+	}
+
+	/**
+	 * Recycle the Nodes detached by {@link #detachAll()} until there are none
+	 * left or the time budget is spent. The monitor is taken and released once
+	 * per small batch of steps, so other callers are never held up by more
+	 * than one batch.
+	 * 
+	 * @param budget
+	 *            The time to spend recycling (at least one batch is done)
+	 * @param unit
+	 *            The unit of budget
+	 * @return True if there are still detached Nodes to recycle, false if
+	 *         there are none left.
+	 */
+	public boolean recycleDetached(long budget, TimeUnit unit) {
+		final long deadline = System.nanoTime() + unit.toNanos(budget);
+		while (recycleDetached(RECYCLE_BATCH)) {
+			if (0 <= System.nanoTime() - deadline) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the Node with the next-lowest key related to this Node.
+	 * 
+	 * @param node
+	 *            The Node to find the Node with the next lowest key for
+	 * @return The Node with the next lowest key below the nominated Node or
+	 *         null if there is no lower-keyed Node.
+	 */
+	public synchronized N getPrev(N node) {
+		N candidate = node.lesser;
+		if (null != candidate) {
+			return candidate.findGreatest();
+		}
+		while (null != (candidate = node.parent)) {
+			if (node == candidate.greater) {
+				return candidate;
+			}
+			node = candidate;
+		}
+		return null;
+	}
+
+	/**
+	 * Find the Node with the next-highest key related to this Node.
+	 * 
+	 * @param node
+	 *            The Node to find the Node with the next highest key for
+	 * @return The Node with the next highest key above the nominated Node or
+	 *         null if there is no higher-keyed Node.
+	 */
+	public synchronized N getNext(N node) {
+		N candidate = node.greater;
+		if (null != candidate) {
+			return candidate.findLeast();
+		}
+		while (null != (candidate = node.parent)) {
+			if (node == candidate.lesser) {
+				return candidate;
+			}
+			node = candidate;
+		}
+		return null;
+	}
+
+	/**
+	 * @see Recycler
+	 */
+	@Override
+	public void discardGarbage() {
+		pool.discardGarbage();
+	}
+
+	/**
+	 * @see Recycler
+	 */
+	@Override
+	public void discardGarbage(int maxRemaining) {
+		pool.discardGarbage(maxRemaining);
+	}
+
+	/**
+	 * Take a snapshot of the counters of this Tree's node pool (which may be
+	 * shared with other Trees).
+	 * 
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public void getStatistics(Statistics into) {
+		pool.getStatistics(into);
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public void resetPeak() {
+		pool.resetPeak();
+	}
+
+	/**
+	 * The links and colouring of a node within a tree. Subclasses add the key
+	 * and value.
+	 * 
+	 * @param <N>
+	 *            The subclass itself
+	 */
+	abstract static class AbstractNode<N extends AbstractNode<N>> {
+		/**
+		 * Copy another Node's key and value into this one, as removal does
+		 * when it swaps a Node with its in-order predecessor.
+		 * 
+		 * @param from
+		 *            The Node to copy the key and value of
+		 */
+		abstract void copy(N from);
+
+		/**
+		 * Helper method to pretty-format the key/prime/value components of a
+		 * Node
+		 * 
+		 * @note This method composes Strings and thus generates garbage, use in
+		 *       embedded applications should be avoided generally, barring
+		 *       exceptional situations.
+		 * 
+		 * @return The String representing the core properties of this Node
+		 */
+		abstract String contentString();
+
+		/**
+		 * Generate a human-readable representation of this Node instance.
+		 * 
+		 * @note This method composes Strings and thus generates garbage, use in
+		 *       embedded applications should be avoided generally, barring
+		 *       exceptional situations.
+		 * @see #contentString()
+		 */
+		@Override
+		public String toString() {
+			return "Node{" + contentString() + "}";
+		}
+
+		/**
+		 * Find the Node with the greatest key from this Node downward. Usually
+		 * this will be the last Node found when iterating down the greater
+		 * child branch or this Node if the branch is null.
+		 * 
+		 * @return The Node with the greatest key from this Node downward.
+		 */
+		@SuppressWarnings("unchecked")
+		final N findGreatest() {
+			N node = (N) this;
+			N next = greater;
+			while (null != next) {
+				node = next;
+				next = node.greater;
+			}
+			return node;
+		}
+
+		/**
+		 * Find the Node with the lowest key from this Node downward. Usually
+		 * this will be the last Node found when iterating down the lesser child
+		 * branch or this Node if the branch is null.
+		 * 
+		 * @return The Node with the lowest key from this Node downward.
+		 */
+		@SuppressWarnings("unchecked")
+		final N findLeast() {
+			N node = (N) this;
+			N next = lesser;
+			while (null != next) {
+				node = next;
+				next = node.lesser;
+			}
+			return node;
+		}
+
+		boolean prime; // => "RED"?
+		N parent = null;
+		N lesser = null;
+		N greater = null;
+	}
+
+	/**
+	 * Link a new (prime) Node into the Tree below parent and rebalance it.
+	 * This is the part of an insertion that doesn't depend on the type of
+	 * key: the subclass finds parent by comparing keys, while holding the
+	 * monitor.
+	 * 
+	 * @param node
+	 *            The new Node
+	 * @param parent
+	 *            The Node to link it below, or null if the Tree is empty
+	 * @param lesser
+	 *            True to link it as the lesser child of parent, false for the
+	 *            greater
+	 */
+	final void attach(N node, N parent, boolean lesser) {
+		if (null == parent) {
+			// Case 1
+			node.parent = null;
+			node.prime = false;
+			head = node;
+			return;
+		}
+		node.parent = parent;
+		if (lesser) {
+			parent.lesser = node;
+		} else {
+			parent.greater = node;
+		}
+
+		// colouring
+		while (true) {
+			if (null == parent) {
+				node.prime = false;
+				return;
+			}
+			if (!parent.prime) // Case 2
+			{
+				return;
+			}
+
+			// Case 3
+			final N grandparent = parent.parent;
+			final N uncle;
+			if (grandparent.lesser == parent) {
+				uncle = grandparent.greater;
+			} else {
+				uncle = grandparent.lesser;
+			}
+			if (parent.prime && isPrime(uncle)) {
+				parent.prime = false;
+				uncle.prime = false;
+				grandparent.prime = true;
+				parent = grandparent.parent;
+				// NOTE: ( uncle != null ) == ( grandparent != null )
+				node = grandparent;
+			} else // Case 4
+			{
+				if (parent.greater == node && grandparent.lesser == parent) {
+					rotate(parent, DIR_LEFT);
+					node = parent;
+					parent = node.parent;
+				} else if (parent.lesser == node
+						&& grandparent.greater == parent) {
+					rotate(parent, DIR_RIGHT);
+					node = parent;
+					parent = node.parent;
+				}
+				// Case 5
+				if (parent == grandparent.lesser) {
+					rotate(grandparent, DIR_RIGHT);
+				} else {
+					rotate(grandparent, DIR_LEFT);
+				}
+				grandparent.prime = true; // grandparent cannot be null as
+										  // that would mean !parent.prime,
+										  // caught in case 2.
+				parent.prime = false;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Pool a Node for reuse. Its contents (Especially Object references) are
+	 * cleared by the pool's factory, or by a MagazinePool or ChildPool in
+	 * front of the pool on its behalf.
+	 * 
+	 * @param node
+	 *            The node to pool.
+	 * @see #removeAll()
+	 * @see #recycleDetached(int)
+	 */
+	abstract void discard(N node);
+
+	/**
+	 * Helper method to pretty-format the structure and nodes of a Tree
+	 * 
+	 * @note This method composes Strings and thus generates garbage, use in
+	 *       embedded applications should be avoided generally, barring
+	 *       exceptional situations.
+	 * 
+	 * @return The String representing the core values of this Tree
+	 * @see #toString()
+	 */
+	final String nodeString(N node) {
+		if (null == node) {
+			return ".";
+		}
+		String result = "{";
+		result += nodeString(node.lesser);
+		result += "|" + node.contentString() + "|";
+		result += nodeString(node.greater);
+		return result + "}";
+	}
+
+	/**
+	 * Perform a tree-rotation about a nominated node in a nominated direction.
+	 * 
+	 * @param node
+	 *            The Node about which to rotate.
+	 * @param left
+	 *            One of DIR_LEFT (For a rotate-left) or DIR_RIGHT (For a
+	 *            rotate-right).
+	 */
+	private void rotate(N node, boolean left) {
+		N parent = node.parent;
+		N newParent;
+		N newChild;
+		if (left) {
+			newParent = node.greater;
+			newChild = node.greater = newParent.lesser;
+			newParent.lesser = node;
+		} else // right
+		{
+			newParent = node.lesser;
+			newChild = node.lesser = newParent.greater;
+			newParent.greater = node;
+		}
+		node.parent = newParent;
+		newParent.parent = parent;
+		if (null != newChild) {
+			newChild.parent = node;
+		}
+		if (null == parent) {
+			head = newParent;
+		} else {
+			if (parent.lesser == node) {
+				parent.lesser = newParent;
+			} else {
+				parent.greater = newParent;
+			}
+		}
+	}
+
+	/**
+	 * A simple test to see if a Node is prime or not. Note that null parameters
+	 * are allowed and considered "non-prime"
+	 * 
+	 * @param node
+	 *            The Node to test for prime-status
+	 * @return True if node is not-null and prime, false otherwise
+	 */
+	private final boolean isPrime(N node) {
+		return null != node && node.prime;
+	}
+
+	private static final boolean DIR_LEFT = true;
+	private static final boolean DIR_RIGHT = !DIR_LEFT;
+	private static final NullPointerException NULL_POOL = new NullPointerException( "Null pool argument" );
+	private static final int RECYCLE_BATCH = 64; // Steps taken per monitor-hold by recycleDetached(long, TimeUnit)
+
+	N head = null;
+	private N detached = null;
+	final Allocator<L> pool;
+}
@@ -0,0 +1,57 @@
+package com.m0les.embedded;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * Something that hands out instances of a class for temporary use and takes them back again afterwards. This is the common
+ * contract shared by {@link Pool} and its alternative implementations, so that a consumer (e.g. {@link Tree}) can be given
+ * whichever one best suits its threading and allocation requirements.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <C> The class of instances managed by this Allocator (The value-type of the Allocator)
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public interface Allocator<C> extends Recycler, Metered {
+	/**
+	 * Get a new or recycled C instance.
+	 * 
+	 * @return The instance to be used (never null)
+	 * @throws PoolExhaustedException
+	 *             If a limited Allocator has no more instances to give out.
+	 */
+	public C getInstance() throws PoolExhaustedException;
+
+	/**
+	 * Return a C instance previously obtained from {@link #getInstance()}. The caller should nolonger hold a reference to the
+	 * returned instance after this call.
+	 * 
+	 * @param instance The instance to give back (Must not be null)
+	 */
+	public void returnInstance(C instance);
+
+	/**
+	 * Get the number of C instances managed by this Allocator. This includes all allocated and pooled instances.
+	 * 
+	 * @return The number of instances in existence.
+	 */
+	public int getInstanceCount();
+}
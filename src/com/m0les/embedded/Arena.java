@@ -0,0 +1,156 @@
+package com.m0les.embedded;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <p>
+ * A scope for instances borrowed from one or more {@link ChainAllocator}s (e.g. {@link Pool}s), which gives them all
+ * back at once when it's {@link #close()}d. It's intended for request handlers and the like that borrow many
+ * instances while doing a unit of work and are finished with all of them at the end, so they don't have to return
+ * (or remember to return) each one individually.
+ * </p>
+ * <p>
+ * An instance's next member is unused by its pool while it's borrowed, so the Arena threads the instances it hands
+ * out onto one chain per pool through that member. Closing the Arena then gives each pool back its whole chain with a
+ * single {@link ChainAllocator#returnChain(Link)} call. The Arena keeps its (small) per-pool records after closing,
+ * so one Arena can be reused for request after request without producing any garbage.
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   try( Arena arena = this.arena ){
+ *     Order order = arena.get( orderPool );
+ *     Line line = arena.get( linePool );
+ *     ...
+ *   }
+ * </pre>
+ * 
+ * @note The next member of an instance borrowed through an Arena belongs to the Arena until it's closed, so the
+ *       caller must not use it (nor return the instance to its pool directly). An Arena is meant to be confined to
+ *       one thread at a time.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class Arena implements AutoCloseable {
+	/**
+	 * Borrow a C instance from a pool and record it for return when this Arena is closed.
+	 * 
+	 * @param pool
+	 *            The pool to borrow from
+	 * @return The instance to be used
+	 * @throws PoolExhaustedException
+	 *             If the pool is limited and exhausted. The instances already borrowed stay recorded.
+	 */
+	public <C extends Link<C>> C get(ChainAllocator<C> pool) throws PoolExhaustedException {
+		final Segment<C> segment = segmentFor(pool);
+		final C instance = pool.getInstance();
+		instance.next = segment.head;
+		segment.head = instance;
+		segment.count++;
+		return instance;
+	}
+
+	/**
+	 * Return every recorded instance to its pool, one chain per pool. The Arena is empty (and reusable) afterwards.
+	 */
+	@Override
+	public void close() {
+		for (Segment<?> segment = segments; null != segment; segment = segment.next) {
+			segment.release();
+		}
+	}
+
+	/**
+	 * Get the number of instances currently recorded.
+	 * 
+	 * @return The number of instances that {@link #close()} will return
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment<?> segment = segments; null != segment; segment = segment.next) {
+			size += segment.count;
+		}
+		return size;
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "Arena(" + size() + ")";
+	}
+
+	/**
+	 * Find (or create) the record for a pool.
+	 * 
+	 * @param pool
+	 *            The pool concerned
+	 * @return Its record
+	 */
+	@SuppressWarnings("unchecked")
+	private <C extends Link<C>> Segment<C> segmentFor(ChainAllocator<C> pool) {
+		for (Segment<?> segment = segments; null != segment; segment = segment.next) {
+			if (pool == segment.pool) {
+				return (Segment<C>) segment;
+			}
+		}
+		final Segment<C> segment = new Segment<C>(pool);
+		segment.next = segments;
+		segments = segment;
+		return segment;
+	}
+
+	/**
+	 * The chain of instances borrowed from one pool.
+	 * 
+	 * @param <C>
+	 *            The class of instances managed by the pool
+	 */
+	private static final class Segment<C extends Link<C>> {
+		Segment(ChainAllocator<C> pool) {
+			this.pool = pool;
+		}
+
+		/**
+		 * Give the whole chain back to the pool.
+		 */
+		void release() {
+			if (null != head) {
+				final C chain = head;
+				head = null;
+				count = 0;
+				pool.returnChain(chain);
+			}
+		}
+
+		private final ChainAllocator<C> pool;
+		private C head = null;
+		private int count = 0;
+		private Segment<?> next = null;
+	}
+
+	private Segment<?> segments = null;
+}
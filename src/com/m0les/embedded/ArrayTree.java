@@ -0,0 +1,674 @@
+package com.m0les.embedded;
+
+import java.util.Arrays;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <h2>An int-keyed {@link Tree} whose entries are slots in parallel arrays rather than Node objects.</h2>
+ * 
+ * <p>This is the same red-black tree as {@link Tree}, with the same insert and remove cases, but an entry's key, value,
+ * colour and links live at one index of a set of arrays, and links are indices rather than references. A Tree of a
+ * million entries is then a handful of large arrays instead of two million small objects, so the garbage-collector has
+ * next to nothing to trace, and walking the tree reads along arrays rather than chasing pointers across the heap.</p>
+ * <p>Entries are referred to by cursor: the int index of their slot, or {@link #NIL} for none. Slots of removed entries
+ * are recycled through a free list threaded through the greater-link array, so no Link or pool is needed. Like
+ * {@link Tree#Tree(int)}, a tree made with a size is limited to that many entries and refuses more with a
+ * PoolExhaustedException. A tree made without one grows its arrays (by doubling) as needed.</p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   ArrayTree&lt;Order&gt; orders = new ArrayTree&lt;Order&gt;( 1000000 );
+ *   orders.insert( order.getId(), order );
+ *   ...
+ *   for( int cursor = orders.getFirst(); ArrayTree.NIL != cursor; cursor = orders.getNext( cursor ) ){
+ *     Order order = orders.getValue( cursor );
+ *     ...
+ *   }
+ * </pre>
+ * 
+ * @note As with Tree's Nodes, removing an entry with two children moves its in-order predecessor into its slot, so a
+ *       cursor to that predecessor then refers to a recycled slot. Cursors should be looked up again after a remove.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <V> The subclass of Objects stored within the tree (the value-type of the tree)
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class ArrayTree<V> implements Metered {
+	/**
+	 * The cursor meaning "no entry".
+	 */
+	public static final int NIL = -1;
+
+	/**
+	 * Create a new ArrayTree with no size-limit. Its arrays start small and are
+	 * replaced by ones twice the size whenever they fill up.
+	 */
+	public ArrayTree() {
+		this(0);
+	}
+
+	/**
+	 * Create an ArrayTree that can hold at most poolSize entries. Its arrays
+	 * are allocated once, here, at their full size.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of entries this tree can hold (0 for no
+	 *            limit)
+	 * @throws IllegalArgumentException
+	 *             If the size is negative.
+	 */
+	public ArrayTree(int poolSize) throws IllegalArgumentException {
+		if (0 > poolSize) {
+			throw new IllegalArgumentException("Invalid pool size");
+		}
+		limit = poolSize;
+		final int capacity = (0 == poolSize) ? INITIAL_CAPACITY : poolSize;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		primes = new boolean[capacity];
+		parents = new int[capacity];
+		lessers = new int[capacity];
+		greaters = new int[capacity];
+	}
+
+	/**
+	 * The complete insertion operation, including all cases of the procedure.
+	 * 
+	 * @param key
+	 *            The key to refer to the new value by
+	 * @param value
+	 *            The instance referred-to by key inside this tree
+	 * @return The cursor of the new entry
+	 * @throws PoolExhaustedException
+	 *             If this tree was made with a size and is full.
+	 * @see Tree#insert(int, Object)
+	 */
+	public synchronized int insert(int key, V value) throws PoolExhaustedException {
+		int node = newSlot();
+		final int inserted = node;
+		keys[node] = key;
+		values[node] = value;
+		lessers[node] = greaters[node] = NIL;
+		primes[node] = true;
+		if (NIL == head) {
+			// Case 1
+			parents[node] = NIL;
+			primes[node] = false;
+			head = node;
+			return inserted;
+		}
+		int parent = head;
+		while (true) {
+			if (keys[parent] > key) {
+				if (NIL == lessers[parent]) {
+					parents[node] = parent;
+					lessers[parent] = node;
+					break;
+				} else {
+					parent = lessers[parent];
+				}
+			} else {
+				if (NIL == greaters[parent]) {
+					parents[node] = parent;
+					greaters[parent] = node;
+					break;
+				} else {
+					parent = greaters[parent];
+				}
+			}
+		}
+
+		// colouring
+		while (true) {
+			if (NIL == parent) {
+				primes[node] = false;
+				return inserted;
+			}
+			if (!primes[parent]) // Case 2
+			{
+				return inserted;
+			}
+
+			// Case 3
+			final int grandparent = parents[parent];
+			final int uncle;
+			if (lessers[grandparent] == parent) {
+				uncle = greaters[grandparent];
+			} else {
+				uncle = lessers[grandparent];
+			}
+			if (isPrime(uncle)) {
+				primes[parent] = false;
+				primes[uncle] = false;
+				primes[grandparent] = true;
+				parent = parents[grandparent];
+				node = grandparent;
+			} else // Case 4
+			{
+				if (greaters[parent] == node && lessers[grandparent] == parent) {
+					rotate(parent, DIR_LEFT);
+					node = parent;
+					parent = parents[node];
+				} else if (lessers[parent] == node && greaters[grandparent] == parent) {
+					rotate(parent, DIR_RIGHT);
+					node = parent;
+					parent = parents[node];
+				}
+				// Case 5
+				if (parent == lessers[grandparent]) {
+					rotate(grandparent, DIR_RIGHT);
+				} else {
+					rotate(grandparent, DIR_LEFT);
+				}
+				primes[grandparent] = true;
+				primes[parent] = false;
+				return inserted;
+			}
+		}
+	}
+
+	/**
+	 * The complete removal operation, including all cases of the procedure.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to remove
+	 * @see Tree#remove(Tree.Node)
+	 */
+	public synchronized void remove(int node) {
+		/* If the entry has two children, then take over the key and value of
+		 * the greatest entry in its lesser-branch and remove that former
+		 * "greatest lesser" entry (which must have < 2 children) instead.
+		 */
+		if (NIL != greaters[node] && NIL != lessers[node]) {
+			final int newNode = findGreatest(lessers[node]);
+			keys[node] = keys[newNode];
+			values[node] = values[newNode];
+			node = newNode;
+		}
+		// Entry now has 0 or 1 children.
+		int parent = parents[node];
+		final int child = NIL != lessers[node] ? lessers[node] : greaters[node];
+		if (node == head) {
+			head = child;
+			if (NIL != head) {
+				parents[head] = NIL;
+				primes[head] = false;
+			}
+			release(node);
+			return;
+		}
+		if (lessers[parent] == node) {
+			lessers[parent] = child;
+		} else {
+			greaters[parent] = child;
+		}
+		if (NIL != child) {
+			parents[child] = parent;
+		}
+		final boolean prime = primes[node];
+		release(node);
+		if (prime) {
+			// A prime entry with at most one child has none, so nothing needs rebalancing
+			return;
+		}
+		if (isPrime(child)) {
+			primes[child] = false;
+			return;
+		}
+		node = child;
+		// Delete case 1
+		while (NIL != parent) {
+			final boolean left = lessers[parent] == node;
+			// Delete case 2
+			int sibling = left ? greaters[parent] : lessers[parent];
+			if (isPrime(sibling)) {
+				primes[parent] = true;
+				primes[sibling] = false;
+				if (left) {
+					rotate(parent, DIR_LEFT);
+					sibling = greaters[parent];
+				} else {
+					rotate(parent, DIR_RIGHT);
+					sibling = lessers[parent];
+				}
+			}
+			// Delete case 3
+			if (!(isPrime(lessers[sibling]) || isPrime(greaters[sibling]))) {
+				primes[sibling] = true;
+				// Delete case 4
+				if (primes[parent]) {
+					primes[parent] = false;
+					return;
+				}
+				node = parent;
+				parent = parents[node];
+			} else {
+				// Delete case 5
+				if (left && isPrime(lessers[sibling])) {
+					primes[sibling] = true;
+					primes[lessers[sibling]] = false;
+					rotate(sibling, DIR_RIGHT);
+					sibling = greaters[parent];
+				} else if (!left && isPrime(greaters[sibling])) {
+					primes[sibling] = true;
+					primes[greaters[sibling]] = false;
+					rotate(sibling, DIR_LEFT);
+					sibling = lessers[parent];
+				}
+				// Delete case 6
+				primes[sibling] = primes[parent];
+				primes[parent] = false;
+				if (left) {
+					if (NIL != greaters[sibling]) {
+						primes[greaters[sibling]] = false;
+					}
+					rotate(parent, DIR_LEFT);
+				} else {
+					if (NIL != lessers[sibling]) {
+						primes[lessers[sibling]] = false;
+					}
+					rotate(parent, DIR_RIGHT);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Remove every entry in this tree. The value references are cleared along
+	 * one stretch of the values array, and every slot becomes free again.
+	 */
+	public synchronized void removeAll() {
+		Arrays.fill(values, 0, top, null);
+		returns += size;
+		head = NIL;
+		free = NIL;
+		freeCount = 0;
+		top = 0;
+		size = 0;
+	}
+
+	/**
+	 * Find an entry stored within this tree, referenced by its integer key.
+	 * 
+	 * @param key
+	 *            The key of the entry to look for
+	 * @return The cursor of the entry with the specified key, or NIL if no
+	 *         such key exists in the tree.
+	 */
+	public synchronized int find(final int key) {
+		int current = head;
+		while (NIL != current) {
+			if (key < keys[current]) {
+				current = lessers[current];
+			} else if (key > keys[current]) {
+				current = greaters[current];
+			} else {
+				return current;
+			}
+		}
+		return NIL;
+	}
+
+	/**
+	 * Get the first entry (lowest key) in the tree.
+	 * 
+	 * @return The cursor of the lowest-keyed entry, or NIL if the tree is
+	 *         empty.
+	 */
+	public synchronized int getFirst() {
+		return (NIL == head) ? NIL : findLeast(head);
+	}
+
+	/**
+	 * Get the last entry (highest key) in the tree.
+	 * 
+	 * @return The cursor of the highest-keyed entry, or NIL if the tree is
+	 *         empty.
+	 */
+	public synchronized int getLast() {
+		return (NIL == head) ? NIL : findGreatest(head);
+	}
+
+	/**
+	 * Find the entry with the next-lowest key.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to find the predecessor of
+	 * @return The cursor of the entry with the next lowest key, or NIL if
+	 *         there is no lower-keyed entry.
+	 */
+	public synchronized int getPrev(int node) {
+		int candidate = lessers[node];
+		if (NIL != candidate) {
+			return findGreatest(candidate);
+		}
+		while (NIL != (candidate = parents[node])) {
+			if (node == greaters[candidate]) {
+				return candidate;
+			}
+			node = candidate;
+		}
+		return NIL;
+	}
+
+	/**
+	 * Find the entry with the next-highest key.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to find the successor of
+	 * @return The cursor of the entry with the next highest key, or NIL if
+	 *         there is no higher-keyed entry.
+	 */
+	public synchronized int getNext(int node) {
+		int candidate = greaters[node];
+		if (NIL != candidate) {
+			return findLeast(candidate);
+		}
+		while (NIL != (candidate = parents[node])) {
+			if (node == lessers[candidate]) {
+				return candidate;
+			}
+			node = candidate;
+		}
+		return NIL;
+	}
+
+	/**
+	 * Get the key of an entry.
+	 * 
+	 * @param node
+	 *            The cursor of the entry
+	 * @return The key element of the entry
+	 */
+	public synchronized int getKey(int node) {
+		return keys[node];
+	}
+
+	/**
+	 * Get the value of an entry.
+	 * 
+	 * @param node
+	 *            The cursor of the entry
+	 * @return The value element of the entry
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized V getValue(int node) {
+		return (V) values[node];
+	}
+
+	/**
+	 * Replace the value of an entry in place.
+	 * 
+	 * @param node
+	 *            The cursor of the entry
+	 * @param value
+	 *            The new value element of the entry
+	 */
+	public synchronized void setValue(int node, V value) {
+		values[node] = value;
+	}
+
+	/**
+	 * Get the number of entries in the tree.
+	 * 
+	 * @return The number of entries
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Take a snapshot of the counters of this tree's slots. Hits are recycled
+	 * slots, misses are never-used ones, free is the length of the free list
+	 * and instances is the number of slots ever used.
+	 * 
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public synchronized void getStatistics(Statistics into) {
+		into.hits = hits;
+		into.misses = misses;
+		into.returns = returns;
+		into.exhaustions = exhaustions;
+		into.criticalExhaustions = 0;
+		into.sealViolations = 0;
+		into.softHits = 0;
+		into.softLost = 0;
+		into.free = freeCount;
+		into.highWater = highWater;
+		into.peak = peak;
+		into.instances = top;
+		into.limit = limit;
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public synchronized void resetPeak() {
+		peak = size;
+	}
+
+	/**
+	 * Generate a human-readable representation of this tree.
+	 * 
+	 * @note This method composes Strings and thus generates garbage, use in
+	 *       embedded applications should be avoided generally, barring
+	 *       exceptional situations.
+	 */
+	@Override
+	public synchronized String toString() {
+		return "ArrayTree{" + nodeString(head) + "}";
+	}
+
+	/**
+	 * Take a slot for a new entry: a recycled one from the free list if there
+	 * is one, otherwise a never-used one.
+	 * 
+	 * @return The slot's index
+	 * @throws PoolExhaustedException
+	 *             If this tree is limited and full.
+	 */
+	private int newSlot() throws PoolExhaustedException {
+		int slot = free;
+		if (NIL != slot) {
+			free = greaters[slot];
+			freeCount--;
+			hits++;
+		} else {
+			if (top == keys.length) {
+				if (0 != limit) {
+					exhaustions++;
+					throw Pool.POOL_EXHAUSTED;
+				}
+				grow();
+			}
+			slot = top++;
+			misses++;
+		}
+		if (peak < ++size) {
+			peak = size;
+			if (highWater < size) {
+				highWater = size;
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * Put a removed entry's slot on the free list, clearing its value
+	 * reference.
+	 * 
+	 * @param slot
+	 *            The slot's index
+	 */
+	private void release(int slot) {
+		values[slot] = null;
+		greaters[slot] = free;
+		free = slot;
+		freeCount++;
+		size--;
+		returns++;
+	}
+
+	/**
+	 * Replace the arrays of an unlimited tree with ones twice the size.
+	 * 
+	 * @note This produces garbage (the old arrays).
+	 */
+	private void grow() {
+		final int capacity = 2 * keys.length;
+		keys = Arrays.copyOf(keys, capacity);
+		values = Arrays.copyOf(values, capacity);
+		primes = Arrays.copyOf(primes, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		lessers = Arrays.copyOf(lessers, capacity);
+		greaters = Arrays.copyOf(greaters, capacity);
+	}
+
+	/**
+	 * Perform a tree-rotation about a nominated entry in a nominated direction.
+	 * 
+	 * @param node
+	 *            The cursor of the entry about which to rotate.
+	 * @param left
+	 *            One of DIR_LEFT (For a rotate-left) or DIR_RIGHT (For a
+	 *            rotate-right).
+	 * @see Tree
+	 */
+	private void rotate(int node, boolean left) {
+		final int parent = parents[node];
+		final int newParent;
+		final int newChild;
+		if (left) {
+			newParent = greaters[node];
+			newChild = greaters[node] = lessers[newParent];
+			lessers[newParent] = node;
+		} else // right
+		{
+			newParent = lessers[node];
+			newChild = lessers[node] = greaters[newParent];
+			greaters[newParent] = node;
+		}
+		parents[node] = newParent;
+		parents[newParent] = parent;
+		if (NIL != newChild) {
+			parents[newChild] = node;
+		}
+		if (NIL == parent) {
+			head = newParent;
+		} else {
+			if (lessers[parent] == node) {
+				lessers[parent] = newParent;
+			} else {
+				greaters[parent] = newParent;
+			}
+		}
+	}
+
+	/**
+	 * A simple test to see if an entry is prime or not. Note that NIL is
+	 * allowed and considered "non-prime"
+	 * 
+	 * @param node
+	 *            The cursor of the entry to test for prime-status
+	 * @return True if node is not NIL and prime, false otherwise
+	 */
+	private boolean isPrime(int node) {
+		return NIL != node && primes[node];
+	}
+
+	/**
+	 * Find the entry with the greatest key from an entry downward.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to start from (not NIL)
+	 * @return The cursor of the greatest-keyed entry at or below node
+	 */
+	private int findGreatest(int node) {
+		int next = greaters[node];
+		while (NIL != next) {
+			node = next;
+			next = greaters[node];
+		}
+		return node;
+	}
+
+	/**
+	 * Find the entry with the lowest key from an entry downward.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to start from (not NIL)
+	 * @return The cursor of the lowest-keyed entry at or below node
+	 */
+	private int findLeast(int node) {
+		int next = lessers[node];
+		while (NIL != next) {
+			node = next;
+			next = lessers[node];
+		}
+		return node;
+	}
+
+	/**
+	 * Helper method to pretty-format the structure and entries of a tree
+	 * 
+	 * @note This method composes Strings and thus generates garbage, use in
+	 *       embedded applications should be avoided generally, barring
+	 *       exceptional situations.
+	 * 
+	 * @return The String representing the core values of this tree
+	 * @see #toString()
+	 */
+	private String nodeString(int node) {
+		if (NIL == node) {
+			return ".";
+		}
+		return "{" + nodeString(lessers[node]) + "|" + keys[node] + (primes[node] ? "*" : "+") + values[node] + "|"
+				+ nodeString(greaters[node]) + "}";
+	}
+
+	private static final boolean DIR_LEFT = true;
+	private static final boolean DIR_RIGHT = !DIR_LEFT;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int limit;
+	private int[] keys;
+	private Object[] values;
+	private boolean[] primes;
+	private int[] parents;
+	private int[] lessers;
+	private int[] greaters; // Also links the free list
+	private int head = NIL;
+	private int free = NIL;
+	private int freeCount = 0;
+	private int top = 0; // Slots at and above this have never been used
+	private int size = 0;
+	private int highWater = 0;
+	private int peak = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long returns = 0;
+	private long exhaustions = 0;
+}
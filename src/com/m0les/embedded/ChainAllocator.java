@@ -0,0 +1,91 @@
+package com.m0les.embedded;
+
+/**
+ * An {@link Allocator} of {@link Link}s that can also hand out and take back whole chains of instances (linked through
+ * their next members) in a single step, so that batches cost one lock or compare-and-set instead of one per instance.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <C> The class of instances managed by this Allocator (The value-type of the Allocator)
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public interface ChainAllocator<C extends Link<C>> extends Allocator<C> {
+	/**
+	 * Get up-to n new or recycled C instances in one step, linked together through their next members.
+	 * 
+	 * @param n
+	 *            The number of instances wanted
+	 * @return The first of the instances obtained (The last one's next member is null), or null if a limited
+	 *         Allocator is already exhausted. Fewer than n instances are returned if the limit is reached part-way.
+	 */
+	public C getChain(int n);
+
+	/**
+	 * Return a chain of C instances, linked through their next members, in one step.
+	 * 
+	 * @param head
+	 *            The first instance of the chain (may be null)
+	 */
+	public void returnChain(C head);
+
+	/**
+	 * Get up-to n new or recycled C instances for a caching layer in front of this Allocator (e.g. a {@link ChildPool})
+	 * to keep on its own free chain. This is the same as {@link #getChain(int)}, except that the borrow-time hooks of a
+	 * {@link ManagedFactory} aren't applied to recycled instances: the layer applies them through {@link #reuse(Link)}
+	 * as it hands each instance out.
+	 * 
+	 * @param n
+	 *            The number of instances wanted
+	 * @return The first of the instances obtained (The last one's next member is null), or null if a limited
+	 *         Allocator is already exhausted.
+	 */
+	public C getFreeChain(int n);
+
+	/**
+	 * Take back a chain of free C instances from a caching layer in front of this Allocator. This is the same as
+	 * {@link #returnChain(Link)}, except that the return-time hooks aren't applied, as the layer already applied them
+	 * through {@link #recycle(Link)} when each instance was returned to it.
+	 * 
+	 * @param head
+	 *            The first instance of the chain (may be null)
+	 */
+	public void returnFreeChain(C head);
+
+	/**
+	 * Apply the hooks this Allocator applies to a returned instance (a {@link ManagedFactory}'s reset, unless it's
+	 * deferred) to an instance that a caching layer is keeping instead of returning.
+	 * 
+	 * @param instance
+	 *            The instance just returned to the layer
+	 */
+	public void recycle(C instance);
+
+	/**
+	 * Apply the hooks this Allocator applies before handing a recycled instance out (a {@link ManagedFactory}'s
+	 * deferred reset and validation) to an instance that a caching layer is about to hand out again.
+	 * 
+	 * @param instance
+	 *            The instance about to be handed out by the layer
+	 * @return True if the instance may be handed out, false if it failed validation, in which case it has been
+	 *         destroyed and is no longer counted by this Allocator (or the layer).
+	 */
+	public boolean reuse(C instance);
+}
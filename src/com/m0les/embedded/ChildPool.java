@@ -0,0 +1,467 @@
+package com.m0les.embedded;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <p>
+ * A pool that keeps its own chain of free C instances and draws on a shared parent pool (a {@link Pool},
+ * {@link ConcurrentPool} or even another ChildPool) in batches. Many {@link Tree}s can share one parent pool, and
+ * so one memory budget, without every insert and remove in every Tree taking the parent's lock: each Tree is given
+ * its own ChildPool, which only goes to the parent once per batch. When the local chain runs dry it is refilled with
+ * batchSize instances in one {@link ChainAllocator#getChain(int)} call, and once it holds twice that many, a batch is
+ * spilled back with one {@link ChainAllocator#returnChain(Link)} call.
+ * </p>
+ * <p>
+ * A child can also be given a quota: the most instances that may be in use through it at once. Instances aren't
+ * tied to the child they came from, so a Node may still be moved from one Tree to another. Each child's in-use count
+ * is simply the number borrowed through it less the number returned to it, so moving instances between children
+ * shifts quota from one to the other.
+ * </p>
+ * <p>
+ * Instances are reset as they're returned to a child, and reset or validated as it hands them out again, through
+ * its parent's {@link ChainAllocator#recycle(Link)} and {@link ChainAllocator#reuse(Link)}. A {@link ManagedFactory}
+ * behind the parent therefore sees each instance just as if there were no child. Batches then move between child
+ * and parent through {@link ChainAllocator#getFreeChain(int)} and {@link ChainAllocator#returnFreeChain(Link)},
+ * so they aren't reset twice.
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   Tree.NodePool&lt;Order&gt; shared = new Tree.NodePool&lt;Order&gt;( 100000 );
+ *   ...
+ *   Tree&lt;Order&gt; orders = new Tree&lt;Order&gt;( new ChildPool&lt;Tree.Node&lt;Order&gt;.NodeLink&gt;( shared, 32, 1000 ) );
+ * </pre>
+ * 
+ * @note Each ChildPool is guarded by its own monitor, which is uncontended while only one Tree (or thread) uses
+ *       it, so the parent's lock is only taken once per batch.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <C> The class of objects managed by this pool (The value-type of the pool)
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class ChildPool<C extends Link<C>> implements ChainAllocator<C> {
+	/**
+	 * Create a child pool without a quota.
+	 * 
+	 * @param parent
+	 *            The pool to draw instances from and spill them back to
+	 * @param batchSize
+	 *            The number of instances moved to or from the parent at a time
+	 * @throws IllegalArgumentException
+	 *             If the batch size isn't positive.
+	 */
+	public ChildPool(ChainAllocator<C> parent, int batchSize) throws IllegalArgumentException {
+		this(parent, batchSize, 0);
+	}
+
+	/**
+	 * Create a child pool.
+	 * 
+	 * @param parent
+	 *            The pool to draw instances from and spill them back to
+	 * @param batchSize
+	 *            The number of instances moved to or from the parent at a time
+	 * @param quota
+	 *            The most instances that may be in use through this child at once (0 for no quota)
+	 * @throws IllegalArgumentException
+	 *             If the batch size isn't positive or the quota is negative.
+	 */
+	public ChildPool(ChainAllocator<C> parent, int batchSize, int quota) throws IllegalArgumentException {
+		if (0 >= batchSize || 0 > quota) {
+			throw new IllegalArgumentException("Invalid batch size or quota");
+		}
+		this.parent = parent;
+		this.batchSize = batchSize;
+		this.quota = quota;
+	}
+
+	/**
+	 * Get a recycled C instance from the local chain, refilling it from the parent first if it's empty.
+	 * 
+	 * @return The instance to be used (never null)
+	 * @throws PoolExhaustedException
+	 *             If the quota has been reached, or the local chain is empty and the parent is exhausted.
+	 */
+	@Override
+	public synchronized C getInstance() throws PoolExhaustedException {
+		if (0 != quota && inUse >= quota) {
+			exhaustions++;
+			throw Pool.POOL_EXHAUSTED;
+		}
+		while (true) {
+			final boolean local = null != chain;
+			if (!local) {
+				refill(batchSize);
+				if (null == chain) {
+					exhaustions++;
+					throw Pool.POOL_EXHAUSTED;
+				}
+			}
+			final C instance = chain;
+			chain = instance.next;
+			instance.next = null;
+			freeCount--;
+			if (parent.reuse(instance)) {
+				if (local) {
+					hits++;
+				}
+				inUse++;
+				track();
+				return instance;
+			}
+		}
+	}
+
+	/**
+	 * Return a C instance to the local chain, spilling a batch back to the parent if the chain has grown to twice
+	 * the batch size.
+	 * 
+	 * @see Pool#returnInstance(Link)
+	 */
+	@Override
+	public synchronized void returnInstance(C instance) {
+		parent.recycle(instance);
+		instance.next = chain;
+		chain = instance;
+		freeCount++;
+		inUse--;
+		returns++;
+		if (2 * batchSize <= freeCount) {
+			spill(freeCount - batchSize);
+		}
+	}
+
+	/**
+	 * Get up-to n C instances in one step, taking the local chain's first and then drawing the remainder from the
+	 * parent in a single call.
+	 * 
+	 * @see ChainAllocator#getChain(int)
+	 */
+	@Override
+	public synchronized C getChain(int n) {
+		return borrowChain(n, true);
+	}
+
+	/**
+	 * Get up-to n C instances for a caching layer in front of this child, without applying the parent's borrow-time
+	 * hooks.
+	 * 
+	 * @see ChainAllocator#getFreeChain(int)
+	 */
+	@Override
+	public synchronized C getFreeChain(int n) {
+		return borrowChain(n, false);
+	}
+
+	/**
+	 * Return a chain of C instances, linked through their next members, to the local chain in one step.
+	 * 
+	 * @see ChainAllocator#returnChain(Link)
+	 */
+	@Override
+	public synchronized void returnChain(C head) {
+		returnChain(head, true);
+	}
+
+	/**
+	 * Take back a chain of free C instances without applying the parent's return-time hooks.
+	 * 
+	 * @see ChainAllocator#returnFreeChain(Link)
+	 */
+	@Override
+	public synchronized void returnFreeChain(C head) {
+		returnChain(head, false);
+	}
+
+	/**
+	 * @see ChainAllocator#recycle(Link)
+	 */
+	@Override
+	public void recycle(C instance) {
+		parent.recycle(instance);
+	}
+
+	/**
+	 * Apply the parent's borrow-time hooks, no longer counting the instance as in use through this child if it's
+	 * found unfit.
+	 * 
+	 * @see ChainAllocator#reuse(Link)
+	 */
+	@Override
+	public boolean reuse(C instance) {
+		if (parent.reuse(instance)) {
+			return true;
+		}
+		synchronized (this) {
+			inUse--;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the number of C instances held through this child: those in use through it plus those in its local chain.
+	 * 
+	 * @see Pool#getInstanceCount()
+	 */
+	@Override
+	public synchronized int getInstanceCount() {
+		return inUse + freeCount;
+	}
+
+	/**
+	 * Get the parent this child draws on.
+	 * 
+	 * @return The parent pool
+	 */
+	public ChainAllocator<C> getParent() {
+		return parent;
+	}
+
+	/**
+	 * Get the counts of this child's own activity. Misses are instances drawn from the parent and the limit is the
+	 * quota.
+	 * 
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public synchronized void getStatistics(Statistics into) {
+		into.hits = hits;
+		into.misses = misses;
+		into.returns = returns;
+		into.exhaustions = exhaustions;
+		into.criticalExhaustions = 0;
+		into.sealViolations = 0;
+		into.softHits = 0;
+		into.softLost = 0;
+		into.free = freeCount;
+		into.highWater = highWater;
+		into.peak = peak;
+		into.instances = inUse + freeCount;
+		into.limit = quota;
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public synchronized void resetPeak() {
+		peak = inUse;
+	}
+
+	/**
+	 * Give every instance in the local chain back to the parent. The parent's own recycled instances are unaffected,
+	 * as they may be shared with other children.
+	 * 
+	 * @see Recycler#discardGarbage()
+	 */
+	@Override
+	public synchronized void discardGarbage() {
+		spill(freeCount);
+	}
+
+	/**
+	 * Give all but maxRemaining of the instances in the local chain back to the parent.
+	 * 
+	 * @see Recycler#discardGarbage(int)
+	 */
+	@Override
+	public synchronized void discardGarbage(int maxRemaining) {
+		if (freeCount > Math.max(0, maxRemaining)) {
+			spill(freeCount - Math.max(0, maxRemaining));
+		}
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "ChildPool(" + inUse + " in use, " + freeCount + " free)";
+	}
+
+	/**
+	 * Get up-to n C instances, taking the local chain's first and then drawing the remainder from the parent in a
+	 * single call.
+	 * 
+	 * @param n
+	 *            The number of instances wanted
+	 * @param prepare
+	 *            True to apply the parent's borrow-time hooks to each instance (dropping any found unfit)
+	 * @return The first of the instances obtained, or null if there were none within the quota.
+	 */
+	private C borrowChain(int n, boolean prepare) {
+		final int wanted = (0 == quota) ? n : Math.min(n, quota - inUse);
+		final int local = Math.max(0, Math.min(wanted, freeCount));
+		C head = null;
+		C tail = null;
+		int obtained = 0;
+		boolean refilled = false;
+		while (obtained < wanted) {
+			if (!refilled && freeCount < wanted - obtained) {
+				refill(wanted - obtained - freeCount);
+				refilled = true;
+			}
+			if (null == chain) {
+				break;
+			}
+			final C instance = chain;
+			chain = instance.next;
+			instance.next = null;
+			freeCount--;
+			if (!prepare || parent.reuse(instance)) {
+				if (null == head) {
+					head = instance;
+				} else {
+					tail.next = instance;
+				}
+				tail = instance;
+				obtained++;
+			}
+		}
+		if (obtained < n) {
+			exhaustions++;
+		}
+		hits += Math.min(local, obtained);
+		inUse += obtained;
+		track();
+		return head;
+	}
+
+	/**
+	 * Splice a chain of C instances onto the local chain, spilling a batch back to the parent if it has grown to twice
+	 * the batch size.
+	 * 
+	 * @param head
+	 *            The first instance of the chain (may be null)
+	 * @param recycle
+	 *            True to apply the parent's return-time hooks to each instance
+	 */
+	private void returnChain(C head, boolean recycle) {
+		if (null == head) {
+			return;
+		}
+		if (recycle) {
+			parent.recycle(head);
+		}
+		C tail = head;
+		int count = 1;
+		while (null != tail.next) {
+			tail = tail.next;
+			count++;
+			if (recycle) {
+				parent.recycle(tail);
+			}
+		}
+		tail.next = chain;
+		chain = head;
+		freeCount += count;
+		inUse -= count;
+		returns += count;
+		if (2 * batchSize <= freeCount) {
+			spill(freeCount - batchSize);
+		}
+	}
+
+	/**
+	 * Draw up-to n more instances from the parent onto the local chain, in one call and within the quota.
+	 * 
+	 * @param n
+	 *            The number of instances wanted
+	 */
+	private void refill(int n) {
+		if (0 != quota) {
+			n = Math.min(n, quota - inUse - freeCount);
+		}
+		if (0 >= n) {
+			return;
+		}
+		final C head = parent.getFreeChain(n);
+		if (null == head) {
+			return;
+		}
+		C tail = head;
+		int count = 1;
+		while (null != tail.next) {
+			tail = tail.next;
+			count++;
+		}
+		tail.next = chain;
+		chain = head;
+		freeCount += count;
+		misses += count;
+	}
+
+	/**
+	 * Give n instances of the local chain back to the parent in one call. The instances at the end of the chain (the
+	 * least recently returned) are given back, so the ones most likely to still be in a CPU cache are kept.
+	 *
+	 * @param n
+	 *            The number of instances to give back (no more than freeCount)
+	 */
+	private void spill(int n) {
+		if (0 >= n) {
+			return;
+		}
+		final int kept = freeCount - n;
+		final C head;
+		if (0 == kept) {
+			head = chain;
+			chain = null;
+		} else {
+			C last = chain;
+			for (int i = 1; i < kept; i++) {
+				last = last.next;
+			}
+			head = last.next;
+			last.next = null;
+		}
+		freeCount = kept;
+		parent.returnFreeChain(head);
+	}
+
+	/**
+	 * Record a new in-use high-water mark (and window peak) if there is one.
+	 */
+	private void track() {
+		if (peak < inUse) {
+			peak = inUse;
+			if (highWater < inUse) {
+				highWater = inUse;
+			}
+		}
+	}
+
+	private final ChainAllocator<C> parent;
+	private final int batchSize;
+	private final int quota;
+	private C chain = null;
+	private int freeCount = 0;
+	private int inUse = 0;
+	private int highWater = 0;
+	private int peak = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long returns = 0;
+	private long exhaustions = 0;
+}
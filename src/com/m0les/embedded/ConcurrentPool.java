@@ -0,0 +1,635 @@
+package com.m0les.embedded;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicStampedReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * A lock-free alternative to {@link Pool}. The chain of recycled instances is still threaded through the
+ * instances' own {@link Link#next} members, but it is managed as a Treiber stack: instances are pushed and popped
+ * with compare-and-set operations on the head of the chain instead of inside a monitor. The head reference is
+ * stamped with a version number that changes on every update, so a thread that is pre-empted mid-pop can't be
+ * fooled by the same instance being taken and returned in the meantime (the "ABA" problem).
+ * <p>
+ * The limit and PoolExhaustedException behaviour is the same as for Pool, with the instance count held in an
+ * atomic counter. The hooks of a {@link ManagedFactory} are honoured just as
+ * they are by Pool, except that (with no lock to hold) they're never called
+ * while other threads are kept waiting.
+ * </p>
+ * 
+ * @note Each successful update of the stamped head allocates a small internal pair object inside the JDK's
+ *       AtomicStampedReference. This is short-lived young-generation garbage, but it is still garbage. Where
+ *       threads rarely contend for a pool, the plain {@link Pool} remains the better choice.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * 
+ * @param <C> The class of objects managed by this pool (The value-type of the pool)
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class ConcurrentPool<C extends Link<C>> implements ChainAllocator<C> {
+	/**
+	 * Create a limited pool of C instances. When the limit of instances is
+	 * reached and a caller tries to get another instance from the pool, they
+	 * will receive a PoolExhaustedException instead.
+	 * 
+	 * @param factory
+	 *            The factory to create new C instances when the pool is empty
+	 * @param limit
+	 *            The maximum number of C instantiations that will be made
+	 *            through the factory.
+	 */
+	public ConcurrentPool(Factory<C> factory, int limit) {
+		this.factory = factory;
+		this.limit = limit;
+		managed = (factory instanceof ManagedFactory) ? (ManagedFactory<C>) factory : null;
+	}
+
+	/**
+	 * Create a virtually unlimited pool of C instances.
+	 * 
+	 * @param factory
+	 *            The factory to create new C instances when the pool is empty
+	 */
+	public ConcurrentPool(Factory<C> factory) {
+		this(factory, 0);
+	}
+
+	/**
+	 * Return a C instance to the pool.
+	 * 
+	 * @see Pool#returnInstance(Link)
+	 */
+	@Override
+	public void returnInstance(C instance) {
+		recycle(instance);
+		while (true) {
+			final C head = chain.getReference();
+			final int stamp = chain.getStamp();
+			instance.next = head;
+			if (chain.compareAndSet(head, instance, stamp, stamp + 1)) {
+				returned(1);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get a new or recycled C instance.
+	 * 
+	 * @return The instance to be used (never null)
+	 * @throws PoolExhaustedException
+	 *             If a limited pool is already empty before this call.
+	 */
+	@Override
+	public C getInstance() throws PoolExhaustedException {
+		C instance = popPrepared();
+		if (null != instance) {
+			hits.increment();
+			borrowed(1);
+			return instance;
+		}
+		while (true) {
+			final int count = instanceCount.get();
+			if (0 != limit && limit <= count) {
+				// Another thread may have returned an instance since we looked
+				instance = popPrepared();
+				if (null != instance) {
+					hits.increment();
+					borrowed(1);
+					return instance;
+				}
+				exhaustions.increment();
+				throw Pool.POOL_EXHAUSTED;
+			}
+			if (instanceCount.compareAndSet(count, count + 1)) {
+				created(1, count + 1);
+				borrowed(1);
+				return factory.newInstance();
+			}
+		}
+	}
+
+	/**
+	 * Get up-to n new or recycled C instances in one step, linked together
+	 * through their next members. A run of recycled instances is detached
+	 * from the chain with a single compare-and-set and the instance count is
+	 * then reserved for the remainder in one go.
+	 * 
+	 * @see Pool#getChain(int)
+	 */
+	@Override
+	public C getChain(int n) {
+		return borrowChain(n, true);
+	}
+
+	/**
+	 * @see ChainAllocator#getFreeChain(int)
+	 */
+	@Override
+	public C getFreeChain(int n) {
+		return borrowChain(n, false);
+	}
+
+	/**
+	 * Get up-to n new or recycled C instances in one step.
+	 * 
+	 * @param n
+	 *            The number of instances wanted
+	 * @param prepare
+	 *            True to apply the {@link ManagedFactory}'s borrow-time hooks
+	 *            to recycled instances
+	 * @return The first of the instances obtained, or null if a limited pool
+	 *         is already exhausted.
+	 * @see #getChain(int)
+	 */
+	private C borrowChain(int n, boolean prepare) {
+		if (0 >= n) {
+			return null;
+		}
+		C head;
+		int obtained;
+		while (true) {
+			head = chain.getReference();
+			final int stamp = chain.getStamp();
+			if (null == head) {
+				obtained = 0;
+				break;
+			}
+			C tail = head;
+			obtained = 1;
+			while (obtained < n && null != tail.next) {
+				tail = tail.next;
+				obtained++;
+			}
+			if (chain.compareAndSet(head, tail.next, stamp, stamp + 1)) {
+				tail.next = null;
+				break;
+			}
+		}
+		if (prepare && null != managed) {
+			// Reset and validate the whole run, dropping any unfit instances
+			C instance = head;
+			C tail = head = null;
+			obtained = 0;
+			while (null != instance) {
+				final C next = instance.next;
+				instance.next = null;
+				if (prepared(instance)) {
+					if (null == head) {
+						head = instance;
+					} else {
+						tail.next = instance;
+					}
+					tail = instance;
+					obtained++;
+				}
+				instance = next;
+			}
+		}
+		hits.add(obtained);
+		final int created = reserve(n - obtained);
+		if (created < n - obtained) {
+			exhaustions.increment();
+		}
+		borrowed(obtained + created);
+		for (int i = 0; i < created; i++) {
+			final C instance = factory.newInstance();
+			instance.next = head;
+			head = instance;
+		}
+		return head;
+	}
+
+	/**
+	 * Get up-to n new or recycled C instances in one step.
+	 * 
+	 * @see Pool#getInstances(Link[], int)
+	 */
+	public int getInstances(C[] out, int n) {
+		int obtained = 0;
+		C instance = getChain(n);
+		while (null != instance) {
+			final C next = instance.next;
+			instance.next = null;
+			out[obtained++] = instance;
+			instance = next;
+		}
+		return obtained;
+	}
+
+	/**
+	 * Return a chain of C instances, linked through their next members, to the
+	 * pool with a single compare-and-set.
+	 * 
+	 * @see Pool#returnChain(Link)
+	 */
+	@Override
+	public void returnChain(C head) {
+		returnChain(head, null != managed && !managed.isResetDeferred());
+	}
+
+	/**
+	 * @see ChainAllocator#returnFreeChain(Link)
+	 */
+	@Override
+	public void returnFreeChain(C head) {
+		returnChain(head, false);
+	}
+
+	/**
+	 * Return a chain of C instances to the pool with a single compare-and-set.
+	 * 
+	 * @param head
+	 *            The first instance of the chain (may be null)
+	 * @param reset
+	 *            True to reset each instance on the way
+	 * @see #returnChain(Link)
+	 */
+	private void returnChain(C head, boolean reset) {
+		if (null == head) {
+			return;
+		}
+		C tail = head;
+		int count = 1;
+		if (reset) {
+			managed.reset(head);
+		}
+		while (null != tail.next) {
+			tail = tail.next;
+			count++;
+			if (reset) {
+				managed.reset(tail);
+			}
+		}
+		splice(head, tail);
+		returned(count);
+	}
+
+	/**
+	 * @see Pool#recycle(Link)
+	 */
+	@Override
+	public void recycle(C instance) {
+		if (null != managed && !managed.isResetDeferred()) {
+			managed.reset(instance);
+		}
+	}
+
+	/**
+	 * Reset (if resets are deferred) and validate an instance that a caching
+	 * layer is handing out again, destroying it if it's unfit.
+	 * 
+	 * @see ChainAllocator#reuse(Link)
+	 */
+	@Override
+	public boolean reuse(C instance) {
+		if (null == managed) {
+			return true;
+		}
+		if (managed.isResetDeferred()) {
+			managed.reset(instance);
+		}
+		if (managed.validate(instance)) {
+			return true;
+		}
+		// Not counted as discarded, as it wasn't free (see getStatistics)
+		managed.destroy(instance);
+		instanceCount.decrementAndGet();
+		inUse.decrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Return n C instances to the pool in one step.
+	 * 
+	 * @see Pool#returnInstances(Link[], int)
+	 */
+	public void returnInstances(C[] in, int n) {
+		if (0 >= n) {
+			return;
+		}
+		if (null != managed && !managed.isResetDeferred()) {
+			for (int i = 0; i < n; i++) {
+				managed.reset(in[i]);
+			}
+		}
+		final C head = in[0];
+		C tail = head;
+		in[0] = null;
+		for (int i = 1; i < n; i++) {
+			tail.next = in[i];
+			tail = in[i];
+			in[i] = null;
+		}
+		splice(head, tail);
+		returned(n);
+	}
+
+	/**
+	 * @see Pool#getInstanceCount()
+	 */
+	@Override
+	public int getInstanceCount() {
+		return instanceCount.get();
+	}
+
+	/**
+	 * Take a snapshot of the pool's counters. The counters are striped, so a
+	 * snapshot taken while other threads are busy with the pool is only
+	 * approximate. The number of instances in use is kept in an atomic
+	 * counter (one more atomic update next to the compare-and-set on the
+	 * chain's head for every borrow and return), so peak is the most that
+	 * have been in use at once since the last {@link #resetPeak()}.
+	 * 
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public void getStatistics(Statistics into) {
+		into.hits = hits.sum();
+		into.misses = misses.sum();
+		into.returns = returns.sum();
+		into.exhaustions = exhaustions.sum();
+		into.criticalExhaustions = 0;
+		into.sealViolations = 0;
+		into.softHits = 0;
+		into.softLost = 0;
+		into.free = (int) Math.max(0, into.returns - into.hits - discarded.sum());
+		into.highWater = highWater.get();
+		into.instances = instanceCount.get();
+		into.peak = peak.get();
+		into.limit = limit;
+	}
+
+	/**
+	 * Start a new window for the in-use peak, from the number in use now.
+	 * 
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public void resetPeak() {
+		peak.set(inUse.get());
+	}
+
+	/**
+	 * Unlink all reusable C instances in the pool, so the garbage-collector can
+	 * free them up. The whole chain is detached in a single step, so concurrent
+	 * callers of {@link #getInstance()} will see an empty pool from then on.
+	 * 
+	 * @see Pool#discardGarbage()
+	 * @see Recycler#discardGarbage()
+	 */
+	@Override
+	public void discardGarbage() {
+		discard(detach());
+	}
+
+	/**
+	 * Detach the chain, keep up-to maxRemaining instances from its head and
+	 * splice them back onto the (possibly since-grown) chain. Instances
+	 * returned by other threads while the chain is detached are unaffected.
+	 * 
+	 * @note While the chain is detached, other threads will see an empty pool
+	 *       and may allocate new instances (within the pool's limit) instead.
+	 * 
+	 * @see Recycler#discardGarbage(int)
+	 */
+	@Override
+	public void discardGarbage(int maxRemaining) {
+		if (0 >= maxRemaining) {
+			discardGarbage();
+			return;
+		}
+		final C kept = detach();
+		if (null == kept) {
+			return;
+		}
+		C tail = kept;
+		while (null != tail.next && 0 < --maxRemaining) {
+			tail = tail.next;
+		}
+		discard(tail.next);
+		tail.next = null;
+		splice(kept, tail);
+	}
+
+	/**
+	 * Present a human-readable representation of this instance, showing its
+	 * type and number of managed-instances.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "ConcurrentPool(" + instanceCount.get() + ")";
+	}
+
+	/**
+	 * Account for up-to wanted new instances against the limit atomically.
+	 * 
+	 * @param wanted
+	 *            The number of new instances the caller would like to create
+	 * @return The number of new instances the caller may actually create
+	 */
+	private int reserve(int wanted) {
+		while (0 < wanted) {
+			final int count = instanceCount.get();
+			final int allowed = 0 == limit ? wanted : Math.min(wanted, limit - count);
+			if (0 >= allowed) {
+				return 0;
+			}
+			if (instanceCount.compareAndSet(count, count + allowed)) {
+				created(allowed, count + allowed);
+				return allowed;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Account for newly-reserved instances in the counters.
+	 * 
+	 * @param count
+	 *            The number of instances reserved
+	 * @param total
+	 *            The instance count just after the reservation
+	 */
+	private void created(int count, int total) {
+		misses.add(count);
+		int peak = highWater.get();
+		while (peak < total && !highWater.compareAndSet(peak, total)) {
+			peak = highWater.get();
+		}
+	}
+
+	/**
+	 * Account for instances handed out, raising the in-use peak if it has
+	 * been passed. The peak is only written when it actually rises.
+	 * 
+	 * @param count
+	 *            The number of instances handed out
+	 */
+	private void borrowed(int count) {
+		if (0 >= count) {
+			return;
+		}
+		final int total = inUse.addAndGet(count);
+		int high = peak.get();
+		while (high < total && !peak.compareAndSet(high, total)) {
+			high = peak.get();
+		}
+	}
+
+	/**
+	 * Account for instances given back to the pool.
+	 * 
+	 * @param count
+	 *            The number of instances returned
+	 */
+	private void returned(int count) {
+		returns.add(count);
+		inUse.addAndGet(-count);
+	}
+
+	/**
+	 * Pop the instance at the head of the chain.
+	 * 
+	 * @return The former head of the chain or null if the chain was empty.
+	 */
+	private C pop() {
+		while (true) {
+			final C head = chain.getReference();
+			final int stamp = chain.getStamp();
+			if (null == head) {
+				return null;
+			}
+			if (chain.compareAndSet(head, head.next, stamp, stamp + 1)) {
+				head.next = null;
+				return head;
+			}
+		}
+	}
+
+	/**
+	 * Pop recycled instances until one is ready to be handed out.
+	 * 
+	 * @return The instance or null if the chain was (or became) empty.
+	 * @see #prepared(Link)
+	 */
+	private C popPrepared() {
+		C instance = pop();
+		while (null != instance && !prepared(instance)) {
+			instance = pop();
+		}
+		return instance;
+	}
+
+	/**
+	 * Get a recycled instance ready to be handed out: reset it (if resets are
+	 * deferred) and validate it, destroying it if it's unfit.
+	 * 
+	 * @param instance
+	 *            The recycled instance, already taken off the chain
+	 * @return True if the instance may be handed out, false if it has been
+	 *         destroyed.
+	 */
+	private boolean prepared(C instance) {
+		if (null == managed) {
+			return true;
+		}
+		if (managed.isResetDeferred()) {
+			managed.reset(instance);
+		}
+		if (managed.validate(instance)) {
+			return true;
+		}
+		managed.destroy(instance);
+		instanceCount.decrementAndGet();
+		discarded.increment();
+		return false;
+	}
+
+	/**
+	 * Atomically take the whole chain away from the pool.
+	 * 
+	 * @return The former head of the chain (possibly null)
+	 */
+	private C detach() {
+		while (true) {
+			final C head = chain.getReference();
+			final int stamp = chain.getStamp();
+			if (null == head || chain.compareAndSet(head, null, stamp, stamp + 1)) {
+				return head;
+			}
+		}
+	}
+
+	/**
+	 * Push a pre-linked segment of instances onto the chain in one step.
+	 * 
+	 * @param head The first instance of the segment
+	 * @param tail The last instance of the segment
+	 */
+	private void splice(C head, C tail) {
+		while (true) {
+			final C oldHead = chain.getReference();
+			final int stamp = chain.getStamp();
+			tail.next = oldHead;
+			if (chain.compareAndSet(oldHead, head, stamp, stamp + 1)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Unlink every instance of a detached chain and forget about them.
+	 * 
+	 * @param head The first instance of the detached chain (may be null)
+	 */
+	private void discard(C head) {
+		while (null != head) {
+			final C next = head.next;
+			head.next = null;
+			if (null != managed) {
+				managed.destroy(head);
+			}
+			head = next;
+			instanceCount.decrementAndGet();
+			discarded.increment();
+		}
+	}
+
+	private final Factory<C> factory;
+	private final ManagedFactory<C> managed;
+	private final int limit;
+	private final AtomicInteger instanceCount = new AtomicInteger();
+	private final AtomicInteger highWater = new AtomicInteger();
+	private final AtomicInteger inUse = new AtomicInteger();
+	private final AtomicInteger peak = new AtomicInteger();
+	private final AtomicStampedReference<C> chain = new AtomicStampedReference<C>(null, 0);
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder returns = new LongAdder();
+	private final LongAdder exhaustions = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+}
@@ -0,0 +1,331 @@
+package com.m0les.embedded;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <h2>An int-keyed {@link Tree} with primitive double values.</h2>
+ * 
+ * <p>The double-valued counterpart of {@link IntIntTree}, for running sums and weights. Each Node holds its value as a
+ * primitive double, so accumulating with {@link #add(int, double)} never goes through a Double.</p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   IntDoubleTree exposure = new IntDoubleTree( 100000 );
+ *   exposure.add( accountId, -fill.getNotional() );
+ *   ...
+ *   double value = exposure.get( key, 0 );
+ * </pre>
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class IntDoubleTree extends AbstractTree<IntDoubleTree.Node, IntDoubleTree.Node.NodeLink> {
+	/**
+	 * Create a new Tree with its own Node Pool that has no arbitrary size-limits.
+	 * The pool can grow indefinitely until environment-restrictions come into play
+	 * (memory size, etc.)
+	 */
+	public IntDoubleTree() {
+		super(new NodePool());
+	}
+
+	/**
+	 * Create a Tree with its own finite-sized Pool of recyclable Node instances. This
+	 * essentially limits the number of Nodes the Tree instance can contain.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of Node instances this Tree can hold.
+	 */
+	public IntDoubleTree(int poolSize) {
+		super(new NodePool( poolSize ));
+	}
+
+	/**
+	 * Create a Tree with an externally-provided Pool of Nodes. This is usually a
+	 * {@link NodePool} or {@link ConcurrentNodePool}, but any Allocator of
+	 * NodeLinks that ultimately draws from one of those will do.
+	 * 
+	 * @param pool The pool of Nodes to fill tree with (Must not be null).
+	 */
+	public IntDoubleTree(Allocator<Node.NodeLink> pool) throws NullPointerException {
+		super(pool);
+	}
+
+	/**
+	 * Insert a new key/value pair. The key comparisons are made here, and the
+	 * new Node is then linked in and the Tree rebalanced by
+	 * {@link AbstractTree#attach}.
+	 * 
+	 * @param key
+	 *            The key to refer to the new value by
+	 * @param value
+	 *            The value referred-to by key inside this Tree instance.
+	 * @throws PoolExhaustedException
+	 *             if this Tree was constructed with a finite-sized pool of
+	 *             recyclable Node instances and the pool has been exhausted.
+	 */
+	public synchronized void insert(int key, double value) throws PoolExhaustedException {
+		final Node node = getNode(key, value);
+		Node parent = head;
+		boolean lesser = false;
+		while (null != parent) {
+			lesser = parent.key > key;
+			final Node next = lesser ? parent.lesser : parent.greater;
+			if (null == next) {
+				break;
+			}
+			parent = next;
+		}
+		attach(node, parent, lesser);
+	}
+
+	/**
+	 * Add delta to the value stored under key, inserting it as the value if
+	 * there's no such key yet.
+	 * 
+	 * @param key
+	 *            The key of the value to add to
+	 * @param delta
+	 *            The amount to add
+	 * @return The value now stored under key
+	 * @throws PoolExhaustedException
+	 *             If the key had to be inserted and the Tree's limited pool
+	 *             has been exhausted.
+	 */
+	public synchronized double add(int key, double delta) throws PoolExhaustedException {
+		final Node node = find(key);
+		if (null == node) {
+			insert(key, delta);
+			return delta;
+		}
+		return node.value += delta;
+	}
+
+	/**
+	 * Get the value stored under a key.
+	 * 
+	 * @param key
+	 *            The key of the value to get
+	 * @param missing
+	 *            The value to return if there's no such key
+	 * @return The value stored under key, or missing if there isn't one.
+	 */
+	public synchronized double get(int key, double missing) {
+		final Node node = find(key);
+		return (null == node) ? missing : node.value;
+	}
+
+	/**
+	 * Find a Node stored within this Tree, referenced by its integer key.
+	 * 
+	 * @param key
+	 *            The key of the Node to look for
+	 * @return The Node with the specified key or null if no such key exists in
+	 *         the Tree
+	 */
+	public synchronized Node find(final int key) {
+		Node current = head;
+		while (null != current) {
+			if (key < current.key) {
+				current = current.lesser;
+			} else if (key > current.key) {
+				current = current.greater;
+			} else {
+				return current;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Generate a human-readable representation of this Tree instance.
+	 * 
+	 * @note This method composes Strings and thus generates garbage, use in
+	 *       embedded applications should be avoided generally, barring
+	 *       exceptional situations.
+	 * @see #nodeString
+	 */
+	@Override
+	public synchronized String toString() {
+		return "IntDoubleTree{" + nodeString(head) + "}";
+	}
+
+	/**
+	 * This is a node within a tree. Nodes have a key element so they can be
+	 * located and carry a double value inline for the user of the class.
+	 */
+	public static class Node extends AbstractNode<Node> {
+		private int key;
+		private double value;
+		private NodeLink link = new NodeLink();
+
+		/**
+		 * A Link to another node. This is public only so that pools of Nodes
+		 * can be named as Allocators of NodeLinks.
+		 * 
+		 * @see Link
+		 */
+		public class NodeLink extends Link<NodeLink> {
+			/**
+			 * @see Link
+			 */
+			public Node getNode() {
+				return Node.this;
+			}
+		}
+
+		/**
+		 * Get the key for this node
+		 * 
+		 * @return The key element of this node
+		 */
+		public int getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the value of this node
+		 * 
+		 * @return The value element of this node
+		 */
+		public double getValue() {
+			return value;
+		}
+
+		/**
+		 * Replace the value of this node in place
+		 * 
+		 * @param value
+		 *            The new value element of this node
+		 */
+		public void setValue(double value) {
+			this.value = value;
+		}
+
+		/**
+		 * @see AbstractNode#copy(AbstractNode)
+		 */
+		@Override
+		void copy(Node from) {
+			key = from.key;
+			value = from.value;
+		}
+
+		/**
+		 * @see AbstractNode#contentString()
+		 */
+		@Override
+		String contentString() {
+			return key + (prime ? "*" : "+") + value;
+		}
+	}
+
+	/**
+	 * Create or recycle a Node to store a new key/value pair in.
+	 * 
+	 * @param key
+	 *            The key for the Node to return
+	 * @param value
+	 *            The value for the Node to return
+	 * @return A newly-allocated or recently-recycled Node object
+	 * @throws PoolExhaustedException
+	 *             If this Tree has a limited resource pool that has been
+	 *             exhausted.
+	 */
+	private Node getNode(int key, double value) throws PoolExhaustedException {
+		Node node = pool.getInstance().getNode();
+		node.key = key;
+		node.value = value;
+		node.parent = node.lesser = node.greater = null;
+		node.prime = true;
+		return node;
+	}
+
+	/**
+	 * @see AbstractTree#discard(AbstractNode)
+	 */
+	@Override
+	void discard(Node node) {
+		pool.returnInstance(node.link);
+	}
+
+	/**
+	 * A Pool of Nodes for Trees to use. Nodes are instantiated and presented as their inner
+	 * NodeLink members, so that the Pool can manage them.
+	 * 
+	 * @see Factory
+	 * @see Pool
+	 * @author mgoodhew
+	 */
+	public static class NodePool extends Pool<Node.NodeLink>
+	{
+		public NodePool() {
+			super(new NodeFactory());
+		}
+
+		public NodePool(int poolSize) {
+			super(new NodeFactory(), poolSize);
+		}
+	}
+
+	/**
+	 * A lock-free Pool of Nodes for Trees that are shared between, or churned by, many threads.
+	 * 
+	 * @see ConcurrentPool
+	 * @see NodePool
+	 */
+	public static class ConcurrentNodePool extends ConcurrentPool<Node.NodeLink>
+	{
+		public ConcurrentNodePool() {
+			super(new NodeFactory());
+		}
+
+		public ConcurrentNodePool(int poolSize) {
+			super(new NodeFactory(), poolSize);
+		}
+	}
+
+	/**
+	 * Instantiates Nodes for the Node pools, presenting them as their inner NodeLink members, and clears the
+	 * contents of Nodes as they're returned.
+	 */
+	private static class NodeFactory extends ManagedFactory<Node.NodeLink> {
+		/**
+		 * @see Factory
+		 */
+		@Override
+		public Node.NodeLink newInstance() {
+			return new Node().link;
+		}
+
+		/**
+		 * @see ManagedFactory#reset(Object)
+		 */
+		@Override
+		public void reset(Node.NodeLink link) {
+			final Node node = link.getNode();
+			node.value = 0;
+			node.lesser = null;
+			node.greater = null;
+			node.parent = null;
+		}
+	}
+}
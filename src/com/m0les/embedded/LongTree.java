@@ -0,0 +1,297 @@
+package com.m0les.embedded;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <h2>A long-keyed version of {@link Tree}.</h2>
+ * 
+ * <p>This is the same pooled red-black tree as {@link Tree}, with the same construction, recycling and navigation API,
+ * but its keys are primitive longs, so nanosecond timestamps, packed composite IDs and the like can be used as keys
+ * without truncation or boxing. Its Nodes are its own (LongTree.Node), so they're pooled separately from a Tree's,
+ * through {@link NodePool} or {@link ConcurrentNodePool}.</p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   LongTree&lt;Order&gt; orders = new LongTree&lt;Order&gt;( 100000 );
+ *   orders.insert( order.getTimestamp(), order );
+ *   ...
+ *   for( LongTree.Node&lt;Order&gt; node = orders.getFirst(); null != node; node = orders.getNext( node ) ){
+ *     ...
+ *   }
+ * </pre>
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <V> The subclass of Objects stored within the tree (the value-type of
+ *            the tree)
+ * 
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class LongTree<V> extends AbstractTree<LongTree.Node<V>, LongTree.Node<V>.NodeLink> {
+	/**
+	 * Create a new Tree with its own Node Pool that has no arbitrary size-limits.
+	 * The pool can grow indefinitely until environment-restrictions come into play
+	 * (memory size, etc.)
+	 */
+	public LongTree() {
+		super(new NodePool<V>());
+	}
+
+	/**
+	 * Create a Tree with its own finite-sized Pool of recyclable Node instances. This
+	 * essentially limits the number of Nodes the Tree instance can contain.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of Node instances this Tree can hold.
+	 */
+	public LongTree(int poolSize) {
+		super(new NodePool<V>( poolSize ));
+	}
+
+	/**
+	 * Create a Tree with an externally-provided Pool of Nodes. This is usually a
+	 * {@link NodePool} or {@link ConcurrentNodePool}, but any Allocator of
+	 * NodeLinks that ultimately draws from one of those will do.
+	 * 
+	 * @param pool The pool of Nodes to fill tree with (Must not be null).
+	 */
+	public LongTree(Allocator<Node<V>.NodeLink> pool) throws NullPointerException {
+		super(pool);
+	}
+
+	/**
+	 * Insert a new key/value pair. The key comparisons are made here, and the
+	 * new Node is then linked in and the Tree rebalanced by
+	 * {@link AbstractTree#attach}.
+	 * 
+	 * @param key
+	 *            The key to refer to the new value by
+	 * @param value
+	 *            The instance referred-to by key inside this Tree instance.
+	 * @throws PoolExhaustedException
+	 *             if this Tree was constructed with a finite-sized pool of
+	 *             recyclable Node instances and the pool has been exhausted.
+	 */
+	public synchronized void insert(long key, V value) throws PoolExhaustedException {
+		final Node<V> node = getNode(key, value);
+		Node<V> parent = head;
+		boolean lesser = false;
+		while (null != parent) {
+			lesser = parent.key > key;
+			final Node<V> next = lesser ? parent.lesser : parent.greater;
+			if (null == next) {
+				break;
+			}
+			parent = next;
+		}
+		attach(node, parent, lesser);
+	}
+
+	/**
+	 * Find a Node stored within this Tree, referenced by its long key.
+	 * 
+	 * @param key
+	 *            The key of the Node to look for
+	 * @return The Node with the specified key or null if no such key exists in
+	 *         the Tree
+	 */
+	public synchronized Node<V> find(final long key) {
+		Node<V> current = head;
+		while (null != current) {
+			if (key < current.key) {
+				current = current.lesser;
+			} else if (key > current.key) {
+				current = current.greater;
+			} else {
+				return current;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Generate a human-readable representation of this Tree instance.
+	 * 
+	 * @note This method composes Strings and thus generates garbage, use in
+	 *       embedded applications should be avoided generally, barring
+	 *       exceptional situations.
+	 * @see #nodeString
+	 */
+	@Override
+	public synchronized String toString() {
+		return "LongTree{" + nodeString(head) + "}";
+	}
+
+	/**
+	 * This is a node within a tree. Nodes have a key element so they can be
+	 * located and have a value element that they carry for the user of the
+	 * class. The key and value may be different instances and classes, but it's
+	 * quite possible and legal that they are the same instance,
+	 * 
+	 * @param <V>
+	 *            The value-class for node elements
+	 */
+	public static class Node<V> extends AbstractNode<Node<V>> {
+		private long key;
+		private V value;
+		private NodeLink link = new NodeLink();
+
+		/**
+		 * A Link to another node. This is public only so that pools of Nodes
+		 * can be named as Allocators of NodeLinks.
+		 * 
+		 * @see Link
+		 */
+		public class NodeLink extends Link<NodeLink> {
+			/**
+			 * @see Link
+			 */
+			public Node<V> getNode() {
+				return Node.this;
+			}
+		}
+
+		/**
+		 * Get the key for this node
+		 * 
+		 * @return The key element of this node
+		 */
+		public long getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the value of this node
+		 * 
+		 * @return The value element of this node
+		 */
+		public V getValue() {
+			return value;
+		}
+
+		/**
+		 * @see AbstractNode#copy(AbstractNode)
+		 */
+		@Override
+		void copy(Node<V> from) {
+			key = from.key;
+			value = from.value;
+		}
+
+		/**
+		 * @see AbstractNode#contentString()
+		 */
+		@Override
+		String contentString() {
+			return key + (prime ? "*" : "+") + value;
+		}
+	}
+
+	/**
+	 * Create or recycle a Node to store a new key/value pair in.
+	 * 
+	 * @param key
+	 *            The key for the Node to return
+	 * @param value
+	 *            The value for the Node to return
+	 * @return A newly-allocated or recently-recycled Node object
+	 * @throws PoolExhaustedException
+	 *             If this Tree has a limited resource pool that has been
+	 *             exhausted.
+	 */
+	private Node<V> getNode(long key, V value) throws PoolExhaustedException {
+		Node<V> node = pool.getInstance().getNode();
+		node.key = key;
+		node.value = value;
+		node.parent = node.lesser = node.greater = null;
+		node.prime = true;
+		return node;
+	}
+
+	/**
+	 * @see AbstractTree#discard(AbstractNode)
+	 */
+	@Override
+	void discard(Node<V> node) {
+		pool.returnInstance(node.link);
+	}
+
+	/**
+	 * A Pool of Nodes for Trees to use. Nodes are instantiated and presented as their inner
+	 * NodeLink members, so that the Pool can manage them.
+	 * 
+	 * @see Factory
+	 * @see Pool
+	 * @author mgoodhew
+	 */
+	public static class NodePool<V> extends Pool<Node<V>.NodeLink>
+	{
+		public NodePool() {
+			super(new NodeFactory<V>());
+		}
+
+		public NodePool(int poolSize) {
+			super(new NodeFactory<V>(), poolSize);
+		}
+	}
+
+	/**
+	 * A lock-free Pool of Nodes for Trees that are shared between, or churned by, many threads.
+	 * 
+	 * @see ConcurrentPool
+	 * @see NodePool
+	 */
+	public static class ConcurrentNodePool<V> extends ConcurrentPool<Node<V>.NodeLink>
+	{
+		public ConcurrentNodePool() {
+			super(new NodeFactory<V>());
+		}
+
+		public ConcurrentNodePool(int poolSize) {
+			super(new NodeFactory<V>(), poolSize);
+		}
+	}
+
+	/**
+	 * Instantiates Nodes for the Node pools, presenting them as their inner NodeLink members, and clears the
+	 * contents of Nodes as they're returned.
+	 */
+	private static class NodeFactory<V> extends ManagedFactory<Node<V>.NodeLink> {
+		/**
+		 * @see Factory
+		 */
+		@Override
+		public Node<V>.NodeLink newInstance() {
+			return new Node<V>().link;
+		}
+
+		/**
+		 * @see ManagedFactory#reset(Object)
+		 */
+		@Override
+		public void reset(Node<V>.NodeLink link) {
+			final Node<V> node = link.getNode();
+			node.value = null;
+			node.lesser = null;
+			node.greater = null;
+			node.parent = null;
+		}
+	}
+}
@@ -0,0 +1,366 @@
+package com.m0les.embedded;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <p>
+ * A per-thread caching layer in front of a shared {@link Pool}, after the "magazine" design of Bonwick's slab
+ * allocator (and jemalloc's thread caches). Each thread that uses a MagazinePool gets its own small, bounded
+ * chain (its "magazine") of recycled C instances. Instances are borrowed from and returned to the calling thread's
+ * magazine whenever possible, so most calls never take the shared Pool's lock. When a magazine runs dry it is
+ * refilled with a batch of instances taken from the Pool in one step and when it overflows, a batch is handed back
+ * the same way.
+ * </p>
+ * <p>
+ * Instances parked in a magazine still count as allocated from the backing Pool. So that they aren't stranded in
+ * the magazines of threads that have gone idle, {@link #discardGarbage()} first empties every thread's magazine
+ * back into the Pool. The same happens if a limited Pool is exhausted while instances are parked elsewhere.
+ * </p>
+ * <p>
+ * If the Pool's factory is a {@link ManagedFactory}, instances are reset as they're returned to a magazine, and
+ * reset or validated as they're handed out of it, through {@link Pool#recycle(Link)} and {@link Pool#reuse(Link)}.
+ * Batches moved between the magazines and the Pool aren't reset again.
+ * </p>
+ * 
+ * @note The owning thread still uses an (uncontended) compare-and-set on its own magazine, so that another thread
+ *       can empty it at any time without a lock.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <C> The class of objects managed by this pool (The value-type of the pool)
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class MagazinePool<C extends Link<C>> implements Allocator<C> {
+	/**
+	 * Create a magazine layer in front of a shared Pool.
+	 * 
+	 * @param backing
+	 *            The Pool that actually creates (and ultimately recycles) C instances
+	 * @param magazineSize
+	 *            The maximum number of instances each thread may keep for itself. Half this many are moved to or
+	 *            from the backing Pool at a time.
+	 */
+	public MagazinePool(Pool<C> backing, int magazineSize) {
+		this.backing = backing;
+		this.magazineSize = magazineSize;
+		batchSize = Math.max(1, magazineSize / 2);
+	}
+
+	/**
+	 * Get a new or recycled C instance, from the calling thread's magazine if possible.
+	 * 
+	 * @return The instance to be used (never null)
+	 * @throws PoolExhaustedException
+	 *             If the backing Pool is limited and there are no instances left in it, or in any thread's magazine.
+	 */
+	@Override
+	public C getInstance() throws PoolExhaustedException {
+		final Magazine<C> magazine = magazines.get();
+		C instance;
+		while (true) {
+			instance = magazine.pop();
+			if (null == instance) {
+				instance = backing.takeChain(batchSize, false);
+				if (null == instance) {
+					break;
+				}
+				magazine.load(instance.next);
+				instance.next = null;
+			}
+			if (backing.reuse(instance)) {
+				magazine.hits++;
+				return instance;
+			}
+		}
+		try {
+			instance = backing.getInstance();
+		} catch (PoolExhaustedException e) {
+			flush();
+			try {
+				instance = backing.getInstance();
+			} catch (PoolExhaustedException again) {
+				exhaustions.incrementAndGet();
+				throw again;
+			}
+		}
+		magazine.misses++;
+		return instance;
+	}
+
+	/**
+	 * Return a C instance to the calling thread's magazine, passing a batch on to the backing Pool if the magazine
+	 * is full.
+	 * 
+	 * @see Allocator#returnInstance(Object)
+	 */
+	@Override
+	public void returnInstance(C instance) {
+		backing.recycle(instance);
+		final Magazine<C> magazine = magazines.get();
+		magazine.returns++;
+		if (magazineSize <= magazine.push(instance)) {
+			backing.returnFreeChain(magazine.unload(batchSize));
+		}
+	}
+
+	/**
+	 * @see Pool#getInstanceCount()
+	 */
+	@Override
+	public int getInstanceCount() {
+		return backing.getInstanceCount();
+	}
+
+	/**
+	 * Take a snapshot of the counters. Hits, misses and returns are counted per-thread in each magazine (so they
+	 * cost no shared writes) and summed here, which makes a snapshot taken while other threads are busy only
+	 * approximate. The instance count, high-water mark, peak and limit are those of the backing Pool, which sees
+	 * instances parked in magazines as in use.
+	 * 
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public synchronized void getStatistics(Statistics into) {
+		backing.getStatistics(into);
+		long hits = retiredHits;
+		long misses = retiredMisses;
+		long returns = retiredReturns;
+		int parked = 0;
+		for (Magazine<C> magazine = registry; null != magazine; magazine = magazine.next) {
+			hits += magazine.hits;
+			misses += magazine.misses;
+			returns += magazine.returns;
+			parked += magazine.count;
+		}
+		into.hits = hits;
+		into.misses = misses;
+		into.returns = returns;
+		into.exhaustions = exhaustions.get();
+		into.free += Math.max(0, parked);
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public void resetPeak() {
+		backing.resetPeak();
+	}
+
+	/**
+	 * Empty every thread's magazine back into the backing Pool and then discard all of its recycled instances.
+	 * 
+	 * @see Recycler#discardGarbage()
+	 */
+	@Override
+	public void discardGarbage() {
+		flush();
+		backing.discardGarbage();
+	}
+
+	/**
+	 * Empty every thread's magazine back into the backing Pool and then discard all but maxRemaining of its
+	 * recycled instances.
+	 * 
+	 * @see Recycler#discardGarbage(int)
+	 */
+	@Override
+	public void discardGarbage(int maxRemaining) {
+		flush();
+		backing.discardGarbage(maxRemaining);
+	}
+
+	/**
+	 * Empty every thread's magazine back into the backing Pool. Magazines belonging to threads that have since died
+	 * are forgotten about at the same time.
+	 */
+	public synchronized void flush() {
+		Magazine<C> previous = null;
+		Magazine<C> magazine = registry;
+		while (null != magazine) {
+			backing.returnFreeChain(magazine.take());
+			final Magazine<C> next = magazine.next;
+			if (magazine.owner.isAlive()) {
+				previous = magazine;
+			} else {
+				retiredHits += magazine.hits;
+				retiredMisses += magazine.misses;
+				retiredReturns += magazine.returns;
+				if (null == previous) {
+					registry = next;
+				} else {
+					previous.next = next;
+				}
+			}
+			magazine = next;
+		}
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "MagazinePool(" + backing.getInstanceCount() + ")";
+	}
+
+	/**
+	 * Add a newly-created magazine to the registry that {@link #flush()} walks.
+	 * 
+	 * @param magazine
+	 *            The calling thread's new magazine
+	 */
+	private synchronized void register(Magazine<C> magazine) {
+		magazine.next = registry;
+		registry = magazine;
+	}
+
+	/**
+	 * One thread's chain of recycled instances. Only the owning thread pushes onto, or pops from, the chain. Any
+	 * other thread may only take the whole chain away at once, so the owner's compare-and-set operations can't be
+	 * fooled by an instance leaving and re-joining the chain (there is no "ABA" problem).
+	 */
+	private static final class Magazine<C extends Link<C>> extends Link<Magazine<C>> {
+		Magazine(Thread owner) {
+			this.owner = owner;
+		}
+
+		/**
+		 * Pop the instance at the head of this magazine (Owning thread only).
+		 * 
+		 * @return The former head or null if the magazine is empty.
+		 */
+		C pop() {
+			while (true) {
+				final C head = chain.get();
+				if (null == head) {
+					count = 0;
+					return null;
+				}
+				if (chain.compareAndSet(head, head.next)) {
+					head.next = null;
+					count--;
+					return head;
+				}
+			}
+		}
+
+		/**
+		 * Push an instance onto this magazine (Owning thread only).
+		 * 
+		 * @param instance
+		 *            The instance to push
+		 * @return The number of instances now in the magazine
+		 */
+		int push(C instance) {
+			while (true) {
+				final C head = chain.get();
+				instance.next = head;
+				if (chain.compareAndSet(head, instance)) {
+					count = null == head ? 1 : count + 1;
+					return count;
+				}
+			}
+		}
+
+		/**
+		 * Add a pre-linked chain of instances to this (empty) magazine (Owning thread only).
+		 * 
+		 * @param head
+		 *            The first instance of the chain (may be null)
+		 */
+		void load(C head) {
+			int loaded = 0;
+			for (C instance = head; null != instance; instance = instance.next) {
+				loaded++;
+			}
+			chain.set(head);
+			count = loaded;
+		}
+
+		/**
+		 * Detach up-to max instances from the head of this magazine (Owning thread only).
+		 * 
+		 * @param max
+		 *            The maximum number of instances to detach
+		 * @return The first detached instance, linked to the rest, or null if the magazine was empty.
+		 */
+		C unload(int max) {
+			while (true) {
+				final C head = chain.get();
+				if (null == head) {
+					count = 0;
+					return null;
+				}
+				C tail = head;
+				int taken = 1;
+				while (taken < max && null != tail.next) {
+					tail = tail.next;
+					taken++;
+				}
+				if (chain.compareAndSet(head, tail.next)) {
+					tail.next = null;
+					count -= taken;
+					return head;
+				}
+			}
+		}
+
+		/**
+		 * Take the whole chain away from this magazine (Any thread).
+		 * 
+		 * @return The first instance of the former chain (possibly null)
+		 */
+		C take() {
+			count = 0; // The owner resets this itself anyway, but snapshots shouldn't see the stale value meanwhile
+			return chain.getAndSet(null);
+		}
+
+		private final Thread owner;
+		private final AtomicReference<C> chain = new AtomicReference<C>();
+		private int count = 0; // Only accurate in the owning thread and reset whenever it finds the chain empty
+		private long hits = 0; // Only written by the owning thread
+		private long misses = 0; // Only written by the owning thread
+		private long returns = 0; // Only written by the owning thread
+	}
+
+	private final Pool<C> backing;
+	private final int magazineSize;
+	private final int batchSize;
+	private Magazine<C> registry = null;
+	private long retiredHits = 0; // Counters of magazines whose threads have died
+	private long retiredMisses = 0;
+	private long retiredReturns = 0;
+	private final AtomicLong exhaustions = new AtomicLong();
+	private final ThreadLocal<Magazine<C>> magazines = new ThreadLocal<Magazine<C>>() {
+		@Override
+		protected Magazine<C> initialValue() {
+			final Magazine<C> magazine = new Magazine<C>(Thread.currentThread());
+			register(magazine);
+			return magazine;
+		}
+	};
+}
@@ -0,0 +1,289 @@
+package com.m0les.embedded;
+
+/**
+ * <p>
+ * Spends idle time on housekeeping, so that recycling work (trimming pools, ticking {@link TrimPolicy}s and the like)
+ * happens in the quiet slices of a latency-sensitive loop instead of in the middle of real work. An event loop calls
+ * {@link #runIdle(long)} with the time it can spare whenever it finds nothing else to do, and the scheduler runs
+ * small steps of its registered {@link Task}s in round-robin order until either the budget is spent or none of them
+ * has anything left to do.
+ * </p>
+ * <p>
+ * Tasks should keep each step short, since the budget is only checked between steps. The factory methods here
+ * supply tasks that trim a {@link Recycler} a chunk at a time and that tick a TrimPolicy at a fixed period.
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   MaintenanceScheduler maintenance = new MaintenanceScheduler();
+ *   maintenance.add( MaintenanceScheduler.trimmer( tree, tree, 100, 64 ) );
+ *   ...
+ *   while( running ){
+ *     if( !handleEvents() ){
+ *       maintenance.runIdle( 50000 );
+ *     }
+ *   }
+ * </pre>
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class MaintenanceScheduler {
+	/**
+	 * A unit of maintenance work that can be done a small step at a time.
+	 */
+	public interface Task {
+		/**
+		 * Do one short step of work.
+		 * 
+		 * @return True if there is more work to do right now, false if the task is idle until later.
+		 */
+		public boolean runStep();
+	}
+
+	/**
+	 * Add a task to the end of the round-robin.
+	 * 
+	 * @param task
+	 *            The task to add
+	 */
+	public synchronized void add(Task task) {
+		final Entry entry = new Entry(task);
+		if (null == tasks) {
+			tasks = entry;
+		} else {
+			Entry last = tasks;
+			while (null != last.next) {
+				last = last.next;
+			}
+			last.next = entry;
+		}
+	}
+
+	/**
+	 * Remove a task.
+	 * 
+	 * @param task
+	 *            The task to remove
+	 * @return True if it had been added
+	 */
+	public synchronized boolean remove(Task task) {
+		Entry previous = null;
+		for (Entry entry = tasks; null != entry; entry = entry.next) {
+			if (task == entry.task) {
+				if (null == previous) {
+					tasks = entry.next;
+				} else {
+					previous.next = entry.next;
+				}
+				if (cursor == entry) {
+					cursor = entry.next;
+				}
+				entry.next = null;
+				return true;
+			}
+			previous = entry;
+		}
+		return false;
+	}
+
+	/**
+	 * Spend up-to nanosBudget nanoseconds running steps of the registered tasks. Each call carries on from the task
+	 * after the last one stepped in the previous call, so every task gets a turn even with small budgets.
+	 * 
+	 * @param nanosBudget
+	 *            The idle time available
+	 * @return The time actually used (This can overrun the budget by up to one step)
+	 */
+	public synchronized long runIdle(long nanosBudget) {
+		final long start = System.nanoTime();
+		long used = 0;
+		int idle = 0; // Consecutive tasks with nothing to do
+		final int count = size();
+		while (0 < count && idle < count && used < nanosBudget) {
+			if (null == cursor) {
+				cursor = tasks;
+			}
+			final Entry entry = cursor;
+			cursor = entry.next;
+			if (entry.task.runStep()) {
+				idle = 0;
+			} else {
+				idle++;
+			}
+			steps++;
+			used = System.nanoTime() - start;
+		}
+		runs++;
+		budgetGiven += nanosBudget;
+		budgetUsed += used;
+		lastUsed = used;
+		return used;
+	}
+
+	/**
+	 * Get the number of tasks added.
+	 * 
+	 * @return The number of tasks in the round-robin
+	 */
+	public synchronized int size() {
+		int size = 0;
+		for (Entry entry = tasks; null != entry; entry = entry.next) {
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Get the number of {@link #runIdle(long)} calls so far.
+	 * 
+	 * @return The number of idle slices offered
+	 */
+	public synchronized long getRuns() {
+		return runs;
+	}
+
+	/**
+	 * Get the number of task steps run so far.
+	 * 
+	 * @return The total number of steps
+	 */
+	public synchronized long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Get the total idle time offered so far.
+	 * 
+	 * @return The sum of all budgets, in nanoseconds
+	 */
+	public synchronized long getBudgetGiven() {
+		return budgetGiven;
+	}
+
+	/**
+	 * Get the total idle time actually used so far.
+	 * 
+	 * @return The sum of all time used, in nanoseconds
+	 */
+	public synchronized long getBudgetUsed() {
+		return budgetUsed;
+	}
+
+	/**
+	 * Get the time used by the most recent {@link #runIdle(long)} call.
+	 * 
+	 * @return The time used, in nanoseconds
+	 */
+	public synchronized long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "MaintenanceScheduler(" + size() + ", " + getBudgetUsed() + "/" + getBudgetGiven() + ")";
+	}
+
+	/**
+	 * Create a task that trims a Recycler down to a floor, at most chunk free instances per step.
+	 * 
+	 * @param recycler
+	 *            The Recycler to trim
+	 * @param meter
+	 *            Where to read the Recycler's free count from (usually the Recycler itself)
+	 * @param floor
+	 *            The number of free instances to leave
+	 * @param chunk
+	 *            The maximum number of free instances to discard per step (at least 1)
+	 * @return The new task
+	 * @note Trimming a {@link Pool} keeps the instances at the head of its chain, so each step still walks past
+	 *       the instances it keeps. Keep floors modest or chunks large for very big pools.
+	 */
+	public static Task trimmer(final Recycler recycler, final Metered meter, final int floor, int chunk) {
+		final int step = Math.max(1, chunk);
+		return new Task() {
+			@Override
+			public boolean runStep() {
+				meter.getStatistics(snapshot);
+				if (snapshot.free <= floor) {
+					return false;
+				}
+				final int target = Math.max(floor, snapshot.free - step);
+				recycler.discardGarbage(target);
+				return target > floor;
+			}
+
+			private final Statistics snapshot = new Statistics();
+		};
+	}
+
+	/**
+	 * Create a task that ticks a TrimPolicy whenever at least a period has passed since its last tick.
+	 * 
+	 * @param policy
+	 *            The policy to tick
+	 * @param periodNanos
+	 *            The minimum time between ticks
+	 * @return The new task
+	 */
+	public static Task ticker(final TrimPolicy policy, final long periodNanos) {
+		return new Task() {
+			@Override
+			public boolean runStep() {
+				final long now = System.nanoTime();
+				if (!ticked || now - last >= periodNanos) {
+					policy.tick();
+					last = now;
+					ticked = true;
+				}
+				return false;
+			}
+
+			private boolean ticked = false;
+			private long last = 0;
+		};
+	}
+
+	/**
+	 * A task's place in the round-robin.
+	 */
+	private static final class Entry extends Link<Entry> {
+		Entry(Task task) {
+			this.task = task;
+		}
+
+		private final Task task;
+	}
+
+	private Entry tasks = null;
+	private Entry cursor = null;
+	private long runs = 0;
+	private long steps = 0;
+	private long budgetGiven = 0;
+	private long budgetUsed = 0;
+	private long lastUsed = 0;
+}
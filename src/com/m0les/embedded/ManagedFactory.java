@@ -0,0 +1,107 @@
+package com.m0les.embedded;
+
+/**
+ * <p>
+ * A {@link Factory} that also looks after the rest of its instances' lives in a pool. Pools ({@link Pool},
+ * {@link ConcurrentPool} and {@link ObjectPool}) made with a ManagedFactory call its hooks:
+ * </p>
+ * <ul>
+ * <li>{@link #reset(Object)} when an instance is returned, so callers don't each need their own clearing code. A
+ * factory made with deferReset set instead has its instances reset when they're next handed out, which takes the cost
+ * off the (often latency-critical) return path and lets a batch borrow reset its whole batch at once.</li>
+ * <li>{@link #validate(Object)} before a recycled instance is handed out. One that fails is destroyed and forgotten,
+ * and the caller is given another (or a new) instance instead.</li>
+ * <li>{@link #destroy(Object)} when an instance is dropped for good, by discardGarbage() or a failed validation, so
+ * resources such as native handles can be released.</li>
+ * </ul>
+ * <p>
+ * Each hook does nothing by default, so subclasses only override the ones they need.
+ * </p>
+ * 
+ * @note Hooks called at borrow time and by discardGarbage() may be called while the pool's lock is held, so they
+ *       should be brief and mustn't call back into the pool. No hook may change an instance's next member. A
+ *       {@link MagazinePool} or {@link ChildPool} in front of the pool applies the hooks as instances are returned to
+ *       and handed out of its own free chains (see {@link ChainAllocator#reuse(Link)}), so each instance is still
+ *       reset once per use.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <C> The subclass of Object that this Factory produces (The value-type of the Factory)
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public abstract class ManagedFactory<C> implements Factory<C> {
+	/**
+	 * Create a factory whose instances are reset as they are returned.
+	 */
+	protected ManagedFactory() {
+		this(false);
+	}
+
+	/**
+	 * Create a factory.
+	 * 
+	 * @param deferReset
+	 *            True to reset instances when they're next handed out, rather than when they're returned
+	 */
+	protected ManagedFactory(boolean deferReset) {
+		this.deferReset = deferReset;
+	}
+
+	/**
+	 * Clear an instance's state (especially Object references) ready for reuse.
+	 * 
+	 * @param instance
+	 *            The instance to reset
+	 */
+	public void reset(C instance) {
+	}
+
+	/**
+	 * Check that a recycled instance is still fit to use.
+	 * 
+	 * @param instance
+	 *            The instance about to be handed out
+	 * @return True if the instance may be used, false if it must be destroyed.
+	 */
+	public boolean validate(C instance) {
+		return true;
+	}
+
+	/**
+	 * Release any resources held by an instance that the pool is forgetting about.
+	 * 
+	 * @param instance
+	 *            The instance being dropped
+	 */
+	public void destroy(C instance) {
+	}
+
+	/**
+	 * Find out when instances are reset.
+	 * 
+	 * @return True if instances are reset when handed out, false if they're reset when returned.
+	 */
+	public final boolean isResetDeferred() {
+		return deferReset;
+	}
+
+	private final boolean deferReset;
+}
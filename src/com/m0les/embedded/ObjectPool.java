@@ -0,0 +1,431 @@
+package com.m0les.embedded;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <p>
+ * A non-intrusive alternative to {@link Pool} for classes that can't extend {@link Link}, such as JDK and
+ * third-party types (StringBuilder, ByteBuffer, long[] and so on). Free instances are kept in an array used as a
+ * stack instead of being chained through the instances themselves, so no wrapper objects are needed. The most
+ * recently returned instance is always the next one handed out, while it's still likely to be in a CPU cache.
+ * </p>
+ * <p>
+ * The Factory, limit and PoolExhaustedException behaviour is the same as for Pool, as are the batch methods and
+ * the {@link Statistics} kept. The stack of a limited pool is preallocated to the limit, so it never needs to grow.
+ * An unlimited pool's stack grows (doubling) the first time more instances are returned than it can hold, which is
+ * the only time this class produces garbage of its own.
+ * </p>
+ * <p>
+ * The hooks of a {@link ManagedFactory} are honoured just as they are by Pool, which is the simplest way to pool
+ * resource-holding objects such as buffers and native handles safely.
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   ObjectPool&lt;StringBuilder&gt; builders = new ObjectPool&lt;StringBuilder&gt;( new Factory&lt;StringBuilder&gt;(){
+ *     public StringBuilder newInstance(){
+ *       return new StringBuilder( 256 );
+ *     }
+ *   }, 64 );
+ *   StringBuilder builder = builders.getInstance();
+ *   ...
+ *   builder.setLength( 0 );
+ *   builders.returnInstance( builder );
+ * </pre>
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <T> The class of objects managed by this pool (The value-type of the pool)
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class ObjectPool<T> implements Allocator<T> {
+	/**
+	 * Create a limited pool of T instances. When the limit of instances is reached and a caller tries to get another
+	 * instance from the pool, they will receive a PoolExhaustedException instead.
+	 * 
+	 * @param factory
+	 *            The factory to create new T instances when the pool is empty
+	 * @param limit
+	 *            The maximum number of T instantiations that will be made through the factory.
+	 */
+	public ObjectPool(Factory<T> factory, int limit) {
+		this.factory = factory;
+		this.limit = limit;
+		managed = (factory instanceof ManagedFactory) ? (ManagedFactory<T>) factory : null;
+		free = new Object[0 < limit ? limit : INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Create a virtually unlimited pool of T instances.
+	 * 
+	 * @param factory
+	 *            The factory to create new T instances when the pool is empty
+	 */
+	public ObjectPool(Factory<T> factory) {
+		this(factory, 0);
+	}
+
+	/**
+	 * Return a T instance to the pool. It's assumed that the caller has already reset its state (unless the factory
+	 * is a {@link ManagedFactory}, which does so) and that it no longer holds a reference to the instance.
+	 * 
+	 * @see Pool#returnInstance(Link)
+	 */
+	@Override
+	public void returnInstance(T instance) {
+		if (null != managed && !managed.isResetDeferred()) {
+			managed.reset(instance);
+		}
+		synchronized (this) {
+			if (free.length == top) {
+				grow(top + 1);
+			}
+			free[top++] = instance;
+			returns++;
+		}
+	}
+
+	/**
+	 * Get a new or recycled T instance.
+	 * 
+	 * @return The instance to be used (never null)
+	 * @throws PoolExhaustedException
+	 *             If a limited pool is already empty before this call.
+	 */
+	@Override
+	public T getInstance() throws PoolExhaustedException {
+		final T instance = tryGetInstance();
+		if (null == instance) {
+			throw Pool.POOL_EXHAUSTED;
+		}
+		return instance;
+	}
+
+	/**
+	 * Get a new or recycled T instance if one is available straight away.
+	 * 
+	 * @return The instance to be used, or null if a limited pool is exhausted.
+	 */
+	public synchronized T tryGetInstance() {
+		while (0 < top) {
+			final T instance = pop();
+			if (prepared(instance)) {
+				hits++;
+				track();
+				return instance;
+			}
+		}
+		if (0 != reserve(1)) {
+			return factory.newInstance();
+		}
+		exhaustions++;
+		return null;
+	}
+
+	/**
+	 * Get up-to n new or recycled T instances in one step. Recycled instances are copied out of the stack first and
+	 * the factory is called for the remainder, as far as the limit of the pool allows.
+	 * 
+	 * @param out
+	 *            The array to fill from index 0 (must hold at least n elements)
+	 * @param n
+	 *            The number of instances wanted
+	 * @return The number of instances placed in out. This is less than n only if a limited pool was exhausted
+	 *         part-way, in which case the PoolExhaustedException is not thrown.
+	 * @see Pool#getInstances(Link[], int)
+	 */
+	public synchronized int getInstances(T[] out, int n) {
+		if (0 >= n) {
+			return 0;
+		}
+		int recycled;
+		if (null == managed) {
+			recycled = Math.min(n, top);
+			top -= recycled;
+			System.arraycopy(free, top, out, 0, recycled);
+			clear(top, top + recycled);
+		} else {
+			recycled = 0;
+			while (recycled < n && 0 < top) {
+				final T instance = pop();
+				if (prepared(instance)) {
+					out[recycled++] = instance;
+				}
+			}
+		}
+		hits += recycled;
+		final int created = reserve(n - recycled);
+		if (created < n - recycled) {
+			exhaustions++;
+		}
+		for (int i = recycled; i < recycled + created; i++) {
+			out[i] = factory.newInstance();
+		}
+		track();
+		return recycled + created;
+	}
+
+	/**
+	 * Return n T instances to the pool in one step. The returned elements of the array are set to null, so the
+	 * caller doesn't keep references to pooled instances.
+	 * 
+	 * @param in
+	 *            The array holding the instances from index 0
+	 * @param n
+	 *            The number of instances to return
+	 * @see Pool#returnInstances(Link[], int)
+	 */
+	public void returnInstances(T[] in, int n) {
+		if (0 >= n) {
+			return;
+		}
+		if (null != managed && !managed.isResetDeferred()) {
+			for (int i = 0; i < n; i++) {
+				managed.reset(in[i]);
+			}
+		}
+		synchronized (this) {
+			if (free.length < top + n) {
+				grow(top + n);
+			}
+			System.arraycopy(in, 0, free, top, n);
+			top += n;
+			returns += n;
+		}
+		for (int i = 0; i < n; i++) {
+			in[i] = null;
+		}
+	}
+
+	/**
+	 * @see Pool#getInstanceCount()
+	 */
+	@Override
+	public int getInstanceCount() {
+		return instanceCount;
+	}
+
+	/**
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public synchronized void getStatistics(Statistics into) {
+		into.hits = hits;
+		into.misses = misses;
+		into.returns = returns;
+		into.exhaustions = exhaustions;
+		into.criticalExhaustions = 0;
+		into.sealViolations = 0;
+		into.softHits = 0;
+		into.softLost = 0;
+		into.free = top;
+		into.highWater = highWater;
+		into.peak = peak;
+		into.instances = instanceCount;
+		into.limit = limit;
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public synchronized void resetPeak() {
+		peak = instanceCount - top;
+	}
+
+	/**
+	 * Forget all the free T instances in the pool, so the garbage-collector can free them up. The stack of an
+	 * unlimited pool is shrunk back to its initial size at the same time.
+	 * 
+	 * @see Recycler#discardGarbage()
+	 */
+	@Override
+	public synchronized void discardGarbage() {
+		destroy(0, top);
+		clear(0, top);
+		instanceCount -= top;
+		top = 0;
+		if (0 == limit && INITIAL_CAPACITY < free.length) {
+			free = new Object[INITIAL_CAPACITY];
+		}
+	}
+
+	/**
+	 * Forget all but the maxRemaining most-recently returned T instances in the pool.
+	 * 
+	 * @see Recycler#discardGarbage(int)
+	 */
+	@Override
+	public synchronized void discardGarbage(int maxRemaining) {
+		if (0 >= maxRemaining) {
+			discardGarbage();
+			return;
+		}
+		if (top <= maxRemaining) {
+			return;
+		}
+		final int discarded = top - maxRemaining;
+		destroy(0, discarded);
+		System.arraycopy(free, discarded, free, 0, maxRemaining);
+		clear(maxRemaining, top);
+		instanceCount -= discarded;
+		top = maxRemaining;
+	}
+
+	/**
+	 * Present a human-readable representation of this instance, showing its type and number of managed-instances.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "ObjectPool(" + instanceCount + ")";
+	}
+
+	/**
+	 * Pop the most recently returned instance off the stack. Must be called while holding the lock, with the stack
+	 * not empty.
+	 * 
+	 * @return The instance
+	 */
+	@SuppressWarnings("unchecked")
+	private T pop() {
+		final T instance = (T) free[--top];
+		free[top] = null;
+		return instance;
+	}
+
+	/**
+	 * Get a recycled instance ready to be handed out: reset it (if resets are deferred) and validate it, destroying
+	 * it if it's unfit. Must be called while holding the lock, once the instance has been popped.
+	 * 
+	 * @param instance
+	 *            The recycled instance
+	 * @return True if the instance may be handed out, false if it has been destroyed.
+	 */
+	private boolean prepared(T instance) {
+		if (null == managed) {
+			return true;
+		}
+		if (managed.isResetDeferred()) {
+			managed.reset(instance);
+		}
+		if (managed.validate(instance)) {
+			return true;
+		}
+		managed.destroy(instance);
+		instanceCount--;
+		return false;
+	}
+
+	/**
+	 * Let the factory release the resources of a range of free instances that are about to be forgotten. Must be
+	 * called while holding the lock.
+	 * 
+	 * @param from
+	 *            The first index of the range
+	 * @param to
+	 *            The index after the last of the range
+	 */
+	@SuppressWarnings("unchecked")
+	private void destroy(int from, int to) {
+		if (null != managed) {
+			for (int i = from; i < to; i++) {
+				managed.destroy((T) free[i]);
+			}
+		}
+	}
+
+	/**
+	 * Account for up-to wanted new instances in a single limit-check. Must be called while holding the lock.
+	 * 
+	 * @param wanted
+	 *            The number of new instances the caller would like to create
+	 * @return The number of new instances the caller may actually create
+	 */
+	private int reserve(int wanted) {
+		if (0 != limit) {
+			wanted = Math.min(wanted, limit - instanceCount);
+		}
+		if (0 >= wanted) {
+			return 0;
+		}
+		instanceCount += wanted;
+		misses += wanted;
+		track();
+		return wanted;
+	}
+
+	/**
+	 * Record a new in-use high-water mark (and window peak) if there is one. Must be called while holding the lock,
+	 * after handing instances out.
+	 */
+	private void track() {
+		final int inUse = instanceCount - top;
+		if (peak < inUse) {
+			peak = inUse;
+			if (highWater < inUse) {
+				highWater = inUse;
+			}
+		}
+	}
+
+	/**
+	 * Enlarge the stack to hold at least the given number of instances. Must be called while holding the lock.
+	 * 
+	 * @param capacity
+	 *            The minimum capacity needed
+	 */
+	private void grow(int capacity) {
+		final Object[] grown = new Object[Math.max(capacity, 2 * free.length)];
+		System.arraycopy(free, 0, grown, 0, top);
+		free = grown;
+	}
+
+	/**
+	 * Null-out a range of the stack so it doesn't keep forgotten instances reachable.
+	 * 
+	 * @param from
+	 *            The first index to clear
+	 * @param to
+	 *            The index after the last one to clear
+	 */
+	private void clear(int from, int to) {
+		for (int i = from; i < to; i++) {
+			free[i] = null;
+		}
+	}
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Factory<T> factory;
+	private final ManagedFactory<T> managed;
+	private final int limit;
+	private Object[] free;
+	private int top = 0;
+	private volatile int instanceCount = 0;
+	private int highWater = 0;
+	private int peak = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long returns = 0;
+	private long exhaustions = 0;
+}
@@ -0,0 +1,780 @@
+package com.m0les.embedded;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <h2>An int-keyed {@link Tree} with long values whose entries live in off-heap memory.</h2>
+ * 
+ * <p>This is the same red-black tree as {@link ArrayTree} (and so {@link Tree}), referring to entries by int cursor,
+ * but each entry is a fixed-size 32-byte record in direct ByteBuffers outside the Java heap: its key, parent, lesser
+ * and greater links, long value and prime flag. The value can be a number or a handle to something else. However many
+ * entries the tree holds, its heap footprint is this object and a short array of buffer references, so it adds
+ * nothing for the garbage-collector to trace or copy.</p>
+ * <p>Records are allocated in chunks of up-to a million (32MB each). Removed records are recycled through a free list
+ * threaded through their greater links within the buffers. Like {@link Tree#Tree(int)}, a tree made with a size
+ * allocates room for exactly that many entries up front and refuses more with a PoolExhaustedException. A tree made
+ * without one adds chunks as needed.</p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   OffHeapTree offsets = new OffHeapTree( 50000000 );
+ *   offsets.insert( documentId, fileOffset );
+ *   ...
+ *   int cursor = offsets.find( documentId );
+ *   long offset = ( OffHeapTree.NIL == cursor ) ? -1 : offsets.getValue( cursor );
+ * </pre>
+ * 
+ * @note Off-heap memory counts against -XX:MaxDirectMemorySize rather than the heap, and is only released when the
+ *       tree itself is garbage-collected. As with ArrayTree, removing an entry with two children moves its in-order
+ *       predecessor into its record, so cursors should be looked up again after a remove.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class OffHeapTree implements Metered {
+	/**
+	 * The cursor meaning "no entry".
+	 */
+	public static final int NIL = -1;
+
+	/**
+	 * Create a new OffHeapTree with no size-limit. It starts with one chunk of
+	 * records and adds more as they fill up.
+	 */
+	public OffHeapTree() {
+		this(0);
+	}
+
+	/**
+	 * Create an OffHeapTree that can hold at most poolSize entries. All of its
+	 * off-heap memory is allocated here.
+	 * 
+	 * @param poolSize
+	 *            The maximum number of entries this tree can hold (0 for no
+	 *            limit)
+	 * @throws IllegalArgumentException
+	 *             If the size is negative or too large to address.
+	 */
+	public OffHeapTree(int poolSize) throws IllegalArgumentException {
+		if (0 > poolSize || MAX_CAPACITY < poolSize) {
+			throw new IllegalArgumentException("Invalid pool size");
+		}
+		limit = poolSize;
+		int shift = (0 == poolSize) ? UNLIMITED_CHUNK_SHIFT : 0;
+		while ((1 << shift) < poolSize && shift < MAX_CHUNK_SHIFT) {
+			shift++;
+		}
+		chunkShift = shift;
+		chunkMask = (1 << shift) - 1;
+		chunkSize = 1 << shift;
+		if (0 == poolSize) {
+			chunks = new ByteBuffer[1];
+			chunks[0] = allocate(chunkSize);
+			capacity = chunkSize;
+		} else {
+			chunks = new ByteBuffer[(poolSize + chunkMask) >>> shift];
+			for (int i = 0; i < chunks.length; i++) {
+				chunks[i] = allocate(Math.min(chunkSize, poolSize - (i << shift)));
+			}
+			capacity = poolSize;
+		}
+	}
+
+	/**
+	 * The complete insertion operation, including all cases of the procedure.
+	 * 
+	 * @param key
+	 *            The key to refer to the new value by
+	 * @param value
+	 *            The value (or handle) referred-to by key inside this tree
+	 * @return The cursor of the new entry
+	 * @throws PoolExhaustedException
+	 *             If this tree was made with a size and is full.
+	 * @see ArrayTree#insert(int, Object)
+	 */
+	public synchronized int insert(int key, long value) throws PoolExhaustedException {
+		int node = newSlot();
+		final int inserted = node;
+		setKey(node, key);
+		putValue(node, value);
+		setLesser(node, NIL);
+		setGreater(node, NIL);
+		setPrime(node, true);
+		if (NIL == head) {
+			// Case 1
+			setParent(node, NIL);
+			setPrime(node, false);
+			head = node;
+			return inserted;
+		}
+		int parent = head;
+		while (true) {
+			if (key(parent) > key) {
+				if (NIL == lesser(parent)) {
+					setParent(node, parent);
+					setLesser(parent, node);
+					break;
+				} else {
+					parent = lesser(parent);
+				}
+			} else {
+				if (NIL == greater(parent)) {
+					setParent(node, parent);
+					setGreater(parent, node);
+					break;
+				} else {
+					parent = greater(parent);
+				}
+			}
+		}
+
+		// colouring
+		while (true) {
+			if (NIL == parent) {
+				setPrime(node, false);
+				return inserted;
+			}
+			if (!prime(parent)) // Case 2
+			{
+				return inserted;
+			}
+
+			// Case 3
+			final int grandparent = parent(parent);
+			final int uncle;
+			if (lesser(grandparent) == parent) {
+				uncle = greater(grandparent);
+			} else {
+				uncle = lesser(grandparent);
+			}
+			if (isPrime(uncle)) {
+				setPrime(parent, false);
+				setPrime(uncle, false);
+				setPrime(grandparent, true);
+				parent = parent(grandparent);
+				node = grandparent;
+			} else // Case 4
+			{
+				if (greater(parent) == node && lesser(grandparent) == parent) {
+					rotate(parent, DIR_LEFT);
+					node = parent;
+					parent = parent(node);
+				} else if (lesser(parent) == node && greater(grandparent) == parent) {
+					rotate(parent, DIR_RIGHT);
+					node = parent;
+					parent = parent(node);
+				}
+				// Case 5
+				if (parent == lesser(grandparent)) {
+					rotate(grandparent, DIR_RIGHT);
+				} else {
+					rotate(grandparent, DIR_LEFT);
+				}
+				setPrime(grandparent, true);
+				setPrime(parent, false);
+				return inserted;
+			}
+		}
+	}
+
+	/**
+	 * The complete removal operation, including all cases of the procedure.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to remove
+	 * @see ArrayTree#remove(int)
+	 */
+	public synchronized void remove(int node) {
+		/* If the entry has two children, then take over the key and value of
+		 * the greatest entry in its lesser-branch and remove that former
+		 * "greatest lesser" entry (which must have < 2 children) instead.
+		 */
+		if (NIL != greater(node) && NIL != lesser(node)) {
+			final int newNode = findGreatest(lesser(node));
+			setKey(node, key(newNode));
+			putValue(node, value(newNode));
+			node = newNode;
+		}
+		// Entry now has 0 or 1 children.
+		int parent = parent(node);
+		final int child = NIL != lesser(node) ? lesser(node) : greater(node);
+		if (node == head) {
+			head = child;
+			if (NIL != head) {
+				setParent(head, NIL);
+				setPrime(head, false);
+			}
+			release(node);
+			return;
+		}
+		if (lesser(parent) == node) {
+			setLesser(parent, child);
+		} else {
+			setGreater(parent, child);
+		}
+		if (NIL != child) {
+			setParent(child, parent);
+		}
+		final boolean prime = prime(node);
+		release(node);
+		if (prime) {
+			// A prime entry with at most one child has none, so nothing needs rebalancing
+			return;
+		}
+		if (isPrime(child)) {
+			setPrime(child, false);
+			return;
+		}
+		node = child;
+		// Delete case 1
+		while (NIL != parent) {
+			final boolean left = lesser(parent) == node;
+			// Delete case 2
+			int sibling = left ? greater(parent) : lesser(parent);
+			if (isPrime(sibling)) {
+				setPrime(parent, true);
+				setPrime(sibling, false);
+				if (left) {
+					rotate(parent, DIR_LEFT);
+					sibling = greater(parent);
+				} else {
+					rotate(parent, DIR_RIGHT);
+					sibling = lesser(parent);
+				}
+			}
+			// Delete case 3
+			if (!(isPrime(lesser(sibling)) || isPrime(greater(sibling)))) {
+				setPrime(sibling, true);
+				// Delete case 4
+				if (prime(parent)) {
+					setPrime(parent, false);
+					return;
+				}
+				node = parent;
+				parent = parent(node);
+			} else {
+				// Delete case 5
+				if (left && isPrime(lesser(sibling))) {
+					setPrime(sibling, true);
+					setPrime(lesser(sibling), false);
+					rotate(sibling, DIR_RIGHT);
+					sibling = greater(parent);
+				} else if (!left && isPrime(greater(sibling))) {
+					setPrime(sibling, true);
+					setPrime(greater(sibling), false);
+					rotate(sibling, DIR_LEFT);
+					sibling = lesser(parent);
+				}
+				// Delete case 6
+				setPrime(sibling, prime(parent));
+				setPrime(parent, false);
+				if (left) {
+					if (NIL != greater(sibling)) {
+						setPrime(greater(sibling), false);
+					}
+					rotate(parent, DIR_LEFT);
+				} else {
+					if (NIL != lesser(sibling)) {
+						setPrime(lesser(sibling), false);
+					}
+					rotate(parent, DIR_RIGHT);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Remove every entry in this tree. There are no references to clear, so
+	 * this takes the same (short) time however many entries there are: every
+	 * record simply becomes never-used again.
+	 */
+	public synchronized void removeAll() {
+		returns += size;
+		head = NIL;
+		free = NIL;
+		freeCount = 0;
+		top = 0;
+		size = 0;
+	}
+
+	/**
+	 * Find an entry stored within this tree, referenced by its integer key.
+	 * 
+	 * @param key
+	 *            The key of the entry to look for
+	 * @return The cursor of the entry with the specified key, or NIL if no
+	 *         such key exists in the tree.
+	 */
+	public synchronized int find(final int key) {
+		int current = head;
+		while (NIL != current) {
+			if (key < key(current)) {
+				current = lesser(current);
+			} else if (key > key(current)) {
+				current = greater(current);
+			} else {
+				return current;
+			}
+		}
+		return NIL;
+	}
+
+	/**
+	 * Get the first entry (lowest key) in the tree.
+	 * 
+	 * @return The cursor of the lowest-keyed entry, or NIL if the tree is
+	 *         empty.
+	 */
+	public synchronized int getFirst() {
+		return (NIL == head) ? NIL : findLeast(head);
+	}
+
+	/**
+	 * Get the last entry (highest key) in the tree.
+	 * 
+	 * @return The cursor of the highest-keyed entry, or NIL if the tree is
+	 *         empty.
+	 */
+	public synchronized int getLast() {
+		return (NIL == head) ? NIL : findGreatest(head);
+	}
+
+	/**
+	 * Find the entry with the next-lowest key.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to find the predecessor of
+	 * @return The cursor of the entry with the next lowest key, or NIL if
+	 *         there is no lower-keyed entry.
+	 */
+	public synchronized int getPrev(int node) {
+		int candidate = lesser(node);
+		if (NIL != candidate) {
+			return findGreatest(candidate);
+		}
+		while (NIL != (candidate = parent(node))) {
+			if (node == greater(candidate)) {
+				return candidate;
+			}
+			node = candidate;
+		}
+		return NIL;
+	}
+
+	/**
+	 * Find the entry with the next-highest key.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to find the successor of
+	 * @return The cursor of the entry with the next highest key, or NIL if
+	 *         there is no higher-keyed entry.
+	 */
+	public synchronized int getNext(int node) {
+		int candidate = greater(node);
+		if (NIL != candidate) {
+			return findLeast(candidate);
+		}
+		while (NIL != (candidate = parent(node))) {
+			if (node == lesser(candidate)) {
+				return candidate;
+			}
+			node = candidate;
+		}
+		return NIL;
+	}
+
+	/**
+	 * Get the key of an entry.
+	 * 
+	 * @param node
+	 *            The cursor of the entry
+	 * @return The key element of the entry
+	 */
+	public synchronized int getKey(int node) {
+		return key(node);
+	}
+
+	/**
+	 * Get the value of an entry.
+	 * 
+	 * @param node
+	 *            The cursor of the entry
+	 * @return The value element of the entry
+	 */
+	public synchronized long getValue(int node) {
+		return value(node);
+	}
+
+	/**
+	 * Replace the value of an entry in place.
+	 * 
+	 * @param node
+	 *            The cursor of the entry
+	 * @param value
+	 *            The new value element of the entry
+	 */
+	public synchronized void setValue(int node, long value) {
+		putValue(node, value);
+	}
+
+	/**
+	 * Get the number of entries in the tree.
+	 * 
+	 * @return The number of entries
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Take a snapshot of the counters of this tree's records. Hits are
+	 * recycled records, misses are never-used ones, free is the length of the
+	 * free list and instances is the number of records ever used.
+	 * 
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public synchronized void getStatistics(Statistics into) {
+		into.hits = hits;
+		into.misses = misses;
+		into.returns = returns;
+		into.exhaustions = exhaustions;
+		into.criticalExhaustions = 0;
+		into.sealViolations = 0;
+		into.softHits = 0;
+		into.softLost = 0;
+		into.free = freeCount;
+		into.highWater = highWater;
+		into.peak = peak;
+		into.instances = top;
+		into.limit = limit;
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public synchronized void resetPeak() {
+		peak = size;
+	}
+
+	/**
+	 * Generate a human-readable representation of this tree.
+	 * 
+	 * @note This method composes Strings and thus generates garbage, use in
+	 *       embedded applications should be avoided generally, barring
+	 *       exceptional situations.
+	 */
+	@Override
+	public synchronized String toString() {
+		return "OffHeapTree{" + nodeString(head) + "}";
+	}
+
+	/**
+	 * Take a record for a new entry: a recycled one from the free list if
+	 * there is one, otherwise a never-used one.
+	 * 
+	 * @return The record's index
+	 * @throws PoolExhaustedException
+	 *             If this tree is limited and full.
+	 */
+	private int newSlot() throws PoolExhaustedException {
+		int record = free;
+		if (NIL != record) {
+			free = greater(record);
+			freeCount--;
+			hits++;
+		} else {
+			if (top == capacity) {
+				if (0 != limit || MAX_CAPACITY - capacity < chunkSize) {
+					exhaustions++;
+					throw Pool.POOL_EXHAUSTED;
+				}
+				grow();
+			}
+			record = top++;
+			misses++;
+		}
+		if (peak < ++size) {
+			peak = size;
+			if (highWater < size) {
+				highWater = size;
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Put a removed entry's record on the free list.
+	 * 
+	 * @param record
+	 *            The record's index
+	 */
+	private void release(int record) {
+		setGreater(record, free);
+		free = record;
+		freeCount++;
+		size--;
+		returns++;
+	}
+
+	/**
+	 * Add another chunk of records to an unlimited tree. The records already
+	 * in use stay where they are.
+	 * 
+	 * @note This replaces the (small, on-heap) array of chunks whenever it
+	 *       fills up, which produces a little garbage.
+	 */
+	private void grow() {
+		final int index = capacity >>> chunkShift;
+		if (index == chunks.length) {
+			chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+		}
+		chunks[index] = allocate(chunkSize);
+		capacity += chunkSize;
+	}
+
+	/**
+	 * Allocate the off-heap memory for a number of records.
+	 * 
+	 * @param records
+	 *            The number of records
+	 * @return The (native-ordered) buffer holding them
+	 */
+	private static ByteBuffer allocate(int records) {
+		return ByteBuffer.allocateDirect(records << RECORD_SHIFT).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Get the chunk holding a record.
+	 * 
+	 * @param node
+	 *            The record's index (not NIL)
+	 * @return The buffer holding the record
+	 */
+	private ByteBuffer chunk(int node) {
+		return chunks[node >>> chunkShift];
+	}
+
+	/**
+	 * Get the position of a record within its chunk.
+	 * 
+	 * @param node
+	 *            The record's index (not NIL)
+	 * @return The byte offset of the record in its chunk
+	 */
+	private int offset(int node) {
+		return (node & chunkMask) << RECORD_SHIFT;
+	}
+
+	/*
+	 * Accessors for the fields of a record (whose index must not be NIL).
+	 */
+
+	private int key(int node) {
+		return chunk(node).getInt(offset(node) + KEY);
+	}
+
+	private void setKey(int node, int key) {
+		chunk(node).putInt(offset(node) + KEY, key);
+	}
+
+	private int parent(int node) {
+		return chunk(node).getInt(offset(node) + PARENT);
+	}
+
+	private void setParent(int node, int parent) {
+		chunk(node).putInt(offset(node) + PARENT, parent);
+	}
+
+	private int lesser(int node) {
+		return chunk(node).getInt(offset(node) + LESSER);
+	}
+
+	private void setLesser(int node, int lesser) {
+		chunk(node).putInt(offset(node) + LESSER, lesser);
+	}
+
+	private int greater(int node) {
+		return chunk(node).getInt(offset(node) + GREATER);
+	}
+
+	private void setGreater(int node, int greater) {
+		chunk(node).putInt(offset(node) + GREATER, greater);
+	}
+
+	private long value(int node) {
+		return chunk(node).getLong(offset(node) + VALUE);
+	}
+
+	private void putValue(int node, long value) {
+		chunk(node).putLong(offset(node) + VALUE, value);
+	}
+
+	private boolean prime(int node) {
+		return 0 != chunk(node).get(offset(node) + PRIME);
+	}
+
+	private void setPrime(int node, boolean prime) {
+		chunk(node).put(offset(node) + PRIME, prime ? (byte) 1 : (byte) 0);
+	}
+
+	/**
+	 * Perform a tree-rotation about a nominated entry in a nominated direction.
+	 * 
+	 * @param node
+	 *            The cursor of the entry about which to rotate.
+	 * @param left
+	 *            One of DIR_LEFT (For a rotate-left) or DIR_RIGHT (For a
+	 *            rotate-right).
+	 * @see Tree
+	 */
+	private void rotate(int node, boolean left) {
+		final int parent = parent(node);
+		final int newParent;
+		final int newChild;
+		if (left) {
+			newParent = greater(node);
+			newChild = lesser(newParent);
+			setGreater(node, newChild);
+			setLesser(newParent, node);
+		} else // right
+		{
+			newParent = lesser(node);
+			newChild = greater(newParent);
+			setLesser(node, newChild);
+			setGreater(newParent, node);
+		}
+		setParent(node, newParent);
+		setParent(newParent, parent);
+		if (NIL != newChild) {
+			setParent(newChild, node);
+		}
+		if (NIL == parent) {
+			head = newParent;
+		} else {
+			if (lesser(parent) == node) {
+				setLesser(parent, newParent);
+			} else {
+				setGreater(parent, newParent);
+			}
+		}
+	}
+
+	/**
+	 * A simple test to see if an entry is prime or not. Note that NIL is
+	 * allowed and considered "non-prime"
+	 * 
+	 * @param node
+	 *            The cursor of the entry to test for prime-status
+	 * @return True if node is not NIL and prime, false otherwise
+	 */
+	private boolean isPrime(int node) {
+		return NIL != node && prime(node);
+	}
+
+	/**
+	 * Find the entry with the greatest key from an entry downward.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to start from (not NIL)
+	 * @return The cursor of the greatest-keyed entry at or below node
+	 */
+	private int findGreatest(int node) {
+		int next = greater(node);
+		while (NIL != next) {
+			node = next;
+			next = greater(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Find the entry with the lowest key from an entry downward.
+	 * 
+	 * @param node
+	 *            The cursor of the entry to start from (not NIL)
+	 * @return The cursor of the lowest-keyed entry at or below node
+	 */
+	private int findLeast(int node) {
+		int next = lesser(node);
+		while (NIL != next) {
+			node = next;
+			next = lesser(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Helper method to pretty-format the structure and entries of a tree
+	 * 
+	 * @note This method composes Strings and thus generates garbage, use in
+	 *       embedded applications should be avoided generally, barring
+	 *       exceptional situations.
+	 * 
+	 * @return The String representing the core values of this tree
+	 * @see #toString()
+	 */
+	private String nodeString(int node) {
+		if (NIL == node) {
+			return ".";
+		}
+		return "{" + nodeString(lesser(node)) + "|" + key(node) + (prime(node) ? "*" : "+") + value(node) + "|"
+				+ nodeString(greater(node)) + "}";
+	}
+
+	private static final boolean DIR_LEFT = true;
+	private static final boolean DIR_RIGHT = !DIR_LEFT;
+	private static final int RECORD_SHIFT = 5; // 32-byte records
+	private static final int KEY = 0; // int
+	private static final int PARENT = 4; // int
+	private static final int LESSER = 8; // int
+	private static final int GREATER = 12; // int, also links the free list
+	private static final int VALUE = 16; // long
+	private static final int PRIME = 24; // byte (the rest of the record is padding)
+	private static final int MAX_CHUNK_SHIFT = 20; // A million records (32MB) per chunk
+	private static final int UNLIMITED_CHUNK_SHIFT = 16;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - (1 << MAX_CHUNK_SHIFT);
+
+	private final int limit;
+	private final int chunkShift;
+	private final int chunkMask;
+	private final int chunkSize;
+	private ByteBuffer[] chunks;
+	private int capacity; // Records allocated so far
+	private int head = NIL;
+	private int free = NIL;
+	private int freeCount = 0;
+	private int top = 0; // Records at and above this have never been used
+	private int size = 0;
+	private int highWater = 0;
+	private int peak = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long returns = 0;
+	private long exhaustions = 0;
+}
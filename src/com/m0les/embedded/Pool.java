@@ -1,5 +1,12 @@
 package com.m0les.embedded;
 
+import java.lang.ref.SoftReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * A pool for managing the allocation and reuse of "temporary use" resource
  * objects. The Pool is instantiated with a factory for making new instances of
@@ -9,6 +16,61 @@ package com.m0les.embedded;
  * to be reused, otherwise it will need to instantiate a new object. Then, if a
  * set limit's been reached, this class throws a PoolExhaustedException,
  * otherwise it calls the factory to make a new instance and returns that.
+ * <p>
+ * Callers of a limited pool that would rather wait for an instance to be
+ * returned than be refused outright can use
+ * {@link #getInstance(long, TimeUnit)}. Waiting callers are parked in a FIFO
+ * queue and each returned instance is handed directly to the longest-waiting
+ * one. The pool is guarded by a ReentrantLock rather than its monitor, so
+ * that (virtual) threads parked on an exhausted pool don't pin a carrier
+ * thread. Callers that mustn't block at all (e.g. event-loops) can instead
+ * register a {@link Receiver} with {@link #acquire(Receiver)}, or use
+ * {@link #acquireAsync()}, to be handed an instance as soon as one is
+ * returned.
+ * </p>
+ * <p>
+ * A limited pool can also be given a lower soft limit, which keeps a reserve
+ * of instances for latency-critical callers. Once the soft limit's worth of
+ * instances are in use, ordinary callers are refused (or made to wait) while
+ * callers of {@link #getCriticalInstance()} can still draw from the reserve,
+ * up to the hard limit. Refusals are counted separately for each tier.
+ * </p>
+ * <p>
+ * Activity counters (see {@link Statistics}) are kept while the lock is held
+ * anyway, so they cost next to nothing and are always enabled.
+ * </p>
+ * <p>
+ * A pool can be created with {@link PoolDiagnostics} attached, which checks
+ * every instance handed out and returned for double returns, leaks and use
+ * after return. This is meant for debugging and canary deployments; without
+ * it the pool trusts its callers completely.
+ * </p>
+ * <p>
+ * If the factory is a {@link ManagedFactory}, instances are reset as they are
+ * returned (or as they are handed out again), validated before reuse and
+ * destroyed when they're discarded.
+ * </p>
+ * <p>
+ * Where nothing may be allocated once a system is running, a pool can be
+ * {@link #prefill(int) prefilled} during initialisation and then
+ * {@link #seal(boolean) sealed}. A sealed pool either refuses to call its
+ * factory (treating the miss as exhaustion) or records each allocation it
+ * makes as a violation, along with the call site of the latest one.
+ * </p>
+ * <p>
+ * A pool can also be given a {@link #setSoftOverflow(boolean) soft overflow
+ * tier}. The instances that {@link #discardGarbage(int)} would drop beyond its
+ * floor are then only softly held, so the garbage-collector can reclaim them
+ * if memory runs short, but otherwise the pool takes them back before calling
+ * its factory.
+ * </p>
+ * <p>
+ * Discarding a large number of free instances all at once holds the lock for
+ * a long time. Instead, {@link #detachGarbage(int)} takes the instances beyond
+ * a floor off the chain in one step, and {@link #discardDetached(int)} (or
+ * {@link #discardDetached(long, TimeUnit)}) then discards them a bounded
+ * number (or for a bounded time) at a go, releasing the lock in between.
+ * </p>
  * 
  * @author Miles Goodhew
  * @version $Id: Pool.java,v 1.11 2011-07-24 14:53:46 mgoodhew Exp $
@@ -33,7 +95,7 @@ package com.m0les.embedded;
  * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
  * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class Pool<C extends Link<C>> implements Recycler{
+public class Pool<C extends Link<C>> implements ChainAllocator<C> {
 	/**
 	 * Exception thrown when an attempt is made to call getInstance() from a
 	 * limited-instance pool that is exhausted.
@@ -47,6 +109,32 @@ public class Pool<C extends Link<C>> implements Recycler{
 	 */
 	public static final PoolExhaustedException POOL_EXHAUSTED = new PoolExhaustedException();
 
+	/**
+	 * A callback for callers that want an instance from the pool, but can't
+	 * wait for one. A Receiver is queued (intrusively, through its own next
+	 * member) so registering one doesn't allocate anything and the same
+	 * Receiver can be reused once it has been served or cancelled.
+	 * 
+	 * @see Pool#acquire(Receiver)
+	 * @param <C>
+	 *            The class of objects received (The value-type of the pool)
+	 */
+	public static abstract class Receiver<C> extends Link<Receiver<C>> {
+		/**
+		 * Take ownership of an instance from the pool. This is called either
+		 * by the thread registering the Receiver (if an instance was available
+		 * straight away), or by the thread that returned the instance. It is
+		 * called without holding the pool's lock, but should still be brief
+		 * and mustn't throw.
+		 * 
+		 * @param instance
+		 *            The instance, which the Receiver now owns (never null)
+		 */
+		protected abstract void receive(C instance);
+
+		private C delivery = null; // The instance handed-over, waiting to be passed to receive()
+	}
+
 	/**
 	 * Create a limited pool of C instances. When the limit of instances is
 	 * reached and a caller tries to get another instance from the pool, they
@@ -59,8 +147,78 @@ public class Pool<C extends Link<C>> implements Recycler{
 	 *            through the factory.
 	 */
 	public Pool(Factory<C> factory, int limit) {
+		this(factory, limit, null);
+	}
+
+	/**
+	 * Create a pool of C instances whose use is checked by a diagnostic mode.
+	 * 
+	 * @param factory
+	 *            The factory to create new C instances when the pool is empty
+	 * @param limit
+	 *            The maximum number of C instantiations that will be made
+	 *            through the factory (0 for no limit).
+	 * @param diagnostics
+	 *            The diagnostic mode to report every borrow and return to (may
+	 *            be null for none). It mustn't be shared with another pool.
+	 */
+	public Pool(Factory<C> factory, int limit, PoolDiagnostics<C> diagnostics) {
+		this(factory, limit, limit, diagnostics);
+	}
+
+	/**
+	 * Create a limited pool of C instances with a reserve for critical
+	 * callers.
+	 * 
+	 * @param factory
+	 *            The factory to create new C instances when the pool is empty
+	 * @param softLimit
+	 *            The maximum number of instances ordinary callers may have in
+	 *            use at once (0 for the same as the hard limit).
+	 * @param limit
+	 *            The maximum number of C instantiations that will be made
+	 *            through the factory, which only critical callers can reach
+	 *            (0 for no limit).
+	 * @throws IllegalArgumentException
+	 *             If a limit is negative or the soft limit is above the hard
+	 *             limit.
+	 */
+	public Pool(Factory<C> factory, int softLimit, int limit) throws IllegalArgumentException {
+		this(factory, softLimit, limit, null);
+	}
+
+	/**
+	 * Create a limited pool of C instances with a reserve for critical
+	 * callers, whose use is checked by a diagnostic mode.
+	 * 
+	 * @param factory
+	 *            The factory to create new C instances when the pool is empty
+	 * @param softLimit
+	 *            The maximum number of instances ordinary callers may have in
+	 *            use at once (0 for the same as the hard limit).
+	 * @param limit
+	 *            The maximum number of C instantiations that will be made
+	 *            through the factory, which only critical callers can reach
+	 *            (0 for no limit).
+	 * @param diagnostics
+	 *            The diagnostic mode to report every borrow and return to (may
+	 *            be null for none). It mustn't be shared with another pool.
+	 * @throws IllegalArgumentException
+	 *             If a limit is negative or the soft limit is above the hard
+	 *             limit.
+	 */
+	public Pool(Factory<C> factory, int softLimit, int limit, PoolDiagnostics<C> diagnostics)
+			throws IllegalArgumentException {
+		if (0 > softLimit || 0 > limit || (0 != limit && limit < softLimit)) {
+			throw new IllegalArgumentException("Invalid pool limits");
+		}
 		this.factory = factory;
 		this.limit = limit;
+		this.softLimit = (0 == softLimit) ? limit : softLimit;
+		this.diagnostics = diagnostics;
+		managed = (factory instanceof ManagedFactory) ? (ManagedFactory<C>) factory : null;
+		resetOnBorrow = null != managed
+				&& (managed.isResetDeferred() || (null != diagnostics && diagnostics.isPoisoning()));
 	}
 
 	/**
@@ -72,21 +230,28 @@ public class Pool<C extends Link<C>> implements Recycler{
 	 *            The factory to create new C instances when the pool is empty
 	 */
 	public Pool(Factory<C> factory) {
-		this.factory = factory;
-		limit = 0;
+		this(factory, 0, null);
 	}
 
 	/**
 	 * Return a C instance to the pool. It's assumed that the caller has already
-	 * freed any resources in C and nullified any external references. The
+	 * freed any resources in C and nullified any external references (unless
+	 * the factory is a {@link ManagedFactory}, which does so). The
 	 * caller should nolonger hold a reference to the returned instance after
 	 * this call.
 	 * 
 	 * @param instance
 	 */
-	public synchronized void returnInstance(C instance) {
-		instance.next = chain;
-		chain = instance;
+	public void returnInstance(C instance) {
+		recycle(instance);
+		final Receiver<C> served;
+		lock.lock();
+		try {
+			served = push(instance, instance, 1);
+		} finally {
+			lock.unlock();
+		}
+		deliver(served);
 	}
 
 	/**
@@ -96,21 +261,498 @@ public class Pool<C extends Link<C>> implements Recycler{
 	 * @throws PoolExhaustedException
 	 *             If a limited pool is already empty before this call.
 	 */
-	public synchronized C getInstance() throws PoolExhaustedException {
-		if (null != chain) {
-			C instance = chain;
-			chain = instance.next;
-			return instance;
+	public C getInstance() throws PoolExhaustedException {
+		final C instance = tryGetInstance();
+		if (null == instance) {
+			throw POOL_EXHAUSTED;
 		}
-		switch (limit) {
-		default:
-			if (limit <= instanceCount) {
+		return instance;
+	}
+
+	/**
+	 * Get a new or recycled C instance if one is available straight away.
+	 * 
+	 * @return The instance to be used, or null if a limited pool is exhausted.
+	 */
+	public C tryGetInstance() {
+		lock.lock();
+		try {
+			return poll(false);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get a new or recycled C instance for a latency-critical caller, which
+	 * may draw on the reserve between the soft and hard limits.
+	 * 
+	 * @return The instance to be used (never null)
+	 * @throws PoolExhaustedException
+	 *             If the hard limit's worth of instances are already in use.
+	 */
+	public C getCriticalInstance() throws PoolExhaustedException {
+		final C instance = tryGetCriticalInstance();
+		if (null == instance) {
+			throw POOL_EXHAUSTED;
+		}
+		return instance;
+	}
+
+	/**
+	 * Get a new or recycled C instance for a latency-critical caller if one
+	 * is available straight away.
+	 * 
+	 * @return The instance to be used, or null if the hard limit's worth of
+	 *         instances are already in use.
+	 * @see #getCriticalInstance()
+	 */
+	public C tryGetCriticalInstance() {
+		lock.lock();
+		try {
+			return poll(true);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get a new or recycled C instance, waiting up-to the given time for one
+	 * to be returned if a limited pool is exhausted. Waiting callers are served
+	 * in the order they started waiting.
+	 * 
+	 * @note A small record of the waiting caller is allocated when (and only
+	 *       when) the caller actually has to wait.
+	 * 
+	 * @param timeout
+	 *            The longest time to wait (Zero or less won't wait at all)
+	 * @param unit
+	 *            The unit of timeout
+	 * @return The instance to be used (never null)
+	 * @throws PoolExhaustedException
+	 *             If no instance became available within the timeout.
+	 * @throws InterruptedException
+	 *             If the calling thread was interrupted while waiting.
+	 */
+	public C getInstance(long timeout, TimeUnit unit) throws PoolExhaustedException, InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		final Waiter<C> waiter;
+		lock.lock();
+		try {
+			final C instance = poll(false);
+			if (null != instance) {
+				return instance;
+			}
+			if (0 >= timeout) {
 				throw POOL_EXHAUSTED;
 			}
-		case 0:
-			instanceCount++;
-			return factory.newInstance();
+			waiter = new Waiter<C>(Thread.currentThread());
+			enqueue(waiter);
+		} finally {
+			lock.unlock();
+		}
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean interrupted = false;
+		while (null == waiter.instance) {
+			final long remaining = deadline - System.nanoTime();
+			if (0 >= remaining) {
+				break;
+			}
+			LockSupport.parkNanos(this, remaining);
+			if (Thread.interrupted()) {
+				interrupted = true;
+				break;
+			}
+		}
+		if (null == waiter.instance) {
+			if (cancel(waiter)) {
+				if (interrupted) {
+					throw new InterruptedException();
+				}
+				throw POOL_EXHAUSTED;
+			}
+			// An instance has already been handed over and is on its way
+			while (null == waiter.instance) {
+				LockSupport.park(this);
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return waiter.instance;
+	}
+
+	/**
+	 * Ask for a new or recycled C instance without waiting for one. If an
+	 * instance is available straight away it is passed to the Receiver before
+	 * this method returns, otherwise the Receiver is queued (behind any other
+	 * waiting callers) and is passed the next instance returned to the pool.
+	 * 
+	 * @param receiver
+	 *            The Receiver to pass the instance to. It mustn't already be
+	 *            queued on a pool.
+	 * @return True if the Receiver was served straight away, false if it was
+	 *         queued.
+	 */
+	public boolean acquire(Receiver<C> receiver) {
+		final C instance;
+		lock.lock();
+		try {
+			instance = poll(false);
+			if (null == instance) {
+				enqueue(receiver);
+				return false;
+			}
+		} finally {
+			lock.unlock();
+		}
+		receiver.receive(instance);
+		return true;
+	}
+
+	/**
+	 * Withdraw a queued Receiver.
+	 * 
+	 * @param receiver
+	 *            The Receiver to withdraw
+	 * @return True if the Receiver was withdrawn before being served. False if
+	 *         it wasn't queued, in which case it has been (or is just about to
+	 *         be) passed an instance that it then owns.
+	 */
+	public boolean cancel(Receiver<C> receiver) {
+		lock.lock();
+		try {
+			return dequeue(receiver);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Ask for a new or recycled C instance as a CompletableFuture, which is
+	 * completed when an instance is available. The future can be cancelled,
+	 * or completed by a timeout, without losing track of the instance: if the
+	 * future is completed before an instance is handed over, its Receiver is
+	 * withdrawn, and an instance handed over to an already-completed future
+	 * is returned to the pool straight away.
+	 * 
+	 * @note This allocates a future and Receiver per call. Use
+	 *       {@link #acquire(Receiver)} with a reused Receiver where that
+	 *       matters.
+	 * 
+	 * @return A future that yields the instance to be used (never null)
+	 */
+	public CompletableFuture<C> acquireAsync() {
+		final FutureReceiver<C> receiver = new FutureReceiver<C>(this);
+		acquire(receiver);
+		return receiver.future;
+	}
+
+	/**
+	 * Take up-to max recycled instances off the chain in one step. Unlike
+	 * {@link #getInstance()}, this never calls the factory.
+	 * 
+	 * @param max
+	 *            The maximum number of instances to take
+	 * @param prepare
+	 *            True to apply the {@link ManagedFactory}'s borrow-time hooks,
+	 *            false to leave them to a caching layer (see
+	 *            {@link #reuse(Link)})
+	 * @return The first of the taken instances, linked to the rest through
+	 *         their next members (The last one's is null), or null if there
+	 *         were no recycled instances.
+	 */
+	C takeChain(int max, boolean prepare) {
+		lock.lock();
+		try {
+			max = Math.min(max, headroom(false));
+			if (null == chain && 0 < max) {
+				reclaim();
+			}
+			C head = chain;
+			if (null == head || 0 >= max) {
+				return null;
+			}
+			C tail = head;
+			int taken = 1;
+			while (null != tail.next && taken < max) {
+				tail = tail.next;
+				taken++;
+			}
+			chain = tail.next;
+			tail.next = null;
+			freeCount -= taken;
+			if (prepare && (null != managed || null != diagnostics)) {
+				// Check, reset and validate the whole batch, dropping any unfit instances
+				C instance = head;
+				head = tail = null;
+				taken = 0;
+				while (null != instance) {
+					final C next = instance.next;
+					instance.next = null;
+					if (prepared(instance)) {
+						if (null == head) {
+							head = instance;
+						} else {
+							tail.next = instance;
+						}
+						tail = instance;
+						taken++;
+					}
+					instance = next;
+				}
+			}
+			hits += taken;
+			track();
+			if (null != diagnostics) {
+				for (C instance = head; null != instance; instance = instance.next) {
+					if (!prepare) {
+						diagnostics.reusing(instance);
+					}
+					diagnostics.borrowed(instance);
+				}
+			}
+			return head;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get up-to n new or recycled C instances in one step, linked together
+	 * through their next members. Recycled instances are used first and the
+	 * factory is then called for the remainder, as far as the limit of the
+	 * pool allows. Both the lock and the limit-check are only visited once
+	 * for the whole batch. This never waits for instances to be returned.
+	 * 
+	 * @param n
+	 *            The number of instances wanted
+	 * @return The first of the instances obtained (The last one's next member
+	 *         is null), or null if a limited pool is already exhausted. Fewer
+	 *         than n instances are returned if the limit is reached part-way.
+	 */
+	@Override
+	public C getChain(int n) {
+		return borrowChain(n, true);
+	}
+
+	/**
+	 * @see ChainAllocator#getFreeChain(int)
+	 */
+	@Override
+	public C getFreeChain(int n) {
+		return borrowChain(n, false);
+	}
+
+	/**
+	 * Get up-to n new or recycled C instances in one step.
+	 * 
+	 * @param n
+	 *            The number of instances wanted
+	 * @param prepare
+	 *            True to apply the {@link ManagedFactory}'s borrow-time hooks
+	 *            to recycled instances
+	 * @return The first of the instances obtained, or null if a limited pool
+	 *         is already exhausted.
+	 * @see #getChain(int)
+	 */
+	private C borrowChain(int n, boolean prepare) {
+		lock.lock();
+		try {
+			final int allowed = Math.min(n, headroom(false));
+			C head = takeChain(allowed, prepare);
+			int obtained = 0;
+			for (C instance = head; null != instance; instance = instance.next) {
+				obtained++;
+			}
+			final int created = reserve(allowed - obtained);
+			if (created < n - obtained) {
+				exhaustions++;
+			}
+			for (int i = 0; i < created; i++) {
+				final C instance = factory.newInstance();
+				if (null != diagnostics) {
+					diagnostics.borrowed(instance);
+				}
+				instance.next = head;
+				head = instance;
+			}
+			return head;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get up-to n new or recycled C instances in one step.
+	 * 
+	 * @param out
+	 *            The array to store the instances in, from index 0 onward
+	 * @param n
+	 *            The number of instances wanted (Must be no greater than
+	 *            out.length)
+	 * @return The number of instances actually stored in out. This is less
+	 *         than n only if a limited pool was exhausted part-way, in which
+	 *         case the caller still owns (and must eventually return) the
+	 *         instances it did get. No PoolExhaustedException is thrown.
+	 * @see #getChain(int)
+	 */
+	public int getInstances(C[] out, int n) {
+		int obtained = 0;
+		C instance = getChain(n);
+		while (null != instance) {
+			final C next = instance.next;
+			instance.next = null;
+			out[obtained++] = instance;
+			instance = next;
 		}
+		return obtained;
+	}
+
+	/**
+	 * Return a chain of C instances, linked through their next members, to the
+	 * pool in one step. The end of the chain is found before taking the lock,
+	 * so only the splice itself is done while holding it.
+	 * 
+	 * @param head
+	 *            The first instance of the chain (may be null)
+	 */
+	@Override
+	public void returnChain(C head) {
+		returnChain(head, null != managed && !managed.isResetDeferred());
+	}
+
+	/**
+	 * @see ChainAllocator#returnFreeChain(Link)
+	 */
+	@Override
+	public void returnFreeChain(C head) {
+		returnChain(head, false);
+	}
+
+	/**
+	 * Return a chain of C instances to the pool in one step.
+	 * 
+	 * @param head
+	 *            The first instance of the chain (may be null)
+	 * @param reset
+	 *            True to reset each instance on the way
+	 * @see #returnChain(Link)
+	 */
+	private void returnChain(C head, boolean reset) {
+		if (null == head) {
+			return;
+		}
+		C tail = head;
+		int count = 1;
+		if (reset) {
+			managed.reset(head);
+		}
+		while (null != tail.next) {
+			tail = tail.next;
+			count++;
+			if (reset) {
+				managed.reset(tail);
+			}
+		}
+		final Receiver<C> served;
+		lock.lock();
+		try {
+			served = push(head, tail, count);
+		} finally {
+			lock.unlock();
+		}
+		deliver(served);
+	}
+
+	/**
+	 * Reset an instance kept by a caching layer, if resets aren't deferred.
+	 * 
+	 * @see ChainAllocator#recycle(Link)
+	 */
+	@Override
+	public void recycle(C instance) {
+		if (null != managed && !managed.isResetDeferred()) {
+			managed.reset(instance);
+		}
+	}
+
+	/**
+	 * Reset (if resets are deferred) and validate an instance that a caching
+	 * layer is handing out again. An unfit instance is destroyed, and any
+	 * waiting callers are then served if the limit now allows.
+	 * 
+	 * @see ChainAllocator#reuse(Link)
+	 */
+	@Override
+	public boolean reuse(C instance) {
+		if (null == managed) {
+			return true;
+		}
+		if (resetOnBorrow) {
+			managed.reset(instance);
+		}
+		if (managed.validate(instance)) {
+			return true;
+		}
+		final Receiver<C> served;
+		lock.lock();
+		try {
+			destroy(instance);
+			served = serveWaiters();
+		} finally {
+			lock.unlock();
+		}
+		deliver(served);
+		return false;
+	}
+
+	/**
+	 * Return n C instances to the pool in one step. The array entries are
+	 * nulled, so the caller isn't left holding references to the returned
+	 * instances.
+	 * 
+	 * @param in
+	 *            The array holding the instances to return, from index 0 onward
+	 * @param n
+	 *            The number of instances to return
+	 */
+	public void returnInstances(C[] in, int n) {
+		if (0 >= n) {
+			return;
+		}
+		if (null != diagnostics) {
+			// Linking the instances here would corrupt the chain if one were already free
+			for (int i = 0; i < n; i++) {
+				final C instance = in[i];
+				in[i] = null;
+				returnInstance(instance);
+			}
+			return;
+		}
+		if (null != managed && !managed.isResetDeferred()) {
+			for (int i = 0; i < n; i++) {
+				managed.reset(in[i]);
+			}
+		}
+		final C head = in[0];
+		C tail = head;
+		in[0] = null;
+		for (int i = 1; i < n; i++) {
+			tail.next = in[i];
+			tail = in[i];
+			in[i] = null;
+		}
+		final Receiver<C> served;
+		lock.lock();
+		try {
+			served = push(head, tail, n);
+		} finally {
+			lock.unlock();
+		}
+		deliver(served);
 	}
 
 	/**
@@ -123,6 +765,201 @@ public class Pool<C extends Link<C>> implements Recycler{
 		return instanceCount;
 	}
 
+	/**
+	 * Get the most instances that ordinary (non-critical) callers may have in
+	 * use at once.
+	 * 
+	 * @return The soft limit (0 if there's no limit)
+	 */
+	public int getSoftLimit() {
+		return softLimit;
+	}
+
+	/**
+	 * Get the diagnostic mode attached to this pool.
+	 * 
+	 * @return The diagnostics, or null if there are none.
+	 */
+	public PoolDiagnostics<C> getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public void getStatistics(Statistics into) {
+		lock.lock();
+		try {
+			into.hits = hits;
+			into.misses = misses;
+			into.returns = returns;
+			into.exhaustions = exhaustions;
+			into.criticalExhaustions = criticalExhaustions;
+			into.sealViolations = sealViolations;
+			into.softHits = softHits;
+			into.softLost = softLost;
+			into.free = freeCount;
+			into.highWater = highWater;
+			into.peak = peak;
+			into.instances = instanceCount;
+			into.limit = limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Create new instances until the pool holds n of them (or reaches its
+	 * limit), ready to be handed out. This is meant to be called during
+	 * initialisation, before the pool is {@link #seal(boolean) sealed}.
+	 * 
+	 * @param n
+	 *            The number of instances the pool should hold
+	 * @return The number of instances created
+	 * @throws IllegalStateException
+	 *             If the pool has already been sealed.
+	 */
+	public int prefill(int n) throws IllegalStateException {
+		final Receiver<C> served;
+		int created = 0;
+		lock.lock();
+		try {
+			if (sealed) {
+				throw new IllegalStateException("Pool is sealed");
+			}
+			while (instanceCount < n && (0 == limit || instanceCount < limit)) {
+				final C instance = factory.newInstance();
+				instance.next = chain;
+				chain = instance;
+				instanceCount++;
+				freeCount++;
+				created++;
+			}
+			served = serveWaiters();
+		} finally {
+			lock.unlock();
+		}
+		deliver(served);
+		return created;
+	}
+
+	/**
+	 * Seal the pool, so that its factory should never be called again. From
+	 * then on a caller that finds no recycled instance is either refused, as
+	 * if the pool were exhausted, or given a new instance with the allocation
+	 * recorded as a violation.
+	 * 
+	 * @note A sealed pool still discards instances as asked, which can lead
+	 *       to refusals or violations later.
+	 * 
+	 * @param strict
+	 *            True to refuse allocations, false to allow and record them
+	 */
+	public void seal(boolean strict) {
+		lock.lock();
+		try {
+			sealed = true;
+			strictSeal = strict;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Find out whether the pool has been sealed.
+	 * 
+	 * @return True if {@link #seal(boolean)} has been called
+	 */
+	public boolean isSealed() {
+		lock.lock();
+		try {
+			return sealed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the call site of the latest allocation made after the pool was
+	 * sealed (The number of them is in {@link Statistics#sealViolations}).
+	 * 
+	 * @return A Throwable whose stack-trace shows where the allocation was
+	 *         asked for, or null if there haven't been any.
+	 */
+	public Throwable getLastViolation() {
+		lock.lock();
+		try {
+			return lastViolation;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Turn the soft overflow tier on or off. While it's on,
+	 * {@link #discardGarbage(int)} moves the free instances beyond its floor
+	 * into the overflow tier instead of dropping them. The whole tier is one
+	 * chain held through a single SoftReference (each trim joins its
+	 * instances onto the front and replaces the reference), so the
+	 * garbage-collector may reclaim it under memory pressure. When the
+	 * strongly-held chain runs dry, the pool takes the tier back, if it's
+	 * still there, before calling its factory. Turning the tier off drops
+	 * whatever it holds.
+	 * 
+	 * @note Overflowed instances stop counting towards the pool's limit (and
+	 *       are forgotten by its diagnostics) until they're taken back. A
+	 *       {@link ManagedFactory}'s destroy hook isn't called for instances
+	 *       the garbage-collector reclaims, so the tier isn't suitable for
+	 *       instances holding resources that must be released. Instances
+	 *       taken back are counted in {@link Statistics#softHits} (as well as
+	 *       in hits when they're handed out), and those found to be reclaimed
+	 *       in {@link Statistics#softLost}. {@link #discardGarbage()} drops
+	 *       the overflow tier along with everything else.
+	 * 
+	 * @param enabled
+	 *            True to keep overflowed instances softly, false to drop them
+	 */
+	public void setSoftOverflow(boolean enabled) {
+		lock.lock();
+		try {
+			softOverflow = enabled;
+			if (!enabled) {
+				overflow = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the number of instances in the soft overflow tier that haven't yet
+	 * been reclaimed by the garbage-collector.
+	 * 
+	 * @return The number of instances that could be taken back
+	 */
+	public int getOverflowCount() {
+		lock.lock();
+		try {
+			return (null == overflow || null == overflow.get()) ? 0 : overflow.count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public void resetPeak() {
+		lock.lock();
+		try {
+			peak = inUse();
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	/**
 	 * Unlink all reusable C instances in the pool, so the garbage-collector can
 	 * free them up. Currently allocated instances are unaffected and still
@@ -136,42 +973,668 @@ public class Pool<C extends Link<C>> implements Recycler{
 	 *       also want to explicitly invoke the garbage-collector soon after
 	 *       this method terminates in order to get the "pain" out of the way at
 	 *       an opportune "non-realtime" moment.
+	 * @note A {@link ManagedFactory}'s destroy hook is called for each
+	 *       discarded instance while the lock is held.
 
 	 * @see Recycler#discardGarbage()
 	 */
 	@Override
-	public synchronized void discardGarbage() {
-		while( null != chain ){
-			final C next = chain.next;
-			chain.next = null;
-			chain = next;
-			instanceCount--;
+	public void discardGarbage() {
+		final Receiver<C> served;
+		lock.lock();
+		try {
+			overflow = null;
+			while( null != chain ){
+				final C next = chain.next;
+				chain.next = null;
+				destroy(chain);
+				chain = next;
+				freeCount--;
+			}
+			while (null != detached) {
+				final C next = detached.next;
+				detached.next = null;
+				destroy(detached);
+				detached = next;
+				detachedCount--;
+			}
+			served = serveWaiters();
+		} finally {
+			lock.unlock();
 		}
+		deliver(served);
 	}
 
 	/**
-	 * @see Recycler#discardGarbage()
+	 * Discard all but maxRemaining of the free instances or, if the soft
+	 * overflow tier is on, move them there.
+	 * 
+	 * @see Recycler#discardGarbage(int)
+	 * @see #setSoftOverflow(boolean)
 	 */
 	@Override
-	public synchronized void discardGarbage(int maxRemaining) {
-		if (0 < maxRemaining) {
-			C current = chain;
-			while (null != current && 0 < --maxRemaining) {
-				current = current.next;
-			}
-			while (null != current) {
-				final C next = current.next;
-				if (null != next) {
-					current.next = null;
-					instanceCount--;
+	public void discardGarbage(int maxRemaining) {
+		if (softOverflow) {
+			lock.lock();
+			try {
+				overflow(Math.max(0, maxRemaining));
+			} finally {
+				lock.unlock();
+			}
+		} else if (0 < maxRemaining) {
+			lock.lock();
+			try {
+				C instance = detach(maxRemaining);
+				while (null != instance) {
+					final C next = instance.next;
+					instance.next = null;
+					destroy(instance);
+					instance = next;
 				}
-				current = next;
+			} finally {
+				lock.unlock();
 			}
 		} else {
 			discardGarbage();
 		}
 	}
 
+	/**
+	 * Take all but maxRemaining of the free instances off the chain, to be
+	 * discarded later by {@link #discardDetached(int)}. Only the instances
+	 * that remain are walked, so this takes the same (short) time however many
+	 * instances are detached. If the soft overflow tier is on, the instances
+	 * are moved there instead, just as {@link #discardGarbage(int)} would
+	 * (which does walk them, to join them onto the tier).
+	 * 
+	 * @note Detached instances still count towards the pool's hard limit
+	 *       (though not as in use) until they're discarded. Detaching again
+	 *       before the last lot have all been discarded walks whatever is left
+	 *       of them.
+	 * 
+	 * @param maxRemaining
+	 *            The most free instances to leave available for reuse
+	 */
+	public void detachGarbage(int maxRemaining) {
+		lock.lock();
+		try {
+			maxRemaining = Math.max(0, maxRemaining);
+			if (softOverflow) {
+				overflow(maxRemaining);
+				return;
+			}
+			detachedCount += Math.max(0, freeCount - maxRemaining);
+			final C head = detach(maxRemaining);
+			if (null == detached) {
+				detached = head;
+			} else if (null != head) {
+				C tail = detached;
+				while (null != tail.next) {
+					tail = tail.next;
+				}
+				tail.next = head;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Discard up-to max of the instances taken off the chain by
+	 * {@link #detachGarbage(int)}, holding the lock only for that long. As
+	 * detached instances still count against the limit, any callers waiting
+	 * on an exhausted pool are then given new instances if they now fit.
+	 * 
+	 * @param max
+	 *            The most instances to discard in this step
+	 * @return True if there are still detached instances to discard, false if
+	 *         there are none left.
+	 */
+	public boolean discardDetached(int max) {
+		final Receiver<C> served;
+		final boolean remaining;
+		lock.lock();
+		try {
+			while (null != detached && 0 < max--) {
+				final C instance = detached;
+				detached = instance.next;
+				instance.next = null;
+				destroy(instance);
+				detachedCount--;
+			}
+			remaining = null != detached;
+			served = serveWaiters();
+		} finally {
+			lock.unlock();
+		}
+		deliver(served);
+		return remaining;
+	}
+
+	/**
+	 * Discard instances taken off the chain by {@link #detachGarbage(int)}
+	 * until there are none left or the time budget is spent. The lock is
+	 * taken and released once per small batch of instances, so callers
+	 * waiting for it are never held up by more than one batch.
+	 * 
+	 * @param budget
+	 *            The time to spend discarding (at least one batch is discarded)
+	 * @param unit
+	 *            The unit of budget
+	 * @return True if there are still detached instances to discard, false if
+	 *         there are none left.
+	 */
+	public boolean discardDetached(long budget, TimeUnit unit) {
+		final long deadline = System.nanoTime() + unit.toNanos(budget);
+		while (discardDetached(DISCARD_BATCH)) {
+			if (0 <= System.nanoTime() - deadline) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Account for up-to wanted new instances in a single limit-check, and
+	 * check them against the seal. Detached instances that haven't been
+	 * discarded yet still count against the limit here. Must be called while
+	 * holding the lock.
+	 * 
+	 * @param wanted
+	 *            The number of new instances the caller would like to create
+	 * @return The number of new instances the caller may actually create
+	 */
+	private int reserve(int wanted) {
+		if (0 != limit) {
+			wanted = Math.min(wanted, limit - instanceCount);
+		}
+		if (0 >= wanted) {
+			return 0;
+		}
+		if (sealed) {
+			if (strictSeal) {
+				return 0;
+			}
+			sealViolations += wanted;
+			lastViolation = new Throwable("Allocated after sealing");
+		}
+		instanceCount += wanted;
+		misses += wanted;
+		track();
+		return wanted;
+	}
+
+	/**
+	 * Record a new in-use high-water mark (and window peak) if there is one.
+	 * Must be called while holding the lock, after handing instances out.
+	 */
+	private void track() {
+		final int inUse = inUse();
+		if (peak < inUse) {
+			peak = inUse;
+			if (highWater < inUse) {
+				highWater = inUse;
+			}
+		}
+	}
+
+	/**
+	 * Splice a pre-linked segment of returned instances onto the chain and
+	 * then serve any waiting callers from it. Must be called while holding the
+	 * lock.
+	 * 
+	 * @param head
+	 *            The first instance of the segment
+	 * @param tail
+	 *            The last instance of the segment
+	 * @param count
+	 *            The number of instances in the segment
+	 * @return The Receivers that were served, to be passed to
+	 *         {@link #deliver(Receiver)} once the lock has been released.
+	 */
+	private Receiver<C> push(C head, C tail, int count) {
+		if (null != diagnostics) {
+			// Drop rejected instances, without touching their next members (they may be on the chain already)
+			C kept = null;
+			C keptTail = null;
+			int keptCount = 0;
+			C instance = head;
+			for (int i = 0; i < count; i++) {
+				final C next = instance.next;
+				if (diagnostics.returned(instance)) {
+					if (null == kept) {
+						kept = instance;
+					} else {
+						keptTail.next = instance;
+					}
+					keptTail = instance;
+					keptCount++;
+				}
+				instance = next;
+			}
+			if (null == kept) {
+				return null;
+			}
+			head = kept;
+			tail = keptTail;
+			count = keptCount;
+		}
+		tail.next = chain;
+		chain = head;
+		freeCount += count;
+		returns += count;
+		return serveWaiters();
+	}
+
+	/**
+	 * Work out how many more instances a tier of callers may have in use.
+	 * Must be called while holding the lock.
+	 * 
+	 * @param critical
+	 *            True for the critical tier (bound by the hard limit), false
+	 *            for ordinary callers (bound by the soft limit)
+	 * @return The number of instances that may still be handed out (zero or
+	 *         less if none)
+	 */
+	private int headroom(boolean critical) {
+		final int bound = critical ? limit : softLimit;
+		return (0 == bound) ? Integer.MAX_VALUE : bound - inUse();
+	}
+
+	/**
+	 * Count the instances callers have in use: those neither free nor
+	 * detached. Must be called while holding the lock.
+	 * 
+	 * @return The number of instances in use
+	 */
+	private int inUse() {
+		return instanceCount - freeCount - detachedCount;
+	}
+
+	/**
+	 * Take a recycled instance or, within the limit, create a new one. Must be
+	 * called while holding the lock.
+	 * 
+	 * @param critical
+	 *            True if the caller may draw on the critical reserve
+	 * @return The instance or null if the caller's limit has been reached.
+	 */
+	private C poll(boolean critical) {
+		if (0 >= headroom(critical)) {
+			if (critical) {
+				criticalExhaustions++;
+			} else {
+				exhaustions++;
+			}
+			return null;
+		}
+		while (null != chain || reclaim()) {
+			final C instance = chain;
+			chain = instance.next;
+			freeCount--;
+			if (prepared(instance)) {
+				hits++;
+				track();
+				if (null != diagnostics) {
+					diagnostics.borrowed(instance);
+				}
+				return instance;
+			}
+		}
+		if (0 != reserve(1)) {
+			final C instance = factory.newInstance();
+			if (null != diagnostics) {
+				diagnostics.borrowed(instance);
+			}
+			return instance;
+		}
+		if (critical) {
+			criticalExhaustions++;
+		} else {
+			exhaustions++;
+		}
+		return null;
+	}
+
+	/**
+	 * Get a recycled instance ready to be handed out: check its poison (before
+	 * anything can touch it), reset it (if resets are deferred, or it has been
+	 * poisoned since its last reset) and validate it, destroying it if it's
+	 * unfit. Must be called while holding the lock, once the instance has been
+	 * taken off the chain.
+	 * 
+	 * @param instance
+	 *            The recycled instance
+	 * @return True if the instance may be handed out, false if it has been
+	 *         destroyed.
+	 */
+	private boolean prepared(C instance) {
+		if (null != diagnostics) {
+			diagnostics.reusing(instance);
+		}
+		if (null == managed) {
+			return true;
+		}
+		if (resetOnBorrow) {
+			managed.reset(instance);
+		}
+		if (managed.validate(instance)) {
+			return true;
+		}
+		destroy(instance);
+		return false;
+	}
+
+	/**
+	 * Forget an instance for good, letting the factory release its resources.
+	 * Must be called while holding the lock, once the instance has been taken
+	 * off the chain (or found unfit by {@link #reuse(Link)}).
+	 * 
+	 * @param instance
+	 *            The instance to forget
+	 */
+	private void destroy(C instance) {
+		if (null != diagnostics) {
+			diagnostics.discarded(instance);
+		}
+		if (null != managed) {
+			managed.destroy(instance);
+		}
+		instanceCount--;
+	}
+
+	/**
+	 * Hand recycled instances directly to waiting callers, longest-waiting
+	 * first, as far as the soft limit allows. Once the chain is empty, any
+	 * callers still waiting are given new instances if the limit now allows
+	 * (e.g. because recycled instances failed validation and were destroyed).
+	 * Must be called while holding the lock.
+	 * 
+	 * @return The Receivers that were served, in order and linked through
+	 *         their next members, to be passed to {@link #deliver(Receiver)}
+	 *         once the lock has been released.
+	 */
+	private Receiver<C> serveWaiters() {
+		Receiver<C> served = null;
+		Receiver<C> lastServed = null;
+		while (null != waiters && 0 < headroom(false)) {
+			final C instance;
+			if (null != chain || reclaim()) {
+				instance = chain;
+				chain = instance.next;
+				instance.next = null;
+				freeCount--;
+				if (!prepared(instance)) {
+					continue;
+				}
+				hits++;
+				track();
+			} else if (0 != reserve(1)) {
+				instance = factory.newInstance();
+			} else {
+				break;
+			}
+			final Receiver<C> waiter = waiters;
+			waiters = waiter.next;
+			if (null == waiters) {
+				lastWaiter = null;
+			}
+			waiter.next = null;
+			if (null != diagnostics) {
+				diagnostics.borrowed(instance);
+			}
+			waiter.delivery = instance;
+			if (null == lastServed) {
+				served = waiter;
+			} else {
+				lastServed.next = waiter;
+			}
+			lastServed = waiter;
+		}
+		return served;
+	}
+
+	/**
+	 * Pass each served Receiver its instance. Must be called without holding
+	 * the lock.
+	 * 
+	 * @param served
+	 *            The first of the served Receivers (may be null)
+	 */
+	private static <C> void deliver(Receiver<C> served) {
+		while (null != served) {
+			final Receiver<C> receiver = served;
+			served = receiver.next;
+			receiver.next = null;
+			final C instance = receiver.delivery;
+			receiver.delivery = null;
+			receiver.receive(instance);
+		}
+	}
+
+	/**
+	 * Add a caller to the end of the queue of waiters. Must be called while
+	 * holding the lock.
+	 * 
+	 * @param waiter
+	 *            The Receiver for the waiting caller
+	 */
+	private void enqueue(Receiver<C> waiter) {
+		if (null == lastWaiter) {
+			waiters = waiter;
+		} else {
+			lastWaiter.next = waiter;
+		}
+		lastWaiter = waiter;
+	}
+
+	/**
+	 * Remove a caller that has given-up waiting from the queue of waiters. Must
+	 * be called while holding the lock.
+	 * 
+	 * @param waiter
+	 *            The Receiver for the waiting caller
+	 * @return True if the Receiver was found in the queue.
+	 */
+	private boolean dequeue(Receiver<C> waiter) {
+		Receiver<C> previous = null;
+		for (Receiver<C> current = waiters; null != current; current = current.next) {
+			if (current == waiter) {
+				if (null == previous) {
+					waiters = current.next;
+				} else {
+					previous.next = current.next;
+				}
+				if (lastWaiter == current) {
+					lastWaiter = previous;
+				}
+				current.next = null;
+				return true;
+			}
+			previous = current;
+		}
+		return false;
+	}
+
+	/**
+	 * Move the free instances beyond the first kept onto the front of the soft
+	 * overflow tier, replacing its reference with one to the joined chain, so
+	 * the tier is never more than one SoftReference however often it's
+	 * trimmed into. Must be called while holding the lock.
+	 * 
+	 * @param kept
+	 *            The number of free instances to keep strongly held
+	 */
+	private void overflow(int kept) {
+		int count = freeCount - kept;
+		final C head = detach(kept);
+		if (null == head) {
+			return;
+		}
+		instanceCount -= count;
+		C tail = head;
+		while (true) {
+			if (null != diagnostics) {
+				diagnostics.discarded(tail);
+			}
+			if (null == tail.next) {
+				break;
+			}
+			tail = tail.next;
+		}
+		if (null != overflow) {
+			final C previous = overflow.get();
+			overflow.clear();
+			if (null == previous) {
+				softLost += overflow.count;
+			} else {
+				tail.next = previous;
+				count += overflow.count;
+			}
+		}
+		overflow = new Overflow<C>(head, count);
+	}
+
+	/**
+	 * Cut the chain after its first kept instances. Only those are walked, as
+	 * freeCount already says how many are cut off. Must be called while
+	 * holding the lock.
+	 * 
+	 * @param kept
+	 *            The number of free instances to leave on the chain
+	 * @return The first of the instances cut off (linked to the rest through
+	 *         their next members), or null if there were no more than kept.
+	 */
+	private C detach(int kept) {
+		if (freeCount <= kept) {
+			return null;
+		}
+		final C head;
+		if (0 == kept) {
+			head = chain;
+			chain = null;
+		} else {
+			C last = chain;
+			for (int i = 1; i < kept; i++) {
+				last = last.next;
+			}
+			head = last.next;
+			last.next = null;
+		}
+		freeCount = kept;
+		return head;
+	}
+
+	/**
+	 * Take back the soft overflow tier, if the garbage-collector hasn't
+	 * reclaimed it, putting its instances (or as many as the limit allows) on
+	 * the chain. Must be called while holding the lock.
+	 * 
+	 * @return True if any instances were taken back, false if the overflow
+	 *         tier had none left.
+	 */
+	private boolean reclaim() {
+		if (null == overflow) {
+			return false;
+		}
+		final Overflow<C> tier = overflow;
+		overflow = null;
+		final C head = tier.get();
+		tier.clear();
+		final int count = (null == head) ? 0 : (0 == limit) ? tier.count : Math.min(tier.count, limit - instanceCount);
+		softLost += tier.count - Math.max(0, count);
+		if (0 >= count) {
+			return false;
+		}
+		C tail = head;
+		for (int i = 1; i < count; i++) {
+			tail = tail.next;
+		}
+		tail.next = chain;
+		chain = head;
+		freeCount += count;
+		instanceCount += count;
+		softHits += count;
+		return true;
+	}
+
+	/**
+	 * The soft overflow tier: a chain of instances that is only reachable
+	 * through this reference to its head.
+	 */
+	private static final class Overflow<C> extends SoftReference<C> {
+		Overflow(C head, int count) {
+			super(head);
+			this.count = count;
+		}
+
+		final int count;
+	}
+
+	/**
+	 * Receiver for a caller waiting in {@link Pool#getInstance(long, TimeUnit)}.
+	 */
+	private static final class Waiter<C> extends Receiver<C> {
+		Waiter(Thread thread) {
+			this.thread = thread;
+		}
+
+		/**
+		 * Store the instance and wake the waiting thread.
+		 * 
+		 * @see Receiver#receive(Object)
+		 */
+		@Override
+		protected void receive(C instance) {
+			this.instance = instance;
+			LockSupport.unpark(thread);
+		}
+
+		final Thread thread;
+		volatile C instance = null; // Set (once) by the thread handing the instance over
+	}
+
+	/**
+	 * Receiver that completes a CompletableFuture for {@link Pool#acquireAsync()}.
+	 * It also watches its own future, so that it can be withdrawn if the
+	 * future is cancelled or timed-out before being served.
+	 */
+	private static final class FutureReceiver<C extends Link<C>> extends Receiver<C> implements BiConsumer<C, Throwable> {
+		FutureReceiver(Pool<C> pool) {
+			this.pool = pool;
+			future.whenComplete(this);
+		}
+
+		/**
+		 * Complete the future or, if it is already complete, give the instance
+		 * straight back.
+		 * 
+		 * @see Receiver#receive(Object)
+		 */
+		@Override
+		protected void receive(C instance) {
+			if (!future.complete(instance)) {
+				pool.returnInstance(instance);
+			}
+		}
+
+		/**
+		 * Withdraw from the pool's queue if the future was completed some
+		 * other way.
+		 * 
+		 * @see BiConsumer#accept(Object, Object)
+		 */
+		@Override
+		public void accept(C instance, Throwable failure) {
+			if (null != failure) {
+				pool.cancel(this);
+			}
+		}
+
+		final CompletableFuture<C> future = new CompletableFuture<C>();
+		private final Pool<C> pool;
+	}
+
 	/**
 	 * Present a human-readable representation of this instance, showing its
 	 * type and number of managed-instances.
@@ -185,8 +1648,35 @@ public class Pool<C extends Link<C>> implements Recycler{
 		return "Pool(" + instanceCount + ")";
 	}
 
+	private static final int DISCARD_BATCH = 64; // Instances discarded per lock-hold by discardDetached(long, TimeUnit)
+
 	private final Factory<C> factory;
 	private final int limit;
-	private int instanceCount = 0;
+	private final int softLimit;
+	private final PoolDiagnostics<C> diagnostics;
+	private final ManagedFactory<C> managed;
+	private final boolean resetOnBorrow; // Reset in prepared(), because resets are deferred or poison undoes them
+	private volatile int instanceCount = 0;
+	private int freeCount = 0;
+	private int highWater = 0;
+	private int peak = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long returns = 0;
+	private long exhaustions = 0;
+	private long criticalExhaustions = 0;
+	private boolean sealed = false;
+	private boolean strictSeal = false;
+	private long sealViolations = 0;
+	private Throwable lastViolation = null;
+	private boolean softOverflow = false;
+	private C detached = null;
+	private int detachedCount = 0;
+	private Overflow<C> overflow = null;
+	private long softHits = 0;
+	private long softLost = 0;
 	private C chain = null;
+	private Receiver<C> waiters = null;
+	private Receiver<C> lastWaiter = null;
+	private final ReentrantLock lock = new ReentrantLock();
 }
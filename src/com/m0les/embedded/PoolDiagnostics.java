@@ -0,0 +1,424 @@
+package com.m0les.embedded;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A diagnostic mode for {@link Pool}, which catches misuse that the Pool itself trusts callers not to commit: an
+ * instance being returned twice (which would otherwise corrupt the free chain and hand the same instance to two
+ * callers), an instance returned to a pool it didn't come from, an instance never being returned (a leak, which
+ * eventually exhausts a limited pool) and an instance being used after it has been returned.
+ * </p>
+ * <p>
+ * Every instance the Pool hands out gets a lease record, which holds a generation number (incremented on each
+ * borrow) and the time it was borrowed. Returns are checked against the record, and duplicate or foreign returns are
+ * reported and dropped instead of being spliced onto the chain. {@link #scanLeaks()} reports each instance that has
+ * been out longer than the leak threshold. Use after return is caught in two ways:
+ * callers that keep a reference can {@link #check(Link, long)} it against the generation they were given, and an
+ * optional {@link Poison} scribbles over each returned instance, which is verified to be intact when the instance is
+ * next handed out. If the pool's factory is a {@link ManagedFactory}, a poisoned instance is verified before it's
+ * reset, and is then reset as it's handed out (even if resets aren't deferred), as the poison has overwritten the
+ * state the reset on return left.
+ * </p>
+ * <p>
+ * Capturing a stack-trace is by far the dearest part of all this, so the site of a borrow is only recorded for one
+ * in every sampleInterval borrows. The remaining cost is a hash lookup per borrow and return (records are reused along
+ * with their instances, so they're only allocated once per instance), which is meant to be cheap enough to leave
+ * enabled on a canary node under real load.
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   PoolDiagnostics&lt;Message&gt; diagnostics = new PoolDiagnostics&lt;Message&gt;( 100, 30, TimeUnit.SECONDS, logger );
+ *   Pool&lt;Message&gt; pool = new Pool&lt;Message&gt;( new MessageFactory(), 1000, diagnostics );
+ *   ...
+ *   diagnostics.scanLeaks();   // every so often
+ * </pre>
+ * 
+ * @note A PoolDiagnostics instance can only be attached to one Pool. The Listener is called while the Pool's lock is
+ *       held, so it should be brief and mustn't call back into the Pool. Misuse through
+ *       {@link Pool#returnChain(Link)} can only be caught on a best-effort basis, as the caller has already re-linked
+ *       the instances by then.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * 
+ * @param <C>
+ *            The class of objects managed by the pool
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class PoolDiagnostics<C extends Link<C>> {
+	/**
+	 * A receiver of misuse reports. Each borrowSite parameter is the stack-trace captured when the instance concerned
+	 * was last borrowed, or null if that borrow wasn't sampled.
+	 * 
+	 * @param <C>
+	 *            The class of objects managed by the pool
+	 */
+	public interface Listener<C> {
+		/**
+		 * An instance was returned while it was already free. The return has been ignored.
+		 * 
+		 * @param instance
+		 *            The instance returned
+		 * @param borrowSite
+		 *            Where the instance was last borrowed from (may be null)
+		 */
+		public void doubleReturn(C instance, Throwable borrowSite);
+
+		/**
+		 * An instance that the pool never handed out was returned to it. The return has been ignored.
+		 * 
+		 * @param instance
+		 *            The instance returned
+		 */
+		public void foreignReturn(C instance);
+
+		/**
+		 * An instance has been out for longer than the leak threshold. This is reported once per borrow.
+		 * 
+		 * @param instance
+		 *            The instance concerned
+		 * @param ageNanos
+		 *            How long ago the instance was borrowed, in nanoseconds
+		 * @param borrowSite
+		 *            Where the instance was borrowed from (may be null)
+		 */
+		public void leaked(C instance, long ageNanos, Throwable borrowSite);
+
+		/**
+		 * An instance was used after it had been returned.
+		 * 
+		 * @param instance
+		 *            The instance concerned
+		 * @param borrowSite
+		 *            Where the instance was borrowed from by the (presumed) offender (may be null)
+		 */
+		public void usedAfterReturn(C instance, Throwable borrowSite);
+	}
+
+	/**
+	 * A way of marking returned instances so that changes made to them while they're free can be detected.
+	 * 
+	 * @param <C>
+	 *            The class of objects managed by the pool
+	 */
+	public interface Poison<C> {
+		/**
+		 * Fill a returned instance's members with a recognisable pattern (Not including its next member).
+		 * 
+		 * @param instance
+		 *            The instance just returned
+		 */
+		public void poison(C instance);
+
+		/**
+		 * Check a free instance's pattern is still intact.
+		 * 
+		 * @param instance
+		 *            The instance about to be handed out again
+		 * @return True if nothing has changed since {@link #poison(Object)} was called.
+		 */
+		public boolean isIntact(C instance);
+	}
+
+	/**
+	 * Create a diagnostic mode without poisoning.
+	 * 
+	 * @param sampleInterval
+	 *            Record the site of one in this many borrows (1 for all of them, 0 for none)
+	 * @param leakThreshold
+	 *            How long an instance may be out before {@link #scanLeaks()} reports it
+	 * @param unit
+	 *            The unit of leakThreshold
+	 * @param listener
+	 *            The receiver of misuse reports (may be null to only count them)
+	 * @throws IllegalArgumentException
+	 *             If the sample interval or threshold are negative.
+	 */
+	public PoolDiagnostics(int sampleInterval, long leakThreshold, TimeUnit unit, Listener<? super C> listener)
+			throws IllegalArgumentException {
+		this(sampleInterval, leakThreshold, unit, listener, null);
+	}
+
+	/**
+	 * Create a diagnostic mode.
+	 * 
+	 * @param sampleInterval
+	 *            Record the site of one in this many borrows (1 for all of them, 0 for none)
+	 * @param leakThreshold
+	 *            How long an instance may be out before {@link #scanLeaks()} reports it
+	 * @param unit
+	 *            The unit of leakThreshold
+	 * @param listener
+	 *            The receiver of misuse reports (may be null to only count them)
+	 * @param poison
+	 *            The way of marking free instances (may be null for none)
+	 * @throws IllegalArgumentException
+	 *             If the sample interval or threshold are negative.
+	 */
+	public PoolDiagnostics(int sampleInterval, long leakThreshold, TimeUnit unit, Listener<? super C> listener,
+			Poison<? super C> poison) throws IllegalArgumentException {
+		if (0 > sampleInterval || 0 > leakThreshold) {
+			throw new IllegalArgumentException("Invalid diagnostic settings");
+		}
+		this.sampleInterval = sampleInterval;
+		this.leakThreshold = unit.toNanos(leakThreshold);
+		this.listener = listener;
+		this.poison = poison;
+	}
+
+	/**
+	 * Get the generation of an instance's current borrow, to be checked later with {@link #check(Link, long)}.
+	 * 
+	 * @param instance
+	 *            The borrowed instance
+	 * @return Its generation, or -1 if the instance isn't currently out.
+	 */
+	public synchronized long getGeneration(C instance) {
+		final Lease lease = leases.get(instance);
+		return (null != lease && lease.out) ? lease.generation : -1;
+	}
+
+	/**
+	 * Check that an instance is still out under the same borrow as when its generation was taken. A failed check is
+	 * reported as a use after return.
+	 * 
+	 * @param instance
+	 *            The instance about to be used
+	 * @param generation
+	 *            The generation given by {@link #getGeneration(Link)} when it was borrowed
+	 * @return True if the instance is still out under that borrow.
+	 */
+	public synchronized boolean check(C instance, long generation) {
+		final Lease lease = leases.get(instance);
+		if (null != lease && lease.out && lease.generation == generation) {
+			return true;
+		}
+		usesAfterReturn++;
+		if (null != listener) {
+			listener.usedAfterReturn(instance, null != lease ? lease.site : null);
+		}
+		return false;
+	}
+
+	/**
+	 * Report every instance that has been out longer than the leak threshold and hasn't already been reported for its
+	 * current borrow.
+	 * 
+	 * @note This iterates over every lease record, so it's meant to be called every so often rather than per
+	 *       operation.
+	 * 
+	 * @return The number of newly-reported leaks
+	 */
+	public synchronized int scanLeaks() {
+		final long now = System.nanoTime();
+		int found = 0;
+		for (Map.Entry<C, Lease> entry : leases.entrySet()) {
+			final Lease lease = entry.getValue();
+			if (lease.out && !lease.reported && now - lease.since > leakThreshold) {
+				lease.reported = true;
+				found++;
+				if (null != listener) {
+					listener.leaked(entry.getKey(), now - lease.since, lease.site);
+				}
+			}
+		}
+		leaks += found;
+		return found;
+	}
+
+	/**
+	 * Get the number of instances currently out.
+	 * 
+	 * @return The number of instances borrowed and not yet returned
+	 */
+	public synchronized int getOutstanding() {
+		return outstanding;
+	}
+
+	/**
+	 * Get the number of double returns caught.
+	 * 
+	 * @return The count of double returns
+	 */
+	public synchronized long getDoubleReturns() {
+		return doubleReturns;
+	}
+
+	/**
+	 * Get the number of returns of instances that weren't from the pool.
+	 * 
+	 * @return The count of foreign returns
+	 */
+	public synchronized long getForeignReturns() {
+		return foreignReturns;
+	}
+
+	/**
+	 * Get the number of leaks reported by {@link #scanLeaks()}.
+	 * 
+	 * @return The count of leaks
+	 */
+	public synchronized long getLeaks() {
+		return leaks;
+	}
+
+	/**
+	 * Get the number of uses after return caught.
+	 * 
+	 * @return The count of uses after return
+	 */
+	public synchronized long getUsesAfterReturn() {
+		return usesAfterReturn;
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public synchronized String toString() {
+		return "PoolDiagnostics(" + outstanding + " out, " + doubleReturns + " double, " + foreignReturns
+				+ " foreign, " + leaks + " leaked, " + usesAfterReturn + " used after return)";
+	}
+
+	/**
+	 * Find out whether returned instances are poisoned, in which case the pool must reset them as they're handed
+	 * out, after {@link #reusing(Link)} has checked them.
+	 * 
+	 * @return True if there is a {@link Poison}
+	 */
+	boolean isPoisoning() {
+		return null != poison;
+	}
+
+	/**
+	 * Check a free instance's poison as the pool takes it off the chain, before it's reset or validated.
+	 * 
+	 * @param instance
+	 *            The instance about to be reused
+	 */
+	synchronized void reusing(C instance) {
+		if (null == poison) {
+			return;
+		}
+		final Lease lease = leases.get(instance);
+		if (null != lease && !lease.out && !poison.isIntact(instance)) {
+			usesAfterReturn++;
+			if (null != listener) {
+				listener.usedAfterReturn(instance, lease.site);
+			}
+		}
+	}
+
+	/**
+	 * Record an instance being handed out by the pool. A recycled instance must have been checked by
+	 * {@link #reusing(Link)} first.
+	 * 
+	 * @param instance
+	 *            The instance being handed out
+	 */
+	synchronized void borrowed(C instance) {
+		Lease lease = leases.get(instance);
+		if (null == lease) {
+			lease = new Lease();
+			leases.put(instance, lease);
+		}
+		lease.generation++;
+		lease.since = System.nanoTime();
+		lease.out = true;
+		lease.reported = false;
+		lease.site = (0 != sampleInterval && 0 == borrows++ % sampleInterval) ? new Throwable("Borrowed here") : null;
+		outstanding++;
+	}
+
+	/**
+	 * Check and record an instance being returned to the pool.
+	 * 
+	 * @param instance
+	 *            The instance being returned
+	 * @return True if the return is valid, false if it must be dropped.
+	 */
+	synchronized boolean returned(C instance) {
+		final Lease lease = leases.get(instance);
+		if (null == lease) {
+			foreignReturns++;
+			if (null != listener) {
+				listener.foreignReturn(instance);
+			}
+			return false;
+		}
+		if (!lease.out) {
+			doubleReturns++;
+			if (null != listener) {
+				listener.doubleReturn(instance, lease.site);
+			}
+			return false;
+		}
+		lease.out = false;
+		outstanding--;
+		if (null != poison) {
+			poison.poison(instance);
+		}
+		return true;
+	}
+
+	/**
+	 * Forget an instance that the pool is discarding: a free one, or one that a caching layer in front of the pool
+	 * found unfit to hand out again.
+	 * 
+	 * @param instance
+	 *            The instance being discarded
+	 */
+	synchronized void discarded(C instance) {
+		final Lease lease = leases.remove(instance);
+		if (null != lease && lease.out) {
+			outstanding--;
+		}
+	}
+
+	/**
+	 * The record of an instance's current (or last) borrow.
+	 */
+	private static final class Lease {
+		private long generation = 0;
+		private long since = 0;
+		private Throwable site = null;
+		private boolean out = false;
+		private boolean reported = false;
+	}
+
+	private final int sampleInterval;
+	private final long leakThreshold;
+	private final Listener<? super C> listener;
+	private final Poison<? super C> poison;
+	private final IdentityHashMap<C, Lease> leases = new IdentityHashMap<C, Lease>();
+	private long borrows = 0;
+	private int outstanding = 0;
+	private long doubleReturns = 0;
+	private long foreignReturns = 0;
+	private long leaks = 0;
+	private long usesAfterReturn = 0;
+}
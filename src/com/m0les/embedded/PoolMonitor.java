@@ -0,0 +1,169 @@
+package com.m0les.embedded;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the {@link Statistics} of a named pool (or any other {@link Metered} object, e.g. a {@link Tree}) as a
+ * JMX MXBean on the platform MBean server. Each attribute read takes a fresh snapshot into a Statistics instance
+ * owned by the monitor, so reading attributes doesn't produce garbage on the pool's side.
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   PoolMonitor monitor = PoolMonitor.register( "orders", orderTree );
+ *   ...
+ *   monitor.unregister();
+ * </pre>
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class PoolMonitor implements PoolMXBean {
+	/**
+	 * Register a Metered object under the name "com.m0les.embedded:type=Pool,name=&lt;name&gt;".
+	 * 
+	 * @param name
+	 *            The name to publish the pool's statistics under
+	 * @param source
+	 *            The pool (or other Metered object) to publish
+	 * @return The registered monitor
+	 * @throws JMException
+	 *             If the name is malformed or already registered.
+	 */
+	public static PoolMonitor register(String name, Metered source) throws JMException {
+		final PoolMonitor monitor = new PoolMonitor(source, new ObjectName(DOMAIN + ObjectName.quote(name)));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, monitor.name);
+		return monitor;
+	}
+
+	/**
+	 * Remove this monitor from the platform MBean server.
+	 * 
+	 * @throws JMException
+	 *             If it was not registered.
+	 */
+	public void unregister() throws JMException {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.unregisterMBean(name);
+	}
+
+	/**
+	 * Get the JMX name that this monitor is registered under.
+	 * 
+	 * @return The name of the MXBean
+	 */
+	public ObjectName getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized long getHits() {
+		return refresh().hits;
+	}
+
+	@Override
+	public synchronized long getMisses() {
+		return refresh().misses;
+	}
+
+	@Override
+	public synchronized long getReturns() {
+		return refresh().returns;
+	}
+
+	@Override
+	public synchronized long getExhaustions() {
+		return refresh().exhaustions;
+	}
+
+	@Override
+	public synchronized long getCriticalExhaustions() {
+		return refresh().criticalExhaustions;
+	}
+
+	@Override
+	public synchronized long getSealViolations() {
+		return refresh().sealViolations;
+	}
+
+	@Override
+	public synchronized long getSoftHits() {
+		return refresh().softHits;
+	}
+
+	@Override
+	public synchronized long getSoftLost() {
+		return refresh().softLost;
+	}
+
+	@Override
+	public synchronized int getFree() {
+		return refresh().free;
+	}
+
+	@Override
+	public synchronized int getHighWater() {
+		return refresh().highWater;
+	}
+
+	@Override
+	public synchronized int getInstanceCount() {
+		return refresh().instances;
+	}
+
+	@Override
+	public synchronized int getLimit() {
+		return refresh().limit;
+	}
+
+	/**
+	 * Create a monitor (use {@link #register(String, Metered)} instead).
+	 * 
+	 * @param source
+	 *            The Metered object to publish
+	 * @param name
+	 *            The JMX name to publish it under
+	 */
+	private PoolMonitor(Metered source, ObjectName name) {
+		this.source = source;
+		this.name = name;
+	}
+
+	/**
+	 * Take a fresh snapshot of the source's statistics.
+	 * 
+	 * @return The (reused) snapshot
+	 */
+	private Statistics refresh() {
+		source.getStatistics(snapshot);
+		return snapshot;
+	}
+
+	private static final String DOMAIN = "com.m0les.embedded:type=Pool,name=";
+
+	private final Metered source;
+	private final ObjectName name;
+	private final Statistics snapshot = new Statistics();
+}
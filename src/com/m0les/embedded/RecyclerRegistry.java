@@ -0,0 +1,334 @@
+package com.m0les.embedded;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * <p>
+ * A central list of {@link Recycler}s that are all trimmed together when the VM comes under memory pressure, so that
+ * pooled instances are shed before a full collection (or an OutOfMemoryError) rather than after it. Recyclers are
+ * only weakly referenced, so registering one doesn't keep it alive; entries for collected Recyclers are dropped the
+ * next time the list is walked.
+ * </p>
+ * <p>
+ * Once {@link #install()}ed, a registry listens for the platform's memory-pool collection-usage threshold
+ * notifications (with the thresholds set to a fraction of each heap pool's maximum size) and for garbage-collector
+ * notifications, after which it checks the overall heap occupancy against the same fraction. Either way, when the
+ * heap is too full the registered Recyclers are trimmed with {@link Recycler#discardGarbage(int)} in ascending
+ * priority order, each down to its own floor.
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   RecyclerRegistry registry = new RecyclerRegistry( 0.75 );
+ *   registry.install();
+ *   registry.register( orderTree, 10, 1000 );
+ *   registry.register( scratchPool, 0, 0 );
+ * </pre>
+ * 
+ * @note Trimming happens on whichever thread delivers the notification, so registered Recyclers must be safe to
+ *       trim from another thread (as Pool, ConcurrentPool, MagazinePool and Tree all are).
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class RecyclerRegistry implements NotificationListener {
+	/**
+	 * Create a registry (which does nothing automatically until it is {@link #install()}ed).
+	 * 
+	 * @param threshold
+	 *            The fraction of the maximum heap size (0 &lt; threshold &lt;= 1) above which the heap is considered
+	 *            to be under pressure.
+	 * @throws IllegalArgumentException
+	 *             If the threshold is out of range.
+	 */
+	public RecyclerRegistry(double threshold) throws IllegalArgumentException {
+		if (!(0 < threshold && 1 >= threshold)) {
+			throw new IllegalArgumentException("threshold must be in (0, 1]");
+		}
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Register a Recycler to be trimmed under memory pressure. Registering the same Recycler again just updates its
+	 * priority and floor.
+	 * 
+	 * @param recycler
+	 *            The Recycler to trim (weakly referenced)
+	 * @param priority
+	 *            Recyclers with lower priorities are trimmed first
+	 * @param floor
+	 *            The number of free instances to leave in the Recycler (0 discards them all)
+	 */
+	public synchronized void register(Recycler recycler, int priority, int floor) {
+		remove(recycler);
+		final Entry entry = new Entry(recycler, priority, floor);
+		Entry previous = null;
+		Entry current = entries;
+		while (null != current && current.priority <= priority) {
+			previous = current;
+			current = current.next;
+		}
+		entry.next = current;
+		if (null == previous) {
+			entries = entry;
+		} else {
+			previous.next = entry;
+		}
+	}
+
+	/**
+	 * Stop trimming a Recycler.
+	 * 
+	 * @param recycler
+	 *            The Recycler to forget
+	 * @return True if it was registered
+	 */
+	public synchronized boolean unregister(Recycler recycler) {
+		return remove(recycler);
+	}
+
+	/**
+	 * Trim every registered Recycler down to its floor, in ascending priority order. This is what happens on memory
+	 * pressure, but it can also be called directly.
+	 */
+	public synchronized void trim() {
+		Entry previous = null;
+		Entry current = entries;
+		while (null != current) {
+			final Recycler recycler = current.recycler.get();
+			if (null == recycler) {
+				current = unlink(previous, current);
+				continue;
+			}
+			recycler.discardGarbage(current.floor);
+			previous = current;
+			current = current.next;
+		}
+		trims++;
+	}
+
+	/**
+	 * Start listening for memory-pressure notifications from the platform's memory pools and garbage collectors.
+	 * The collection-usage threshold of every heap memory pool that supports one is set to the configured fraction
+	 * of that pool's maximum size.
+	 */
+	public synchronized void install() {
+		if (installed) {
+			return;
+		}
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			final MemoryUsage usage = pool.getUsage();
+			if (MemoryType.HEAP == pool.getType() && pool.isCollectionUsageThresholdSupported()
+					&& 0 < usage.getMax()) {
+				pool.setCollectionUsageThreshold((long) (usage.getMax() * threshold));
+			}
+		}
+		addListener(ManagementFactory.getMemoryMXBean());
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			addListener(collector);
+		}
+		installed = true;
+	}
+
+	/**
+	 * Stop listening for memory-pressure notifications.
+	 * 
+	 * @note The memory pools' collection-usage thresholds are left as they are, since other code may rely on them too.
+	 */
+	public synchronized void uninstall() {
+		if (!installed) {
+			return;
+		}
+		removeListener(ManagementFactory.getMemoryMXBean());
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			removeListener(collector);
+		}
+		installed = false;
+	}
+
+	/**
+	 * React to a platform notification. Collection-usage threshold notifications trim straight away, while
+	 * garbage-collection notifications only trim if the heap is still more occupied than the threshold.
+	 * 
+	 * @see NotificationListener#handleNotification(Notification, Object)
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		final String type = notification.getType();
+		if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)
+				|| MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+				|| (GC_NOTIFICATION.equals(type) && isUnderPressure())) {
+			trim();
+		}
+	}
+
+	/**
+	 * Check whether the heap is more occupied than the threshold allows.
+	 * 
+	 * @return True if the used heap exceeds the threshold fraction of its maximum (or committed) size.
+	 */
+	public boolean isUnderPressure() {
+		final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		final long max = 0 < heap.getMax() ? heap.getMax() : heap.getCommitted();
+		return heap.getUsed() >= max * threshold;
+	}
+
+	/**
+	 * Get the number of times the registered Recyclers have been trimmed.
+	 * 
+	 * @return The number of {@link #trim()} passes so far
+	 */
+	public synchronized long getTrimCount() {
+		return trims;
+	}
+
+	/**
+	 * Get the number of Recyclers registered (including any that have been collected but not yet noticed).
+	 * 
+	 * @return The number of registered entries
+	 */
+	public synchronized int size() {
+		int size = 0;
+		for (Entry entry = entries; null != entry; entry = entry.next) {
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "RecyclerRegistry(" + size() + ")";
+	}
+
+	/**
+	 * Remove a Recycler's entry (if any), dropping the entries of collected Recyclers along the way.
+	 * 
+	 * @param recycler
+	 *            The Recycler to remove
+	 * @return True if it was found
+	 */
+	private boolean remove(Recycler recycler) {
+		boolean found = false;
+		Entry previous = null;
+		Entry current = entries;
+		while (null != current) {
+			final Recycler candidate = current.recycler.get();
+			if (null == candidate || recycler == candidate) {
+				found |= null != candidate;
+				current = unlink(previous, current);
+			} else {
+				previous = current;
+				current = current.next;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Unlink an entry from the list.
+	 * 
+	 * @param previous
+	 *            The entry before it (null if it's the first)
+	 * @param current
+	 *            The entry to unlink
+	 * @return The entry after it
+	 */
+	private Entry unlink(Entry previous, Entry current) {
+		final Entry next = current.next;
+		if (null == previous) {
+			entries = next;
+		} else {
+			previous.next = next;
+		}
+		current.next = null;
+		return next;
+	}
+
+	/**
+	 * Listen to a platform MXBean, if it emits notifications.
+	 * 
+	 * @param bean
+	 *            The MXBean to listen to
+	 */
+	private void addListener(Object bean) {
+		if (bean instanceof NotificationEmitter) {
+			((NotificationEmitter) bean).addNotificationListener(this, null, null);
+		}
+	}
+
+	/**
+	 * Stop listening to a platform MXBean.
+	 * 
+	 * @param bean
+	 *            The MXBean to stop listening to
+	 */
+	private void removeListener(Object bean) {
+		if (bean instanceof NotificationEmitter) {
+			try {
+				((NotificationEmitter) bean).removeNotificationListener(this);
+			} catch (ListenerNotFoundException e) {
+				// Already gone, which is what we wanted
+			}
+		}
+	}
+
+	/**
+	 * A registered Recycler and how to trim it.
+	 */
+	private static final class Entry extends Link<Entry> {
+		Entry(Recycler recycler, int priority, int floor) {
+			this.recycler = new WeakReference<Recycler>(recycler);
+			this.priority = priority;
+			this.floor = floor;
+		}
+
+		private final WeakReference<Recycler> recycler;
+		private final int priority;
+		private final int floor;
+	}
+
+	/**
+	 * The notification type emitted by HotSpot's garbage collectors after each collection.
+	 */
+	private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+	private final double threshold;
+	private Entry entries = null;
+	private boolean installed = false;
+	private long trims = 0;
+}
@@ -0,0 +1,389 @@
+package com.m0les.embedded;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <p>
+ * A pool of variable-length primitive arrays (byte[], int[] or long[] scratch buffers and the like). Requested
+ * lengths are rounded up to a fixed set of "size classes", each of which is an {@link ObjectPool} of arrays of
+ * exactly that length with its own limit. By default the classes are the powers of two between a minimum and maximum
+ * length, but each doubling can be split into finer classes to waste less memory on rounding.
+ * </p>
+ * <p>
+ * Requests longer than the largest class are satisfied with a new, exact-length array that isn't pooled, and arrays
+ * that don't match a class length exactly are ignored when returned. The memory lost to rounding is reported by
+ * {@link #getWastedBytes()} and each class pool can be reached through {@link #getSizeClass(int)}, e.g. to give the
+ * busy ones their own {@link TrimPolicy}.
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   SizeClassPool&lt;byte[]&gt; scratch = SizeClassPool.bytes( 64, 65536, 2, 32 );
+ *   byte[] buffer = scratch.getArray( 1500 );   // A byte[2048]
+ *   ...
+ *   scratch.returnArray( buffer );
+ * </pre>
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ * @param <A> The array type pooled (e.g. byte[])
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class SizeClassPool<A> implements Recycler, Metered {
+	/**
+	 * Create a pool of byte arrays.
+	 * 
+	 * @see #SizeClassPool(Shape, int, int, int, int)
+	 */
+	public static SizeClassPool<byte[]> bytes(int minLength, int maxLength, int classesPerDoubling, int limitPerClass) {
+		return new SizeClassPool<byte[]>(BYTES, minLength, maxLength, classesPerDoubling, limitPerClass);
+	}
+
+	/**
+	 * Create a pool of int arrays.
+	 * 
+	 * @see #SizeClassPool(Shape, int, int, int, int)
+	 */
+	public static SizeClassPool<int[]> ints(int minLength, int maxLength, int classesPerDoubling, int limitPerClass) {
+		return new SizeClassPool<int[]>(INTS, minLength, maxLength, classesPerDoubling, limitPerClass);
+	}
+
+	/**
+	 * Create a pool of long arrays.
+	 * 
+	 * @see #SizeClassPool(Shape, int, int, int, int)
+	 */
+	public static SizeClassPool<long[]> longs(int minLength, int maxLength, int classesPerDoubling, int limitPerClass) {
+		return new SizeClassPool<long[]>(LONGS, minLength, maxLength, classesPerDoubling, limitPerClass);
+	}
+
+	/**
+	 * How to create and measure arrays of one primitive type.
+	 * 
+	 * @param <A>
+	 *            The array type
+	 */
+	public static abstract class Shape<A> {
+		/**
+		 * @param elementSize
+		 *            The size of one element, in bytes
+		 */
+		protected Shape(int elementSize) {
+			this.elementSize = elementSize;
+		}
+
+		/**
+		 * Create an array.
+		 * 
+		 * @param length
+		 *            The length of the new array
+		 * @return The new array
+		 */
+		protected abstract A newArray(int length);
+
+		/**
+		 * Measure an array.
+		 * 
+		 * @param array
+		 *            The array to measure
+		 * @return Its length
+		 */
+		protected abstract int length(A array);
+
+		private final int elementSize;
+	}
+
+	/**
+	 * Create a size-class pool.
+	 * 
+	 * @param shape
+	 *            The type of arrays to pool
+	 * @param minLength
+	 *            The length of the smallest class (rounded up to a power of two)
+	 * @param maxLength
+	 *            The largest length to pool
+	 * @param classesPerDoubling
+	 *            The number of classes per power of two (1 for plain powers of two, 4 for 25% steps, and so on)
+	 * @param limitPerClass
+	 *            The maximum number of arrays of each class (0 for no limit)
+	 * @throws IllegalArgumentException
+	 *             If the lengths or class count are out of range.
+	 */
+	public SizeClassPool(Shape<A> shape, int minLength, int maxLength, int classesPerDoubling, int limitPerClass)
+			throws IllegalArgumentException {
+		if (0 >= minLength || minLength > maxLength || 0 >= classesPerDoubling || 0 > limitPerClass) {
+			throw new IllegalArgumentException("Invalid size classes");
+		}
+		this.shape = shape;
+		long size = Integer.highestOneBit(minLength);
+		if (size < minLength) {
+			size <<= 1;
+		}
+		final int[] lengths = new int[32 * classesPerDoubling + 1];
+		int count = 0;
+		while (size <= Integer.MAX_VALUE) {
+			lengths[count++] = (int) size;
+			if (size >= maxLength) {
+				break;
+			}
+			size += Math.max(1, Long.highestOneBit(size) / classesPerDoubling);
+		}
+		this.lengths = Arrays.copyOf(lengths, count);
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final ObjectPool<A>[] classes = new ObjectPool[count];
+		for (int i = 0; i < count; i++) {
+			final int length = this.lengths[i];
+			classes[i] = new ObjectPool<A>(new Factory<A>() {
+				@Override
+				public A newInstance() {
+					return SizeClassPool.this.shape.newArray(length);
+				}
+			}, limitPerClass);
+		}
+		this.classes = classes;
+	}
+
+	/**
+	 * Get an array at least minLength long. Its contents are whatever its previous user left in it.
+	 * 
+	 * @param minLength
+	 *            The minimum length needed
+	 * @return A pooled array of the smallest class that fits, or a new unpooled array if none is large enough.
+	 * @throws PoolExhaustedException
+	 *             If the class's limit has been reached.
+	 */
+	public A getArray(int minLength) throws PoolExhaustedException {
+		final int index = classFor(minLength);
+		if (0 > index) {
+			oversize.increment();
+			return shape.newArray(minLength);
+		}
+		final A array = classes[index].getInstance();
+		requested.add((long) minLength * shape.elementSize);
+		granted.add((long) lengths[index] * shape.elementSize);
+		return array;
+	}
+
+	/**
+	 * Return an array to its class pool. Arrays whose length isn't exactly that of a class are just dropped.
+	 * 
+	 * @param array
+	 *            The array to return
+	 */
+	public void returnArray(A array) {
+		final int length = shape.length(array);
+		final int index = Arrays.binarySearch(lengths, length);
+		if (0 <= index) {
+			classes[index].returnInstance(array);
+		}
+	}
+
+	/**
+	 * Get the pool of the class that serves a given length.
+	 * 
+	 * @param length
+	 *            The requested length
+	 * @return The class pool, or null if the length is larger than the largest class.
+	 */
+	public ObjectPool<A> getSizeClass(int length) {
+		final int index = classFor(length);
+		return 0 > index ? null : classes[index];
+	}
+
+	/**
+	 * Get the array lengths of all the classes.
+	 * 
+	 * @return A copy of the class lengths in ascending order
+	 * @note This creates a new array, which produces garbage.
+	 */
+	public int[] getClassLengths() {
+		return lengths.clone();
+	}
+
+	/**
+	 * Get the total memory handed out beyond what was actually asked for, due to rounding up to class lengths.
+	 * 
+	 * @return The cumulative bytes wasted by rounding
+	 */
+	public long getWastedBytes() {
+		return granted.sum() - requested.sum();
+	}
+
+	/**
+	 * Get the total memory asked for through {@link #getArray(int)} (for pooled lengths only).
+	 * 
+	 * @return The cumulative bytes requested
+	 */
+	public long getRequestedBytes() {
+		return requested.sum();
+	}
+
+	/**
+	 * Get the number of requests too large for any class.
+	 * 
+	 * @return The number of unpooled arrays created
+	 */
+	public long getOversizeCount() {
+		return oversize.sum();
+	}
+
+	/**
+	 * Sum the statistics of every class. The highWater and peak figures are sums of each class's own, so they can
+	 * exceed the number of arrays ever actually in use at once.
+	 * 
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public void getStatistics(Statistics into) {
+		long hits = 0, misses = 0, returns = 0, exhaustions = 0;
+		int free = 0, highWater = 0, peak = 0, instances = 0, limit = 0;
+		for (ObjectPool<A> pool : classes) {
+			pool.getStatistics(into);
+			hits += into.hits;
+			misses += into.misses;
+			returns += into.returns;
+			exhaustions += into.exhaustions;
+			free += into.free;
+			highWater += into.highWater;
+			peak += into.peak;
+			instances += into.instances;
+			limit += into.limit;
+		}
+		into.hits = hits;
+		into.misses = misses;
+		into.returns = returns;
+		into.exhaustions = exhaustions;
+		into.criticalExhaustions = 0;
+		into.sealViolations = 0;
+		into.softHits = 0;
+		into.softLost = 0;
+		into.free = free;
+		into.highWater = highWater;
+		into.peak = peak;
+		into.instances = instances;
+		into.limit = limit;
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public void resetPeak() {
+		for (ObjectPool<A> pool : classes) {
+			pool.resetPeak();
+		}
+	}
+
+	/**
+	 * Discard the free arrays of every class.
+	 * 
+	 * @see Recycler#discardGarbage()
+	 */
+	@Override
+	public void discardGarbage() {
+		for (ObjectPool<A> pool : classes) {
+			pool.discardGarbage();
+		}
+	}
+
+	/**
+	 * Discard all but maxRemaining free arrays of each class.
+	 * 
+	 * @see Recycler#discardGarbage(int)
+	 */
+	@Override
+	public void discardGarbage(int maxRemaining) {
+		for (ObjectPool<A> pool : classes) {
+			pool.discardGarbage(maxRemaining);
+		}
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "SizeClassPool(" + lengths.length + " classes, " + lengths[0] + ".." + lengths[lengths.length - 1] + ")";
+	}
+
+	/**
+	 * Find the smallest class that can serve a length.
+	 * 
+	 * @param length
+	 *            The requested length
+	 * @return The class index, or -1 if the length is larger than the largest class.
+	 */
+	private int classFor(int length) {
+		int index = Arrays.binarySearch(lengths, length);
+		if (0 > index) {
+			index = -index - 1;
+		}
+		return index < lengths.length ? index : -1;
+	}
+
+	private static final Shape<byte[]> BYTES = new Shape<byte[]>(1) {
+		@Override
+		protected byte[] newArray(int length) {
+			return new byte[length];
+		}
+
+		@Override
+		protected int length(byte[] array) {
+			return array.length;
+		}
+	};
+
+	private static final Shape<int[]> INTS = new Shape<int[]>(4) {
+		@Override
+		protected int[] newArray(int length) {
+			return new int[length];
+		}
+
+		@Override
+		protected int length(int[] array) {
+			return array.length;
+		}
+	};
+
+	private static final Shape<long[]> LONGS = new Shape<long[]>(8) {
+		@Override
+		protected long[] newArray(int length) {
+			return new long[length];
+		}
+
+		@Override
+		protected int length(long[] array) {
+			return array.length;
+		}
+	};
+
+	private final Shape<A> shape;
+	private final int[] lengths;
+	private final ObjectPool<A>[] classes;
+	private final LongAdder requested = new LongAdder();
+	private final LongAdder granted = new LongAdder();
+	private final LongAdder oversize = new LongAdder();
+}
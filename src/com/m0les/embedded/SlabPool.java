@@ -0,0 +1,357 @@
+package com.m0les.embedded;
+
+import java.nio.ByteBuffer;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * <p>
+ * A pool of fixed-size slices of large direct (off-heap) ByteBuffers. Direct buffers are expensive to create and
+ * their memory is only given back once the garbage-collector gets around to them, so this class reserves direct
+ * memory a whole "slab" at a time and hands out {@link Slice}s of it through the usual Pool-like
+ * {@link #getInstance()}/{@link #returnInstance(Slice)} calls. Each Slice wraps a ByteBuffer view of its own part of
+ * a slab, ready to be passed straight to a FileChannel or SocketChannel.
+ * </p>
+ * <p>
+ * Each slab keeps its own chain of free Slices. New Slices are taken from the oldest slab that has any free, so
+ * newer slabs tend to drain completely when demand falls. {@link #discardGarbage()} then lets go of every slab whose
+ * Slices are all free. Its direct memory isn't freed there and then: it is given back to the system once the
+ * garbage-collector has collected the slab's ByteBuffer, just as for any other direct buffer. (Freeing it explicitly
+ * would turn a stale reference to a returned Slice's buffer into a crash rather than a bug.)
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   SlabPool buffers = new SlabPool( 8192, 128, 16 );   // 1MB slabs, at most 16MB
+ *   SlabPool.Slice slice = buffers.getInstance();
+ *   channel.read( slice.buffer() );
+ *   ...
+ *   buffers.returnInstance( slice );
+ * </pre>
+ * 
+ * @note The ByteBuffer of a Slice must not be used, or passed anywhere that keeps it, after the Slice has been
+ *       returned.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class SlabPool implements Allocator<SlabPool.Slice> {
+	/**
+	 * A handle on one fixed-size slice of a slab.
+	 */
+	public static final class Slice extends Link<Slice> {
+		/**
+		 * Get this slice's buffer. Its position is 0 and its limit is its capacity each time the Slice is handed out.
+		 * 
+		 * @return The buffer (always the same instance for a Slice)
+		 */
+		public ByteBuffer buffer() {
+			return buffer;
+		}
+
+		/**
+		 * Create a Slice (only done when its slab is allocated).
+		 * 
+		 * @param slab
+		 *            The slab this Slice is part of
+		 * @param buffer
+		 *            This Slice's view of the slab
+		 */
+		private Slice(Slab slab, ByteBuffer buffer) {
+			this.slab = slab;
+			this.buffer = buffer;
+		}
+
+		private final Slab slab;
+		private final ByteBuffer buffer;
+		private boolean free = true;
+	}
+
+	/**
+	 * Create a limited pool of direct buffer slices.
+	 * 
+	 * @param sliceSize
+	 *            The capacity of every Slice's buffer, in bytes
+	 * @param slicesPerSlab
+	 *            The number of Slices cut from each slab of direct memory
+	 * @param maxSlabs
+	 *            The maximum number of slabs that may be allocated at once (0 for no limit)
+	 * @throws IllegalArgumentException
+	 *             If the sizes are not positive or a slab would be larger than a ByteBuffer can be.
+	 */
+	public SlabPool(int sliceSize, int slicesPerSlab, int maxSlabs) throws IllegalArgumentException {
+		if (0 >= sliceSize || 0 >= slicesPerSlab || 0 > maxSlabs || Integer.MAX_VALUE / slicesPerSlab < sliceSize) {
+			throw new IllegalArgumentException("Invalid slab geometry");
+		}
+		this.sliceSize = sliceSize;
+		this.slicesPerSlab = slicesPerSlab;
+		this.maxSlabs = maxSlabs;
+	}
+
+	/**
+	 * Get a free Slice, allocating a new slab if there are none left and the limit allows.
+	 * 
+	 * @return The Slice to be used (never null)
+	 * @throws PoolExhaustedException
+	 *             If every Slice is in use and no more slabs may be allocated.
+	 */
+	@Override
+	public Slice getInstance() throws PoolExhaustedException {
+		final Slice slice = tryGetInstance();
+		if (null == slice) {
+			throw Pool.POOL_EXHAUSTED;
+		}
+		return slice;
+	}
+
+	/**
+	 * Get a free Slice if one is available straight away.
+	 * 
+	 * @return The Slice to be used, or null if the pool is exhausted.
+	 */
+	public synchronized Slice tryGetInstance() {
+		Slab slab = slabs;
+		while (null != slab && null == slab.chain) {
+			slab = slab.next;
+		}
+		if (null != slab) {
+			hits++;
+		} else if (0 == maxSlabs || slabCount < maxSlabs) {
+			slab = allocate();
+			misses++;
+		} else {
+			exhaustions++;
+			return null;
+		}
+		final Slice slice = slab.chain;
+		slab.chain = slice.next;
+		slice.next = null;
+		slice.free = false;
+		if (0 == slab.used++) {
+			emptySlabs--;
+		}
+		inUse++;
+		if (peak < inUse) {
+			peak = inUse;
+			if (highWater < inUse) {
+				highWater = inUse;
+			}
+		}
+		return slice;
+	}
+
+	/**
+	 * Return a Slice to the pool. Its buffer is cleared, ready for the next user.
+	 * 
+	 * @param slice
+	 *            The Slice to return
+	 * @throws IllegalArgumentException
+	 *             If the Slice belongs to a different SlabPool.
+	 * @throws IllegalStateException
+	 *             If the Slice has already been returned.
+	 */
+	@Override
+	public synchronized void returnInstance(Slice slice) throws IllegalArgumentException, IllegalStateException {
+		if (this != slice.slab.pool) {
+			throw new IllegalArgumentException("Slice belongs to another SlabPool");
+		}
+		if (slice.free) {
+			throw new IllegalStateException("Slice returned twice");
+		}
+		slice.buffer.clear();
+		slice.free = true;
+		final Slab slab = slice.slab;
+		slice.next = slab.chain;
+		slab.chain = slice;
+		if (0 == --slab.used) {
+			emptySlabs++;
+		}
+		inUse--;
+		returns++;
+	}
+
+	/**
+	 * Get the number of Slices in existence (i.e. the number of slabs times the slices per slab).
+	 * 
+	 * @see Pool#getInstanceCount()
+	 */
+	@Override
+	public synchronized int getInstanceCount() {
+		return slabCount * slicesPerSlab;
+	}
+
+	/**
+	 * Get the number of bytes of direct memory currently reserved in slabs.
+	 * 
+	 * @return The total size of all slabs
+	 */
+	public synchronized long getReservedBytes() {
+		return (long) slabCount * slicesPerSlab * sliceSize;
+	}
+
+	/**
+	 * @see Metered#getStatistics(Statistics)
+	 */
+	@Override
+	public synchronized void getStatistics(Statistics into) {
+		into.hits = hits;
+		into.misses = misses;
+		into.returns = returns;
+		into.exhaustions = exhaustions;
+		into.criticalExhaustions = 0;
+		into.sealViolations = 0;
+		into.softHits = 0;
+		into.softLost = 0;
+		into.free = slabCount * slicesPerSlab - inUse;
+		into.highWater = highWater;
+		into.peak = peak;
+		into.instances = slabCount * slicesPerSlab;
+		into.limit = maxSlabs * slicesPerSlab;
+	}
+
+	/**
+	 * @see Metered#resetPeak()
+	 */
+	@Override
+	public synchronized void resetPeak() {
+		peak = inUse;
+	}
+
+	/**
+	 * Let go of every slab whose Slices are all free.
+	 * 
+	 * @see Recycler#discardGarbage()
+	 */
+	@Override
+	public void discardGarbage() {
+		discardGarbage(0);
+	}
+
+	/**
+	 * Let go of slabs whose Slices are all free, newest first, for as long as at least maxRemaining free Slices would
+	 * still be left. Slices in partly-used slabs can't be released, so more than maxRemaining may remain. The slabs
+	 * are unlinked in a single walk of the list, and their memory is freed once they have been garbage-collected.
+	 * 
+	 * @see Recycler#discardGarbage(int)
+	 */
+	@Override
+	public synchronized void discardGarbage(int maxRemaining) {
+		final int free = slabCount * slicesPerSlab - inUse;
+		final int spare = free - Math.max(0, maxRemaining);
+		if (0 > spare) {
+			return;
+		}
+		int release = Math.min(emptySlabs, spare / slicesPerSlab);
+		// The list runs oldest first, so walk past the empty slabs that are to be kept
+		int keep = emptySlabs - release;
+		Slab previous = null;
+		Slab slab = slabs;
+		while (null != slab && 0 < release) {
+			final Slab next = slab.next;
+			if (0 == slab.used && 0 == keep) {
+				if (null == previous) {
+					slabs = next;
+				} else {
+					previous.next = next;
+				}
+				slab.next = null;
+				slab.chain = null;
+				slabCount--;
+				emptySlabs--;
+				release--;
+			} else {
+				if (0 == slab.used) {
+					keep--;
+				}
+				previous = slab;
+			}
+			slab = next;
+		}
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "SlabPool(" + getInstanceCount() + ")";
+	}
+
+	/**
+	 * Allocate a new slab, cut it into Slices and append it to the list of slabs. Must be called while holding the
+	 * lock.
+	 * 
+	 * @return The new slab
+	 */
+	private Slab allocate() {
+		final Slab slab = new Slab(this);
+		final ByteBuffer memory = ByteBuffer.allocateDirect(sliceSize * slicesPerSlab);
+		for (int i = slicesPerSlab - 1; 0 <= i; i--) {
+			memory.limit((i + 1) * sliceSize);
+			memory.position(i * sliceSize);
+			final Slice slice = new Slice(slab, memory.slice());
+			slice.next = slab.chain;
+			slab.chain = slice;
+		}
+		if (null == slabs) {
+			slabs = slab;
+		} else {
+			Slab last = slabs;
+			while (null != last.next) {
+				last = last.next;
+			}
+			last.next = slab;
+		}
+		slabCount++;
+		emptySlabs++;
+		return slab;
+	}
+
+	/**
+	 * One region of direct memory and the chain of its free Slices.
+	 */
+	private static final class Slab extends Link<Slab> {
+		Slab(SlabPool pool) {
+			this.pool = pool;
+		}
+
+		private final SlabPool pool;
+		private Slice chain = null;
+		private int used = 0;
+	}
+
+	private final int sliceSize;
+	private final int slicesPerSlab;
+	private final int maxSlabs;
+	private Slab slabs = null;
+	private int slabCount = 0;
+	private int emptySlabs = 0; // Slabs with all of their Slices free
+	private int inUse = 0;
+	private int highWater = 0;
+	private int peak = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long returns = 0;
+	private long exhaustions = 0;
+}
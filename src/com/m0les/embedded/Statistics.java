@@ -0,0 +1,57 @@
+package com.m0les.embedded;
+
+/**
+ * A snapshot of the activity counters of a pool (or anything else that implements {@link Metered}). Callers
+ * allocate a Statistics instance once and have it refilled whenever they want a fresh snapshot, so taking
+ * snapshots produces no garbage.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class Statistics {
+	public long hits = 0; // Instances handed out that were recycled
+	public long misses = 0; // Instances handed out that were newly created by a factory
+	public long returns = 0; // Instances given back for recycling
+	public long exhaustions = 0; // Times a request was refused (or made to wait) because a limit was reached
+	public long criticalExhaustions = 0; // Times a critical-tier request was refused because the hard limit was reached
+	public long sealViolations = 0; // Instances newly created by a factory after the pool was sealed
+	public long softHits = 0; // Instances taken back from a soft overflow tier for reuse
+	public long softLost = 0; // Instances in a soft overflow tier that were reclaimed before they could be reused
+	public int free = 0; // Instances currently available for recycling
+	public int highWater = 0; // The most instances in use at once (or in existence, if in-use isn't tracked)
+	public int peak = 0; // The most instances in use at once since the last Metered.resetPeak() call
+	public int instances = 0; // Instances currently in existence (in use or free)
+	public int limit = 0; // The maximum number of instances that may exist (0 = unlimited)
+
+	/**
+	 * Present a human-readable representation of this snapshot.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "Statistics(hits=" + hits + ", misses=" + misses + ", returns=" + returns + ", exhaustions="
+				+ exhaustions + ", criticalExhaustions=" + criticalExhaustions + ", sealViolations=" + sealViolations
+				+ ", softHits=" + softHits + ", softLost=" + softLost + ", free=" + free + ", highWater=" + highWater
+				+ ", peak=" + peak + ", instances=" + instances + ", limit=" + limit + ")";
+	}
+}
@@ -1,5 +1,7 @@
 package com.m0les.embedded;
 
+import java.util.concurrent.TimeUnit;
+
 import com.m0les.embedded.Pool.PoolExhaustedException;
 
 /**
@@ -23,7 +25,12 @@ import com.m0les.embedded.Pool.PoolExhaustedException;
  * can hold.</p>
  * <p>The third constructor takes a Pool parameter of the same generic-type as this instance. This constructor
  * is for the complex cases where a common pool of data objects is used for many different trees. This is useful when data objects
- * are moved and copied between Trees.</p>
+ * are moved and copied between Trees. Where many threads share such a pool, a lock-free ConcurrentNodePool can be given instead.</p>
+ * <p>For keys wider than an int, use a {@link LongTree}.</p>
+ * <p>Emptying a large Tree with {@link #removeAll()} recycles every Node while holding the Tree's monitor. Where that pause
+ * would be too long, {@link #detachAll()} empties the Tree at once and {@link #recycleDetached(int)} (or
+ * {@link #recycleDetached(long, TimeUnit)}) then recycles the detached Nodes a bounded number (or for a bounded time) at a
+ * go.</p>
  * 
  * @author Miles Goodhew
  * @version $Id: Tree.java,v 1.16 2011-07-24 14:53:46 mgoodhew Exp $
@@ -49,14 +56,14 @@ import com.m0les.embedded.Pool.PoolExhaustedException;
  * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
  * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class Tree<V> implements Recycler {
+public class Tree<V> extends AbstractTree<Tree.Node<V>, Tree.Node<V>.NodeLink> {
 	/**
 	 * Create a new Tree with its own Node Pool that has no arbitrary size-limits.
 	 * The pool can grow indefinitely until environment-restrictions come into play
 	 * (memory size, etc.)
 	 */
 	public Tree() {
-		pool = new NodePool<V>();
+		super(new NodePool<V>());
 	}
 
 	/**
@@ -67,29 +74,24 @@ public class Tree<V> implements Recycler {
 	 *            The maximum number of Node instances this Tree can hold.
 	 */
 	public Tree(int poolSize) {
-		pool = new NodePool<V>( poolSize );
+		super(new NodePool<V>( poolSize ));
 	}
 
 	/**
-	 * Create a Tree with an externally-provided Pool of Nodes.
+	 * Create a Tree with an externally-provided Pool of Nodes. This is usually a
+	 * {@link NodePool} or {@link ConcurrentNodePool}, but any Allocator of
+	 * NodeLinks that ultimately draws from one of those will do.
 	 * 
 	 * @param pool The pool of Nodes to fill tree with (Must not be null).
 	 */
-	public Tree(NodePool<V> pool) throws NullPointerException {
-		if( null == pool ){
-			throw NULL_POOL;
-		}
-		this.pool = pool;
+	public Tree(Allocator<Node<V>.NodeLink> pool) throws NullPointerException {
+		super(pool);
 	}
 
 	/**
-	 * The complete Node-insertion operation, including all cases of the
-	 * procedure.
-	 * 
-	 * @note This method has a high McCabe cyclomatic complexity. This is a
-	 *       necessary downside to the "high efficiency" nature of this
-	 *       implementation. Using the fully monolithic implementation saves on
-	 *       the overhead of stack-frame management.
+	 * Insert a new key/value pair. The key comparisons are made here, and the
+	 * new Node is then linked in and the Tree rebalanced by
+	 * {@link AbstractTree#attach}.
 	 * 
 	 * @param key
 	 *            The key to refer to the new value by
@@ -100,234 +102,18 @@ public class Tree<V> implements Recycler {
 	 *             recyclable Node instances and the pool has been exhausted.
 	 */
 	public synchronized void insert(int key, V value) throws PoolExhaustedException {
-		Node<V> node = getNode(key, value);
-		if (null == head) {
-			// Case 1
-			node.parent = null;
-			node.prime = false;
-			head = node;
-		} else {
-			Node<V> parent = head;
-			while (true) {
-				if (parent.key > node.key) {
-					if (null == parent.lesser) {
-						node.parent = parent;
-						parent.lesser = node;
-						break;
-					} else {
-						parent = parent.lesser;
-					}
-				} else {
-					if (null == parent.greater) {
-						node.parent = parent;
-						parent.greater = node;
-						break;
-					} else {
-						parent = parent.greater;
-					}
-				}
-			}
-
-			// colouring
-			while (true) {
-				if (null == parent) {
-					node.prime = false;
-					return;
-				}
-				if (!parent.prime) // Case 2
-				{
-					return;
-				}
-
-				// Case 3
-				final Node<V> grandparent = parent.parent;
-				final Node<V> uncle;
-				if (grandparent.lesser == parent) {
-					uncle = grandparent.greater;
-				} else {
-					uncle = grandparent.lesser;
-				}
-				if (parent.prime && isPrime(uncle)) {
-					parent.prime = false;
-					uncle.prime = false;
-					grandparent.prime = true;
-					parent = grandparent.parent;
-					// NOTE: ( uncle != null ) == ( grandparent != null )
-					node = grandparent;
-				} else // Case 4
-				{
-					if (parent.greater == node && grandparent.lesser == parent) {
-						rotate(parent, DIR_LEFT);
-						node = parent;
-						parent = node.parent;
-					} else if (parent.lesser == node
-							&& grandparent.greater == parent) {
-						rotate(parent, DIR_RIGHT);
-						node = parent;
-						parent = node.parent;
-					}
-					// Case 5
-					if (parent == grandparent.lesser) {
-						rotate(grandparent, DIR_RIGHT);
-					} else {
-						rotate(grandparent, DIR_LEFT);
-					}
-					grandparent.prime = true; // grandparent cannot be null as
-										      // that would mean !parent.prime,
-											  // caught in case 2.
-					parent.prime = false;
-					return;
-				}
-			}
-		}
-	}
-
-	/**
-	 * The complete Node-removal operation, including all cases of the
-	 * procedure.
-	 * 
-	 * @note This method has a high McCabe cyclomatic complexity. This is a
-	 *       necessary downside to the "high efficiency" nature of this
-	 *       implementation. Using the fully monolithic implementation saves on
-	 *       the overhead of stack-frame management.
-	 * 
-	 * @param node
-	 *            The Node to remove from this Tree
-	 */
-	public synchronized void remove(Node<V> node) {
-		/* If the Node has two non-null children, then swap values with the
-		 * greatest element in its lesser-branch and remove that former
-		 * "greatest lesser" node (which must have < 2 non-null children).
-		 */
-		if (null != node.greater && null != node.lesser) {
-			Node<V> newNode = node.lesser.findGreatest();
-			node.key = newNode.key;
-			node.value = newNode.value;
-			node = newNode;
-		}
-		// Node now has 0 or 1 non-null children.
-		Node<V> parent = node.parent;
-		Node<V> child = null != node.lesser ? node.lesser : node.greater;
-		if (node == head) {
-			head = child;
-			if (null != head) {
-				head.parent = null;
-				head.prime = false;
+		final Node<V> node = getNode(key, value);
+		Node<V> parent = head;
+		boolean lesser = false;
+		while (null != parent) {
+			lesser = parent.key > key;
+			final Node<V> next = lesser ? parent.lesser : parent.greater;
+			if (null == next) {
+				break;
 			}
-			discard(node);
-			return;
-		}
-		if (parent.lesser == node) {
-			parent.lesser = child;
-		} else {
-			parent.greater = child;
+			parent = next;
 		}
-		if (null != child) {
-			child.parent = parent;
-		}
-		if (!node.prime) {
-			discard(node);
-			if (isPrime(child)) {
-				child.prime = false;
-			} else {
-				node = child;
-				// Delete case 1
-				while (null != parent) {
-					boolean left = parent.lesser == node;
-					// Delete case 2
-					Node<V> sibling;
-					if (left) {
-						sibling = parent.greater;
-					} else {
-						sibling = parent.lesser;
-					}
-					if (isPrime(sibling)) {
-						parent.prime = true;
-						sibling.prime = false;
-						if (left) {
-							rotate(parent, DIR_LEFT);
-							sibling = parent.greater;
-						} else {
-							rotate(parent, DIR_RIGHT);
-							sibling = parent.lesser;
-						}
-					}
-					// Delete case 3
-					if (!(isPrime(sibling.lesser) || isPrime(sibling.greater))) {
-						sibling.prime = true;
-						// Delete case 4
-						if (parent.prime) {
-							parent.prime = false;
-							return;
-						} else {
-							node = parent;
-							parent = node.parent;
-						}
-					} else {
-						// Delete case 5
-						if (left && isPrime(sibling.lesser)) {
-							sibling.prime = true;
-							sibling.lesser.prime = false;
-							rotate(sibling, DIR_RIGHT);
-							sibling = parent.greater;
-						} else if (!left && isPrime(sibling.greater)) {
-							sibling.prime = true;
-							sibling.greater.prime = false;
-							rotate(sibling, DIR_LEFT);
-							sibling = parent.lesser;
-						}
-						// Delete case 6
-						sibling.prime = parent.prime;
-						parent.prime = false;
-						if (left) {
-							if (sibling.greater != null) {
-								sibling.greater.prime = false;
-							}
-							rotate(parent, DIR_LEFT);
-						} else {
-							if (sibling.lesser != null) {
-								sibling.lesser.prime = false;
-							}
-							rotate(parent, DIR_RIGHT);
-						}
-						return;
-					}
-				}
-			}
-		}
-	}
-
-	/**
-	 * Get the first value (lowest key) in the Tree.
-	 * 
-	 * @return The lowest-keyed Node in this Tree
-	 */
-	public synchronized Node<V> getFirst() {
-		if (null == head) {
-			return null;
-		}
-		return head.findLeast();
-	}
-
-	/**
-	 * Get the last value (highest key) in the Tree.
-	 * 
-	 * @return The highest-keyed Node in this Tree
-	 */
-	public synchronized Node<V> getLast() {
-		if (null == head) {
-			return null;
-		}
-		return head.findGreatest();
-	}
-
-	/**
-	 * Remove every Node in this Tree and recycle them. After this call, the
-	 * tree shall be empty and ready to add new entries.
-	 */
-	public synchronized void removeAll() {
-		removeNodes(head);
-		head = null;
+		attach(node, parent, lesser);
 	}
 
 	/**
@@ -365,92 +151,27 @@ public class Tree<V> implements Recycler {
 		return "Tree{" + nodeString(head) + "}";
 	}
 
-	/**
-	 * Find the Node with the next-lowest key related to this Node.
-	 * 
-	 * @param node
-	 *            The Node to find the Node with the next lowest key for
-	 * @return The Node with the next lowest key below the nominated Node or
-	 *         null if there is no lower-keyed Node.
-	 */
-	public synchronized Node<V> getPrev(Node<V> node) {
-		Node<V> candidate = node.lesser;
-		if (null != candidate) {
-			return candidate.findGreatest();
-		}
-		while (null != (candidate = node.parent)) {
-			if (node == candidate.greater) {
-				return candidate;
-			}
-			node = candidate;
-		}
-		return null;
-	}
-
-	/**
-	 * Find the Node with the next-highest key related to this Node.
-	 * 
-	 * @param node
-	 *            The Node to find the Node with the next highest key for
-	 * @return The Node with the next highest key above the nominated Node or
-	 *         null if there is no higher-keyed Node.
-	 */
-	public synchronized Node<V> getNext(Node<V> node) {
-		Node<V> candidate = node.greater;
-		if (null != candidate) {
-			return candidate.findLeast();
-		}
-		while (null != (candidate = node.parent)) {
-			if (node == candidate.lesser) {
-				return candidate;
-			}
-			node = candidate;
-		}
-		return null;
-	}
-
-	/**
-	 * @see Recycler
-	 */
-	@Override
-	public void discardGarbage() {
-		pool.discardGarbage();
-	}
-
-	/**
-	 * @see Recycler
-	 */
-	@Override
-	public void discardGarbage(int maxRemaining) {
-		pool.discardGarbage(maxRemaining);
-	}
-	
 	/**
 	 * This is a node within a tree. Nodes have a key element so they can be
 	 * located and have a value element that they carry for the user of the
 	 * class. The key and value may be different instances and classes, but it's
 	 * quite possible and legal that they are the same instance,
 	 * 
-	 * @param <K>
-	 *            The key-class for node elements
 	 * @param <V>
 	 *            The value-class for node elements
 	 */
-	public static class Node<V> {
+	public static class Node<V> extends AbstractNode<Node<V>> {
 		private int key;
 		private V value;
-		private boolean prime; // => "RED"?
-		private Node<V> parent = null;
-		private Node<V> lesser = null;
-		private Node<V> greater = null;
 		private NodeLink link = new NodeLink();
 
 		/**
-		 * A Link to another node
+		 * A Link to another node. This is public only so that pools of Nodes
+		 * can be named as Allocators of NodeLinks.
 		 * 
 		 * @see Link
 		 */
-		private class NodeLink extends Link<NodeLink> {
+		public class NodeLink extends Link<NodeLink> {
 			/**
 			 * @see Link
 			 */
@@ -478,118 +199,21 @@ public class Tree<V> implements Recycler {
 		}
 
 		/**
-		 * Generate a human-readable representation of this Node instance.
-		 * 
-		 * @note This method composes Strings and thus generates garbage, use in
-		 *       embedded applications should be avoided generally, barring
-		 *       exceptional situations.
-		 * @see #contentString()
+		 * @see AbstractNode#copy(AbstractNode)
 		 */
 		@Override
-		public String toString() {
-			return "Node{" + contentString() + "}";
+		void copy(Node<V> from) {
+			key = from.key;
+			value = from.value;
 		}
 
 		/**
-		 * Helper method to pretty-format the key/prime/value components of a
-		 * Node
-		 * 
-		 * @note This method composes Strings and thus generates garbage, use in
-		 *       embedded applications should be avoided generally, barring
-		 *       exceptional situations.
-		 * 
-		 * @return The String representing the core properties of this Node
-		 * @see #toString()
+		 * @see AbstractNode#contentString()
 		 */
-		private String contentString() {
+		@Override
+		String contentString() {
 			return key + (prime ? "*" : "+") + value;
 		}
-
-		/**
-		 * Find the Node with the greatest key from this Node downward. Usually
-		 * this will be the last Node found when iterating down the greater
-		 * child branch or this Node if the branch is null.
-		 * 
-		 * @return The Node with the greatest key from this Node downward.
-		 */
-		private Node<V> findGreatest() {
-			Node<V> node = this;
-			Node<V> next = greater;
-			while (null != next) {
-				node = next;
-				next = node.greater;
-			}
-			return node;
-		}
-
-		/**
-		 * Find the Node with the lowest key from this Node downward. Usually
-		 * this will be the
-		 * 
-		 * @return The Node with the lowest key from this Node downward. last
-		 *         Node found when iterating down the lesser child branch or
-		 *         this Node if the branch is null.
-		 */
-		private Node<V> findLeast() {
-			Node<V> node = this;
-			Node<V> next = lesser;
-			while (null != next) {
-				node = next;
-				next = node.lesser;
-			}
-			return node;
-		}
-	}
-
-	/**
-	 * Perform a tree-rotation about a nominated node in a nominated direction.
-	 * 
-	 * @param node
-	 *            The Node about which to rotate.
-	 * @param left
-	 *            One of DIR_LEFT (For a rotate-left) or DIR_RIGHT (For a
-	 *            rotate-right).
-	 */
-	private void rotate(Node<V> node, boolean left) {
-		Node<V> parent = node.parent;
-		Node<V> newParent;
-		Node<V> newChild;
-		if (left) {
-			newParent = node.greater;
-			newChild = node.greater = newParent.lesser;
-			newParent.lesser = node;
-		} else // right
-		{
-			newParent = node.lesser;
-			newChild = node.lesser = newParent.greater;
-			newParent.greater = node;
-		}
-		node.parent = newParent;
-		newParent.parent = parent;
-		if (null != newChild) {
-			newChild.parent = node;
-		}
-		if (null == parent) {
-			head = newParent;
-		} else {
-			if (parent.lesser == node) {
-				parent.lesser = newParent;
-			} else {
-				parent.greater = newParent;
-			}
-		}
-	}
-
-	/**
-	 * A simple test to see if a Node is prime or not. Note that null parameters
-	 * are allowed and considered "non-prime"
-	 * 
-	 * @param node
-	 *            The Node to test for prime-status
-	 * @return True if node is not-null and prime, false otherwise
-	 */
-	private final boolean isPrime(Node<V> node) {
-		return null != node && node.prime;
 	}
 
 	/**
@@ -614,59 +238,13 @@ public class Tree<V> implements Recycler {
 	}
 
 	/**
-	 * Helper method to remove all nodes from the nominated Node downwards.
-	 * 
-	 * @param node
-	 *            The node to delete (along with all its children).
-	 * @see #discard(Node)
-	 * @see #removeAll()
+	 * @see AbstractTree#discard(AbstractNode)
 	 */
-	private void removeNodes(Node<V> node) {
-		if (null != node) {
-			removeNodes(node.lesser);
-			removeNodes(node.greater);
-			discard(node);
-		}
-	}
-
-	/**
-	 * Clear the contents of a Node (Especially Object references) and pool it
-	 * for reuse.
-	 * 
-	 * @param node
-	 *            The node to clear the data-members of.
-	 * @see #removeAll()
-	 * @see #removeNodes()
-	 */
-	private void discard(Node<V> node) {
-		node.value = null;
-		node.lesser = null;
-		node.greater = null;
-		node.parent = null;
+	@Override
+	void discard(Node<V> node) {
 		pool.returnInstance(node.link);
 	}
 
-	/**
-	 * Helper method to pretty-format the structure and nodes of a Tree
-	 * 
-	 * @note This method composes Strings and thus generates garbage, use in
-	 *       embedded applications should be avoided generally, barring
-	 *       exceptional situations.
-	 * 
-	 * @return The String representing the core values of this Tree
-	 * @see #toString()
-	 */
-	private String nodeString(Node<V> node) {
-		if (null == node) {
-			return ".";
-		}
-		String result = "{";
-		result += nodeString(node.lesser);
-		result += "|" + node.contentString() + "|";
-		result += nodeString(node.greater);
-		return result + "}";
-	}
-
 	/**
 	 * A Pool of Nodes for Trees to use. Nodes are instantiated and presented as their inner
 	 * NodeLink members, so that the Pool can manage them.
@@ -684,22 +262,48 @@ public class Tree<V> implements Recycler {
 		public NodePool(int poolSize) {
 			super(new NodeFactory<V>(), poolSize);
 		}
+	}
 
-		private static class NodeFactory<V> implements Factory<Node<V>.NodeLink> {
-			/**
-			 * @see Factory
-			 */
-			@Override
-			public Node<V>.NodeLink newInstance() {
-				return new Node<V>().link;
-			}
+	/**
+	 * A lock-free Pool of Nodes for Trees that are shared between, or churned by, many threads.
+	 * 
+	 * @see ConcurrentPool
+	 * @see NodePool
+	 */
+	public static class ConcurrentNodePool<V> extends ConcurrentPool<Node<V>.NodeLink>
+	{
+		public ConcurrentNodePool() {
+			super(new NodeFactory<V>());
+		}
+
+		public ConcurrentNodePool(int poolSize) {
+			super(new NodeFactory<V>(), poolSize);
+		}
+	}
+
+	/**
+	 * Instantiates Nodes for the Node pools, presenting them as their inner NodeLink members, and clears the
+	 * contents of Nodes as they're returned.
+	 */
+	private static class NodeFactory<V> extends ManagedFactory<Node<V>.NodeLink> {
+		/**
+		 * @see Factory
+		 */
+		@Override
+		public Node<V>.NodeLink newInstance() {
+			return new Node<V>().link;
+		}
+
+		/**
+		 * @see ManagedFactory#reset(Object)
+		 */
+		@Override
+		public void reset(Node<V>.NodeLink link) {
+			final Node<V> node = link.getNode();
+			node.value = null;
+			node.lesser = null;
+			node.greater = null;
+			node.parent = null;
 		}
 	}
-	
-	private static final boolean DIR_LEFT = true;
-	private static final boolean DIR_RIGHT = !DIR_LEFT;
-	private static final NullPointerException NULL_POOL = new NullPointerException( "Null pool argument" );
-	
-	private Node<V> head = null;
-	private final NodePool<V> pool;
 }
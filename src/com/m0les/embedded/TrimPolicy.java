@@ -0,0 +1,168 @@
+package com.m0les.embedded;
+
+/**
+ * <p>
+ * Adaptive trimming for a {@link Recycler}, so that the number of idle instances it keeps follows the real working
+ * set instead of a hand-picked floor. Demand is measured as the peak number of instances in use during a window and
+ * smoothed with an exponentially-weighted moving average (EWMA) across windows. At the end of each window (a call to
+ * {@link #tick()}) the Recycler is trimmed with {@link Recycler#discardGarbage(int)} so that the instances in use plus
+ * the free instances left over cover the learned demand plus some headroom.
+ * </p>
+ * <p>
+ * Where the Recycler is also {@link Metered} (e.g. any {@link Allocator} or a {@link Tree}) the in-use counts are
+ * read from its {@link Statistics}. Any other Recycler can still be managed by reporting its in-use count through
+ * {@link #observe(int)} as often as is convenient.
+ * </p>
+ * 
+ * <p>Typical usage (with something calling tick() every few seconds):</p>
+ * <pre>
+ *   TrimPolicy policy = new TrimPolicy( tree, tree, 0.25, 0.5 );
+ *   ...
+ *   policy.tick();
+ * </pre>
+ * 
+ * @note A single short burst only moves the estimate by the weight given, so the floor shrinks and grows over
+ *       several windows rather than following every spike.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TrimPolicy {
+	/**
+	 * Create a policy for a pool with a default weight of 0.25 and headroom of 0.25.
+	 * 
+	 * @param pool
+	 *            The pool to trim (and measure)
+	 */
+	public TrimPolicy(Allocator<?> pool) {
+		this(pool, pool, DEFAULT_WEIGHT, DEFAULT_HEADROOM);
+	}
+
+	/**
+	 * Create a policy.
+	 * 
+	 * @param target
+	 *            The Recycler to trim
+	 * @param meter
+	 *            Where to read the target's in-use counts from, or null if they will be reported through
+	 *            {@link #observe(int)} instead.
+	 * @param weight
+	 *            The weight (0 &lt; weight &lt;= 1) given to each new window's peak in the moving average. Higher
+	 *            weights follow demand more quickly.
+	 * @param headroom
+	 *            The fraction of the estimated demand to keep available on top of it (e.g. 0.5 keeps enough
+	 *            instances for 150% of the estimate).
+	 * @throws IllegalArgumentException
+	 *             If the weight or headroom are out of range.
+	 */
+	public TrimPolicy(Recycler target, Metered meter, double weight, double headroom) throws IllegalArgumentException {
+		if (!(0 < weight && 1 >= weight) || !(0 <= headroom)) {
+			throw new IllegalArgumentException("weight must be in (0, 1] and headroom must not be negative");
+		}
+		this.target = target;
+		this.meter = meter;
+		this.weight = weight;
+		this.headroom = headroom;
+	}
+
+	/**
+	 * Report the number of instances currently in use. This is only needed for Recyclers that aren't Metered, but can
+	 * also be used to report demand that the meter didn't see.
+	 * 
+	 * @param inUse
+	 *            The number of instances in use right now
+	 */
+	public synchronized void observe(int inUse) {
+		current = inUse;
+		if (windowPeak < inUse) {
+			windowPeak = inUse;
+		}
+	}
+
+	/**
+	 * End the current window: fold its peak demand into the estimate and trim the target down to the new floor.
+	 * 
+	 * @return The maximum number of free instances that were left in the target
+	 */
+	public synchronized int tick() {
+		int free = Integer.MAX_VALUE;
+		if (null != meter) {
+			meter.getStatistics(snapshot);
+			free = snapshot.free;
+			observe(snapshot.peak);
+			observe(Math.max(0, snapshot.instances - snapshot.free));
+		}
+		estimate = primed ? estimate + weight * (windowPeak - estimate) : windowPeak;
+		primed = true;
+		floor = Math.max(0, (int) Math.ceil(estimate * (1 + headroom)) - current);
+		if (floor < free) {
+			target.discardGarbage(floor);
+		}
+		if (null != meter) {
+			meter.resetPeak();
+		}
+		windowPeak = current;
+		return floor;
+	}
+
+	/**
+	 * Get the current (smoothed) estimate of the target's demand.
+	 * 
+	 * @return The estimated peak number of instances in use per window
+	 */
+	public synchronized double getEstimate() {
+		return estimate;
+	}
+
+	/**
+	 * Get the number of free instances the last {@link #tick()} left in the target (at most).
+	 * 
+	 * @return The most recent floor
+	 */
+	public synchronized int getFloor() {
+		return floor;
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public String toString() {
+		return "TrimPolicy(" + getEstimate() + ", " + getFloor() + ")";
+	}
+
+	private static final double DEFAULT_WEIGHT = 0.25;
+	private static final double DEFAULT_HEADROOM = 0.25;
+
+	private final Recycler target;
+	private final Metered meter;
+	private final double weight;
+	private final double headroom;
+	private final Statistics snapshot = new Statistics();
+	private boolean primed = false;
+	private double estimate = 0;
+	private int floor = 0;
+	private int current = 0;
+	private int windowPeak = 0;
+}
@@ -0,0 +1,229 @@
+package com.m0les.embedded;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * <p>
+ * A record of how many instances each of a set of named pools needed last time, used to {@link Pool#prefill(int)
+ * prefill} them when the program next starts. Without one, a freshly-started program's pools fill up one factory call
+ * at a time on the hot path, so the first minutes of traffic see bursts of allocation (and garbage-collection). With
+ * one, the allocation is all done up front, during startup.
+ * </p>
+ * <p>
+ * Pools are registered by name. {@link #capture()} records each pool's in-use high-water mark, which
+ * {@link #store(File)} then saves as a small properties file. On the next start, {@link #load(File)} reads the file
+ * back and {@link #warm()} prefills each registered pool to its recorded mark (plus some headroom). Each pool's
+ * instances are created in one uninterrupted run, so they tend to be laid out together in memory.
+ * </p>
+ * 
+ * <p>Typical usage:</p>
+ * <pre>
+ *   WarmupProfile profile = new WarmupProfile( 0.1 );
+ *   profile.register( "orders", orderPool );
+ *   profile.register( "orderNodes", orderNodePool );
+ *   profile.load( PROFILE_FILE );
+ *   profile.warm();
+ *   ...
+ *   profile.capture();            // at shutdown, or every so often
+ *   profile.store( PROFILE_FILE );
+ * </pre>
+ * 
+ * @note This class is meant for startup and shutdown, so it isn't careful about producing garbage.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class WarmupProfile {
+	/**
+	 * Create a profile that prefills pools to exactly their recorded marks.
+	 */
+	public WarmupProfile() {
+		this(0);
+	}
+
+	/**
+	 * Create a profile.
+	 * 
+	 * @param headroom
+	 *            The proportion to add to each recorded mark when prefilling (e.g. 0.1 for 10% more)
+	 * @throws IllegalArgumentException
+	 *             If the headroom is negative.
+	 */
+	public WarmupProfile(double headroom) throws IllegalArgumentException {
+		if (!(0 <= headroom)) {
+			throw new IllegalArgumentException("Invalid headroom");
+		}
+		this.headroom = headroom;
+	}
+
+	/**
+	 * Add a pool to the profile.
+	 * 
+	 * @param name
+	 *            The name the pool's mark is recorded under (which must stay the same from one run to the next)
+	 * @param pool
+	 *            The pool to capture and warm
+	 */
+	public synchronized void register(String name, Pool<?> pool) {
+		pools.put(name, pool);
+	}
+
+	/**
+	 * Record the in-use high-water mark of every registered pool. A pool that hasn't been used at all keeps its
+	 * previously recorded mark.
+	 */
+	public synchronized void capture() {
+		final Statistics stats = new Statistics();
+		for (Map.Entry<String, Pool<?>> entry : pools.entrySet()) {
+			entry.getValue().getStatistics(stats);
+			if (0 < stats.highWater) {
+				marks.setProperty(entry.getKey(), Integer.toString(stats.highWater));
+			}
+		}
+	}
+
+	/**
+	 * Prefill every registered pool that has a recorded mark.
+	 * 
+	 * @return The total number of instances created
+	 */
+	public synchronized int warm() {
+		int created = 0;
+		for (Map.Entry<String, Pool<?>> entry : pools.entrySet()) {
+			final int mark = getMark(entry.getKey());
+			final Pool<?> pool = entry.getValue();
+			if (0 < mark && !pool.isSealed()) {
+				created += pool.prefill((int) Math.ceil(mark * (1 + headroom)));
+			}
+		}
+		return created;
+	}
+
+	/**
+	 * Get the mark recorded for a pool.
+	 * 
+	 * @param name
+	 *            The name of the pool
+	 * @return The number of instances the pool needed, or 0 if nothing is recorded (or the record is unreadable).
+	 */
+	public synchronized int getMark(String name) {
+		final String mark = marks.getProperty(name);
+		if (null == mark) {
+			return 0;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(mark.trim()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Read recorded marks from a profile file, if there is one. Marks already held are replaced by any in the file.
+	 * 
+	 * @param file
+	 *            The profile file
+	 * @return True if the file was read, false if it doesn't exist.
+	 * @throws IOException
+	 *             If the file exists but can't be read.
+	 */
+	public boolean load(File file) throws IOException {
+		if (!file.isFile()) {
+			return false;
+		}
+		final InputStream in = new FileInputStream(file);
+		try {
+			load(in);
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Read recorded marks in properties format.
+	 * 
+	 * @param in
+	 *            The stream to read from (which is left open)
+	 * @throws IOException
+	 *             If the stream can't be read.
+	 */
+	public synchronized void load(InputStream in) throws IOException {
+		marks.load(in);
+	}
+
+	/**
+	 * Save the recorded marks to a profile file. The file is written alongside and then renamed into place, so a
+	 * crash part-way through doesn't leave a truncated profile behind.
+	 * 
+	 * @param file
+	 *            The profile file
+	 * @throws IOException
+	 *             If the file can't be written.
+	 */
+	public void store(File file) throws IOException {
+		final File temporary = new File(file.getPath() + ".tmp");
+		final OutputStream out = new FileOutputStream(temporary);
+		try {
+			store(out);
+		} finally {
+			out.close();
+		}
+		if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+			throw new IOException("Unable to replace " + file);
+		}
+	}
+
+	/**
+	 * Write the recorded marks in properties format.
+	 * 
+	 * @param out
+	 *            The stream to write to (which is left open)
+	 * @throws IOException
+	 *             If the stream can't be written.
+	 */
+	public synchronized void store(OutputStream out) throws IOException {
+		marks.store(out, "Pool warm-up profile");
+	}
+
+	/**
+	 * Present a human-readable representation of this instance.
+	 * 
+	 * @note This composes strings, which produces garbage.
+	 */
+	@Override
+	public synchronized String toString() {
+		return "WarmupProfile(" + pools.size() + " pools, " + marks.size() + " marks)";
+	}
+
+	private final double headroom;
+	private final Map<String, Pool<?>> pools = new LinkedHashMap<String, Pool<?>>();
+	private final Properties marks = new Properties();
+}
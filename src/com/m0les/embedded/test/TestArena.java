@@ -0,0 +1,136 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.m0les.embedded.Arena;
+import com.m0les.embedded.ConcurrentPool;
+import com.m0les.embedded.Factory;
+import com.m0les.embedded.Link;
+import com.m0les.embedded.Pool;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+import com.m0les.embedded.Statistics;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.Arena class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestArena {
+
+	/**
+	 * Test that closing an Arena gives every instance back to the right pool.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testClose() throws Exception {
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory());
+		ConcurrentPool<DummyLink> other = new ConcurrentPool<DummyLink>(new DummyLinkFactory());
+		Arena arena = new Arena();
+		try {
+			for (int i = 0; i < 5; i++) {
+				arena.get(pool);
+			}
+			for (int i = 0; i < 3; i++) {
+				assertNotSame(arena.get(other), arena.get(other));
+			}
+			assertEquals(11, arena.size());
+		} finally {
+			arena.close();
+		}
+		assertEquals(0, arena.size());
+		Statistics stats = new Statistics();
+		pool.getStatistics(stats);
+		assertEquals(5, stats.returns);
+		assertEquals(5, stats.free);
+		other.getStatistics(stats);
+		assertEquals(6, stats.returns);
+		assertEquals(6, stats.free);
+		arena.close();
+		other.getStatistics(stats);
+		assertEquals(6, stats.returns);
+	}
+
+	/**
+	 * Test that an Arena can be reused and that its instances are recycled.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testReuse() throws Exception {
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory());
+		Arena arena = new Arena();
+		DummyLink first = arena.get(pool);
+		arena.close();
+		assertSame(first, arena.get(pool));
+		assertEquals(1, arena.size());
+		arena.close();
+		assertEquals(1, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test that instances borrowed before a pool is exhausted are still returned.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testExhaustion() throws Exception {
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory(), 2);
+		Arena arena = new Arena();
+		arena.get(pool);
+		arena.get(pool);
+		try {
+			arena.get(pool);
+			fail("Exceeded the pool limit");
+		} catch (PoolExhaustedException e) {
+			// Expected
+		}
+		assertEquals(2, arena.size());
+		arena.close();
+		Statistics stats = new Statistics();
+		pool.getStatistics(stats);
+		assertEquals(2, stats.free);
+		assertEquals(1, stats.exhaustions);
+	}
+
+	/**
+	 * Dummy implementation of the Factory<C> interface used for unit-tests.
+	 */
+	private static class DummyLinkFactory implements Factory<DummyLink> {
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+	}
+
+	/**
+	 * Dummy implementation of the Link<C> abstract class used for unit-tests.
+	 */
+	private static class DummyLink extends Link<DummyLink> {
+	}
+}
@@ -0,0 +1,187 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.m0les.embedded.ArrayTree;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+import com.m0les.embedded.Statistics;
+
+/**
+ * Test and cover the behaviour of the ArrayTree class.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestArrayTree
+{
+	@Test
+	public void testNavigation() throws Exception
+	{
+		ArrayTree<String> tree = new ArrayTree<String>();
+		assertEquals( ArrayTree.NIL, tree.getFirst() );
+		for( int i = 8; i >= 1; i-- )
+		{
+			tree.insert( i, "Value" + i );
+			verifyRules( tree );
+		}
+		int cursor = tree.getFirst();
+		for( int i = 1; i <= 8; i++ )
+		{
+			assertEquals( i, tree.getKey( cursor ) );
+			assertEquals( "Value" + i, tree.getValue( cursor ) );
+			cursor = tree.getNext( cursor );
+		}
+		assertEquals( ArrayTree.NIL, cursor );
+		assertEquals( 7, tree.getKey( tree.getPrev( tree.getLast() ) ) );
+		assertEquals( ArrayTree.NIL, tree.find( 9 ) );
+		tree.setValue( tree.find( 3 ), "Three" );
+		assertEquals( "Three", tree.getValue( tree.find( 3 ) ) );
+	}
+
+	/**
+	 * Test a long run of random inserts and removes against a TreeMap, checking the red-black rules as it goes.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRandom() throws Exception
+	{
+		ArrayTree<Integer> tree = new ArrayTree<Integer>();
+		TreeMap<Integer, Integer> reference = new TreeMap<Integer, Integer>();
+		Random random = new Random( 1234 );
+		for( int i = 0; i < 5000; i++ )
+		{
+			int key = random.nextInt( 500 );
+			int cursor = tree.find( key );
+			if( ArrayTree.NIL == cursor )
+			{
+				tree.insert( key, Integer.valueOf( i ) );
+				reference.put( key, i );
+			}
+			else
+			{
+				tree.remove( cursor );
+				reference.remove( key );
+			}
+			if( 0 == i % 100 )
+			{
+				verifyRules( tree );
+			}
+		}
+		verifyRules( tree );
+		assertEquals( reference.size(), tree.size() );
+		int cursor = tree.getFirst();
+		for( Map.Entry<Integer, Integer> entry : reference.entrySet() )
+		{
+			assertEquals( entry.getKey().intValue(), tree.getKey( cursor ) );
+			assertEquals( entry.getValue(), tree.getValue( cursor ) );
+			cursor = tree.getNext( cursor );
+		}
+		assertEquals( ArrayTree.NIL, cursor );
+		Statistics stats = new Statistics();
+		tree.getStatistics( stats );
+		assertEquals( stats.highWater, stats.instances );
+		assertEquals( stats.instances - tree.size(), stats.free );
+	}
+
+	@Test
+	public void testSlotReuse() throws Exception
+	{
+		ArrayTree<String> tree = new ArrayTree<String>( 4 );
+		for( int round = 0; round < 3; round++ )
+		{
+			for( int i = 0; i < 4; i++ )
+			{
+				tree.insert( i, "Value" + i );
+			}
+			while( ArrayTree.NIL != tree.getFirst() )
+			{
+				tree.remove( tree.getFirst() );
+			}
+		}
+		tree.insert( 1, "One" );
+		tree.removeAll();
+		assertEquals( 0, tree.size() );
+		Statistics stats = new Statistics();
+		tree.getStatistics( stats );
+		assertEquals( 4, stats.misses );
+		assertEquals( 9, stats.hits );
+		assertEquals( 4, stats.limit );
+	}
+
+	@Test(expected=PoolExhaustedException.class)
+	public void testLimitedPool() throws PoolExhaustedException
+	{
+		ArrayTree<String> tree = new ArrayTree<String>( 2 );
+		tree.insert( 1, "One" );
+		tree.insert( 2, "Two" );
+		tree.insert( 3, "Three" );
+	}
+
+	private void verifyRules( ArrayTree<?> tree ) throws Exception
+	{
+		int head = ((Integer) field( "head" ).get( tree )).intValue();
+		boolean[] primes = (boolean[]) field( "primes" ).get( tree );
+		int[] lessers = (int[]) field( "lessers" ).get( tree );
+		int[] greaters = (int[]) field( "greaters" ).get( tree );
+		int[] parents = (int[]) field( "parents" ).get( tree );
+		assertTrue( ArrayTree.NIL == head || ! primes[head] );
+		checkDepth( head, primes, lessers, greaters, parents );
+	}
+
+	/**
+	 * Check the prime-children rule and parent links from a subtree down, returning its non-prime depth.
+	 */
+	private int checkDepth( int node, boolean[] primes, int[] lessers, int[] greaters, int[] parents )
+	{
+		if( ArrayTree.NIL == node )
+		{
+			return 1;
+		}
+		int lesser = lessers[node];
+		int greater = greaters[node];
+		if( primes[node] )
+		{
+			assertTrue( ArrayTree.NIL == lesser || ! primes[lesser] );
+			assertTrue( ArrayTree.NIL == greater || ! primes[greater] );
+		}
+		assertTrue( ArrayTree.NIL == lesser || node == parents[lesser] );
+		assertTrue( ArrayTree.NIL == greater || node == parents[greater] );
+		int depth = checkDepth( lesser, primes, lessers, greaters, parents );
+		assertEquals( depth, checkDepth( greater, primes, lessers, greaters, parents ) );
+		return depth + (primes[node] ? 0 : 1);
+	}
+
+	private static Field field( String name ) throws Exception
+	{
+		Field field = ArrayTree.class.getDeclaredField( name );
+		field.setAccessible( true );
+		return field;
+	}
+}
@@ -0,0 +1,225 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.m0les.embedded.ChildPool;
+import com.m0les.embedded.Factory;
+import com.m0les.embedded.Link;
+import com.m0les.embedded.ManagedFactory;
+import com.m0les.embedded.Pool;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+import com.m0les.embedded.Statistics;
+import com.m0les.embedded.Tree;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.ChildPool class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestChildPool {
+
+	/**
+	 * Test that a child refills from and spills to its parent a batch at a time.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testBatches() throws Exception {
+		Pool<DummyLink> parent = new Pool<DummyLink>(new DummyLinkFactory());
+		ChildPool<DummyLink> child = new ChildPool<DummyLink>(parent, 4);
+		DummyLink[] links = new DummyLink[8];
+		for (int i = 0; i < 8; i++) {
+			links[i] = child.getInstance();
+		}
+		Statistics stats = new Statistics();
+		parent.getStatistics(stats);
+		assertEquals(8, stats.misses);
+		assertEquals(8, child.getInstanceCount());
+		for (int i = 0; i < 8; i++) {
+			child.returnInstance(links[i]);
+		}
+		parent.getStatistics(stats);
+		assertEquals(4, stats.returns);
+		assertEquals(4, stats.free);
+		child.getStatistics(stats);
+		assertEquals(4, stats.free);
+		assertEquals(8, stats.misses);
+		assertEquals(8, stats.highWater);
+		assertSame(links[7], child.getInstance());
+		child.returnInstance(links[7]);
+		child.discardGarbage(1);
+		parent.getStatistics(stats);
+		assertEquals(7, stats.free);
+		child.discardGarbage();
+		assertEquals(0, child.getInstanceCount());
+		assertEquals(8, parent.getInstanceCount());
+	}
+
+	/**
+	 * Test the quota and a limited parent.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testQuota() throws Exception {
+		Pool<DummyLink> parent = new Pool<DummyLink>(new DummyLinkFactory(), 5);
+		ChildPool<DummyLink> first = new ChildPool<DummyLink>(parent, 2, 3);
+		ChildPool<DummyLink> second = new ChildPool<DummyLink>(parent, 2);
+		DummyLink chain = first.getChain(5);
+		assertEquals(3, parent.getInstanceCount());
+		assertNull(chain.next.next.next);
+		try {
+			first.getInstance();
+			fail("Exceeded the quota");
+		} catch (PoolExhaustedException e) {
+			// Expected
+		}
+		second.getInstance();
+		second.getInstance();
+		try {
+			second.getInstance();
+			fail("Exceeded the parent's limit");
+		} catch (PoolExhaustedException e) {
+			// Expected
+		}
+		first.returnInstance(chain);
+		assertSame(chain, first.getInstance());
+		Statistics stats = new Statistics();
+		first.getStatistics(stats);
+		assertEquals(2, stats.exhaustions);
+		assertEquals(3, stats.limit);
+	}
+
+	/**
+	 * Test that Trees can share a parent through their own children.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testTrees() throws Exception {
+		Tree.NodePool<String> shared = new Tree.NodePool<String>(8);
+		Tree<String> left = new Tree<String>(new ChildPool<Tree.Node<String>.NodeLink>(shared, 2));
+		Tree<String> right = new Tree<String>(new ChildPool<Tree.Node<String>.NodeLink>(shared, 2));
+		for (int i = 0; i < 3; i++) {
+			left.insert(i, "Left");
+			right.insert(i, "Right");
+		}
+		assertEquals("Right", right.find(2).getValue());
+		left.insert(3, "Left");
+		try {
+			left.insert(4, "Too many");
+			fail("Exceeded the shared limit");
+		} catch (PoolExhaustedException e) {
+			// Expected
+		}
+		right.removeAll();
+		right.discardGarbage();
+		left.insert(4, "Left");
+		assertEquals("Left", left.find(3).getValue());
+	}
+
+	/**
+	 * Test that a ManagedFactory's hooks are applied once per use to instances recycled through a child, and that an
+	 * instance found unfit stops counting against the child and its parent.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testManagedHooks() throws Exception {
+		for (boolean deferReset : new boolean[] { false, true }) {
+			Pool<DummyLink> parent = new Pool<DummyLink>(new CheckingFactory(deferReset), 4);
+			ChildPool<DummyLink> child = new ChildPool<DummyLink>(parent, 1, 4);
+			DummyLink chain = child.getChain(4);
+			child.returnChain(chain);
+			chain = child.getChain(4);
+			int[] resets = new int[4];
+			int i = 0;
+			for (DummyLink link = chain; null != link; link = link.next) {
+				resets[i++] = link.resets;
+			}
+			child.returnChain(chain);
+			chain = child.getChain(4);
+			i = 0;
+			for (DummyLink link = chain; null != link; link = link.next) {
+				assertEquals(resets[i++] + 1, link.resets);
+			}
+			chain.broken = true;
+			child.returnChain(chain);
+			DummyLink[] links = new DummyLink[4];
+			for (i = 0; i < 4; i++) {
+				links[i] = child.getInstance();
+				assertNotSame(chain, links[i]);
+			}
+			assertEquals(4, parent.getInstanceCount());
+			assertEquals(4, child.getInstanceCount());
+		}
+	}
+
+	/**
+	 * A ManagedFactory that counts resets and refuses broken instances.
+	 */
+	private static class CheckingFactory extends ManagedFactory<DummyLink> {
+		CheckingFactory(boolean deferReset) {
+			super(deferReset);
+		}
+
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+
+		@Override
+		public void reset(DummyLink instance) {
+			instance.resets++;
+		}
+
+		@Override
+		public boolean validate(DummyLink instance) {
+			return !instance.broken;
+		}
+	}
+
+	/**
+	 * Dummy implementation of the Factory<C> interface used for unit-tests.
+	 */
+	private static class DummyLinkFactory implements Factory<DummyLink> {
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+	}
+
+	/**
+	 * Dummy implementation of the Link<C> abstract class used for unit-tests.
+	 */
+	private static class DummyLink extends Link<DummyLink> {
+		private int resets = 0;
+		private boolean broken = false;
+	}
+}
@@ -0,0 +1,209 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.m0les.embedded.ConcurrentPool;
+import com.m0les.embedded.Factory;
+import com.m0les.embedded.Link;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.ConcurrentPool class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestConcurrentPool {
+
+	/**
+	 * Test instantiating-from and exhausting a limited-size resource pool
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testInstantiation() throws Exception {
+		final int LOOP_COUNT = 5;
+		ConcurrentPool<DummyLink> pool = new ConcurrentPool<DummyLink>(new DummyLinkFactory(), LOOP_COUNT);
+		assertEquals(0, pool.getInstanceCount());
+		for (int i = 0; i < LOOP_COUNT; i++) {
+			assertNotNull(pool.getInstance());
+		}
+		try {
+			pool.getInstance();
+			fail("Empty pool did not throw PoolExhaustedException on getInstance()");
+		} catch (PoolExhaustedException e) {
+			// Intended outcome
+		}
+		assertEquals(LOOP_COUNT, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test that a returned instance is handed out again before any new one is made
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testReuse() throws Exception {
+		ConcurrentPool<DummyLink> pool = new ConcurrentPool<DummyLink>(new DummyLinkFactory(), 1);
+		DummyLink instance = pool.getInstance();
+		pool.returnInstance(instance);
+		assertSame(instance, pool.getInstance());
+		assertEquals(1, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test the toString() representation
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testToString() throws Exception {
+		ConcurrentPool<DummyLink> pool = new ConcurrentPool<DummyLink>(new DummyLinkFactory());
+		assertNotNull(pool.getInstance());
+		assertEquals("ConcurrentPool(1)", pool.toString());
+	}
+
+	/**
+	 * Test that both discardGarbage() methods leave the expected number of instances, covering all cases.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDiscard() throws Exception {
+		ConcurrentPool<DummyLink> pool = new ConcurrentPool<DummyLink>(new DummyLinkFactory());
+		pool.discardGarbage();
+		pool.discardGarbage(1);
+		assertEquals(0, pool.getInstanceCount());
+		DummyLink link1 = pool.getInstance();
+		DummyLink link2 = pool.getInstance();
+		DummyLink link3 = pool.getInstance();
+		pool.discardGarbage();
+		assertEquals(3, pool.getInstanceCount());
+		pool.returnInstance(link1);
+		pool.returnInstance(link2);
+		pool.returnInstance(link3);
+		pool.discardGarbage(3);
+		assertEquals(3, pool.getInstanceCount());
+		pool.discardGarbage(2);
+		assertEquals(2, pool.getInstanceCount());
+		assertSame(link3, pool.getInstance());
+		assertSame(link2, pool.getInstance());
+		pool.returnInstance(link2);
+		pool.returnInstance(link3);
+		pool.discardGarbage(-1);
+		assertEquals(0, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test getting and returning instances in batches and chains, including a batch that only partially fits a
+	 * limited pool.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBatch() throws Exception {
+		final int LIMIT = 5;
+		ConcurrentPool<DummyLink> pool = new ConcurrentPool<DummyLink>(new DummyLinkFactory(), LIMIT);
+		DummyLink[] links = new DummyLink[LIMIT + 1];
+		assertEquals(3, pool.getInstances(links, 3));
+		pool.returnInstances(links, 2);
+		assertNull(links[0]);
+		assertEquals(LIMIT - 1, pool.getInstances(links, LIMIT + 1));
+		assertEquals(LIMIT, pool.getInstanceCount());
+		assertNull(pool.getChain(1));
+		pool.returnInstances(links, LIMIT - 1);
+		DummyLink head = pool.getChain(2);
+		assertNotNull(head.next);
+		assertNull(head.next.next);
+		pool.returnChain(head);
+		pool.discardGarbage(1);
+		assertEquals(2, pool.getInstanceCount());
+	}
+
+	/**
+	 * Hammer a limited pool from several threads at once and check that no instance is ever handed to two
+	 * borrowers at the same time and that the limit is never breached.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testContention() throws Exception {
+		final int THREADS = 4;
+		final int LIMIT = 8;
+		final int LOOP_COUNT = 20000;
+		final ConcurrentPool<DummyLink> pool = new ConcurrentPool<DummyLink>(new DummyLinkFactory(), LIMIT);
+		final AtomicInteger errors = new AtomicInteger();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < LOOP_COUNT; i++) {
+						try {
+							DummyLink link = pool.getInstance();
+							if (!link.owned.compareAndSet(false, true)) {
+								errors.incrementAndGet();
+							}
+							link.owned.set(false);
+							pool.returnInstance(link);
+						} catch (PoolExhaustedException e) {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, errors.get());
+		assertTrue(pool.getInstanceCount() <= LIMIT);
+	}
+
+	/**
+	 * Factory for a ConcurrentPool<DummyLink> to use to instantiate new DummyLink instances
+	 */
+	private static class DummyLinkFactory implements Factory<DummyLink> {
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+	}
+
+	/**
+	 * Dummy implementation of the Link<C> abstract class used for unit-tests.
+	 */
+	private static class DummyLink extends Link<DummyLink> {
+		final AtomicBoolean owned = new AtomicBoolean();
+	}
+}
@@ -0,0 +1,73 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.m0les.embedded.IntDoubleTree;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * Test and cover the behaviour of the IntDoubleTree class.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestIntDoubleTree
+{
+	@Test
+	public void testAdd() throws Exception
+	{
+		IntDoubleTree tree = new IntDoubleTree();
+		assertEquals( 0.5, tree.add( 2, 0.5 ), 0.0 );
+		assertEquals( 0.75, tree.add( 2, 0.25 ), 0.0 );
+		assertEquals( 0.75, tree.find( 2 ).getValue(), 0.0 );
+		assertEquals( 0.0, tree.get( 3, 0.0 ), 0.0 );
+		tree.insert( 1, 0.25 );
+		tree.find( 1 ).setValue( 0.5 );
+		assertEquals( 0.5, tree.get( 1, 0.0 ), 0.0 );
+		assertEquals( 1, tree.getFirst().getKey() );
+		assertEquals( 2, tree.getNext( tree.getFirst() ).getKey() );
+	}
+
+	@Test
+	public void testRecycledValue() throws Exception
+	{
+		IntDoubleTree.NodePool pool = new IntDoubleTree.NodePool();
+		IntDoubleTree tree = new IntDoubleTree( pool );
+		tree.insert( 1, 0.5 );
+		tree.remove( tree.find( 1 ) );
+		assertNull( tree.find( 1 ) );
+		assertEquals( 0.25, tree.add( 1, 0.25 ), 0.0 );
+		assertEquals( 1, pool.getInstanceCount() );
+	}
+
+	@Test(expected=PoolExhaustedException.class)
+	public void testLimitedPool() throws PoolExhaustedException
+	{
+		IntDoubleTree tree = new IntDoubleTree( 1 );
+		tree.add( 1, 0.5 );
+		tree.add( 1, 0.5 );
+		tree.add( 2, 0.5 );
+	}
+}
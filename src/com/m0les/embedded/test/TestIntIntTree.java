@@ -0,0 +1,180 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.m0les.embedded.IntIntTree;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * Test and cover the behaviour of the IntIntTree class.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestIntIntTree
+{
+	@Test
+	public void testAdd() throws Exception
+	{
+		IntIntTree tree = new IntIntTree();
+		assertEquals( 7, tree.add( 2, 7 ) );
+		assertEquals( 10, tree.add( 2, 3 ) );
+		assertEquals( 10, tree.find( 2 ).getValue() );
+		assertEquals( 0, tree.get( 3, 0 ) );
+		tree.insert( 1, 3 );
+		tree.find( 1 ).setValue( 7 );
+		assertEquals( 7, tree.get( 1, 0 ) );
+		assertEquals( 1, tree.getFirst().getKey() );
+		assertEquals( 2, tree.getNext( tree.getFirst() ).getKey() );
+	}
+
+	@Test
+	public void testRecycledValue() throws Exception
+	{
+		IntIntTree.NodePool pool = new IntIntTree.NodePool();
+		IntIntTree tree = new IntIntTree( pool );
+		tree.insert( 1, 7 );
+		tree.remove( tree.find( 1 ) );
+		assertNull( tree.find( 1 ) );
+		assertEquals( 3, tree.add( 1, 3 ) );
+		assertEquals( 1, pool.getInstanceCount() );
+	}
+
+	@Test(expected=PoolExhaustedException.class)
+	public void testLimitedPool() throws PoolExhaustedException
+	{
+		IntIntTree tree = new IntIntTree( 1 );
+		tree.add( 1, 7 );
+		tree.add( 1, 7 );
+		tree.add( 2, 7 );
+	}
+
+	/**
+	 * Churn the Tree with random inserts, in-place adds and removals, checking it against a TreeMap and checking its
+	 * red-black ("Prime/Non-prime") rules as it goes.
+	 */
+	@Test
+	public void testRandom() throws Exception
+	{
+		IntIntTree tree = new IntIntTree();
+		TreeMap<Integer, Integer> reference = new TreeMap<Integer, Integer>();
+		Random random = new Random( 1234 );
+		for( int i = 0; i < 5000; i++ )
+		{
+			int key = random.nextInt( 500 );
+			IntIntTree.Node node = tree.find( key );
+			if( null == node )
+			{
+				tree.insert( key, i );
+				reference.put( key, i );
+			}
+			else if( 0 == i % 3 )
+			{
+				assertEquals( reference.get( key ).intValue() + 1, tree.add( key, 1 ) );
+				reference.put( key, reference.get( key ) + 1 );
+			}
+			else
+			{
+				tree.remove( node );
+				reference.remove( key );
+			}
+			if( 0 == i % 100 )
+			{
+				verifyRules( tree );
+			}
+		}
+		verifyRules( tree );
+		IntIntTree.Node node = tree.getFirst();
+		for( Map.Entry<Integer, Integer> entry : reference.entrySet() )
+		{
+			assertEquals( entry.getKey().intValue(), node.getKey() );
+			assertEquals( entry.getValue().intValue(), node.getValue() );
+			node = tree.getNext( node );
+		}
+		assertNull( node );
+	}
+
+	private void verifyRules( IntIntTree tree ) throws Exception
+	{
+		Object head = field( tree, "head" );
+		assertTrue( null == head || ! isPrime( head ) );
+		checkDepth( head );
+	}
+
+	/**
+	 * Check the prime-children rule and parent links from a subtree down, returning its non-prime depth.
+	 */
+	private int checkDepth( Object node ) throws Exception
+	{
+		if( null == node )
+		{
+			return 1;
+		}
+		Object lesser = field( node, "lesser" );
+		Object greater = field( node, "greater" );
+		if( isPrime( node ) )
+		{
+			assertTrue( null == lesser || ! isPrime( lesser ) );
+			assertTrue( null == greater || ! isPrime( greater ) );
+		}
+		assertTrue( null == lesser || node == field( lesser, "parent" ) );
+		assertTrue( null == greater || node == field( greater, "parent" ) );
+		int depth = checkDepth( lesser );
+		assertEquals( depth, checkDepth( greater ) );
+		return depth + (isPrime( node ) ? 0 : 1);
+	}
+
+	private static boolean isPrime( Object node ) throws Exception
+	{
+		return ((Boolean) field( node, "prime" )).booleanValue();
+	}
+
+	/**
+	 * Read a field of a Tree or Node, which may be declared by the AbstractTree engine they extend.
+	 */
+	private static Object field( Object obj, String name ) throws Exception
+	{
+		for( Class<?> type = obj.getClass(); null != type; type = type.getSuperclass() )
+		{
+			try
+			{
+				Field field = type.getDeclaredField( name );
+				field.setAccessible( true );
+				return field.get( obj );
+			}
+			catch( NoSuchFieldException e )
+			{
+				// Try the superclass
+			}
+		}
+		throw new NoSuchFieldException( name );
+	}
+}
@@ -0,0 +1,74 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.m0les.embedded.IntLongTree;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * Test and cover the behaviour of the IntLongTree class.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestIntLongTree
+{
+	@Test
+	public void testAdd() throws Exception
+	{
+		IntLongTree tree = new IntLongTree();
+		assertEquals( 7L, tree.add( 2, 7L ) );
+		assertEquals( 10L, tree.add( 2, 3L ) );
+		assertEquals( 10L, tree.find( 2 ).getValue() );
+		assertEquals( 0L, tree.get( 3, 0L ) );
+		tree.insert( 1, 3L );
+		tree.find( 1 ).setValue( 7L );
+		assertEquals( 7L, tree.get( 1, 0L ) );
+		assertEquals( 1, tree.getFirst().getKey() );
+		assertEquals( 2, tree.getNext( tree.getFirst() ).getKey() );
+		assertEquals( 1L << 40, tree.add( 2, (1L << 40) - 10L ) );
+	}
+
+	@Test
+	public void testRecycledValue() throws Exception
+	{
+		IntLongTree.NodePool pool = new IntLongTree.NodePool();
+		IntLongTree tree = new IntLongTree( pool );
+		tree.insert( 1, 7L );
+		tree.remove( tree.find( 1 ) );
+		assertNull( tree.find( 1 ) );
+		assertEquals( 3L, tree.add( 1, 3L ) );
+		assertEquals( 1, pool.getInstanceCount() );
+	}
+
+	@Test(expected=PoolExhaustedException.class)
+	public void testLimitedPool() throws PoolExhaustedException
+	{
+		IntLongTree tree = new IntLongTree( 1 );
+		tree.add( 1, 7L );
+		tree.add( 1, 7L );
+		tree.add( 2, 7L );
+	}
+}
@@ -0,0 +1,114 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.m0les.embedded.LongTree;
+import com.m0les.embedded.LongTree.Node;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+
+/**
+ * Test and cover the behaviour of the LongTree class.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestLongTree
+{
+	@Before
+	public void setUp()
+	{
+		tree = new LongTree<String>();
+	}
+
+	@Test
+	public void testWideKeys() throws Exception
+	{
+		for( int i = 0; i < KEYS.length; i++ )
+		{
+			tree.insert( KEYS[i], "Value" + KEYS[i] );
+		}
+		Node<String> node = tree.getFirst();
+		long previous = Long.MIN_VALUE;
+		int count = 0;
+		while( null != node )
+		{
+			assertTrue( 0 == count || previous < node.getKey() );
+			assertEquals( "Value" + node.getKey(), node.getValue() );
+			previous = node.getKey();
+			node = tree.getNext( node );
+			count++;
+		}
+		assertEquals( KEYS.length, count );
+		assertEquals( Long.MIN_VALUE, tree.getFirst().getKey() );
+		assertEquals( Long.MAX_VALUE, tree.getLast().getKey() );
+		assertEquals( 5000000001L, tree.getPrev( tree.find( 5000000002L ) ).getKey() );
+		assertNull( tree.find( 1L ) );
+		assertNull( tree.find( 5000000001L + (1L << 32) ) );
+	}
+
+	@Test
+	public void testRemove() throws Exception
+	{
+		LongTree.NodePool<String> pool = new LongTree.NodePool<String>();
+		tree = new LongTree<String>( pool );
+		for( int i = 0; i < KEYS.length; i++ )
+		{
+			tree.insert( KEYS[i], "Value" + KEYS[i] );
+		}
+		for( int i = 0; i < KEYS.length; i += 2 )
+		{
+			tree.remove( tree.find( KEYS[i] ) );
+			assertNull( tree.find( KEYS[i] ) );
+		}
+		for( int i = 1; i < KEYS.length; i += 2 )
+		{
+			assertEquals( KEYS[i], tree.find( KEYS[i] ).getKey() );
+		}
+		tree.removeAll();
+		assertNull( tree.getFirst() );
+		for( int i = 0; i < KEYS.length; i++ )
+		{
+			tree.insert( KEYS[i], "Again" );
+		}
+		assertEquals( KEYS.length, pool.getInstanceCount() );
+	}
+
+	@Test(expected=PoolExhaustedException.class)
+	public void testLimitedPool() throws PoolExhaustedException
+	{
+		tree = new LongTree<String>( 2 );
+		tree.insert( 1L << 40, "One" );
+		tree.insert( 2L << 40, "Two" );
+		tree.insert( 3L << 40, "Three" );
+	}
+
+	private static final long[] KEYS = {
+		5000000002L, -7L, Long.MAX_VALUE, 0L, 5000000001L, Long.MIN_VALUE, 1L << 32, -(1L << 40), 42L, 3000000000L
+	};
+
+	private LongTree<String> tree;
+}
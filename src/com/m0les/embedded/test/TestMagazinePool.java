@@ -0,0 +1,276 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.m0les.embedded.Factory;
+import com.m0les.embedded.Link;
+import com.m0les.embedded.MagazinePool;
+import com.m0les.embedded.ManagedFactory;
+import com.m0les.embedded.Pool;
+import com.m0les.embedded.Statistics;
+import com.m0les.embedded.Tree;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.MagazinePool class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestMagazinePool {
+
+	/**
+	 * Test that an instance returned by a thread is handed straight back to it again
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testReuse() throws Exception {
+		DummyLink link = magazines.getInstance();
+		assertNotNull(link);
+		magazines.returnInstance(link);
+		assertSame(link, magazines.getInstance());
+		assertEquals(1, pool.getInstanceCount());
+		assertEquals(1, magazines.getInstanceCount());
+	}
+
+	/**
+	 * Test that the counters include instances served from and parked in magazines.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testStatistics() throws Exception {
+		Statistics stats = new Statistics();
+		DummyLink link = magazines.getInstance();
+		magazines.returnInstance(link);
+		magazines.returnInstance(magazines.getInstance());
+		magazines.getStatistics(stats);
+		assertEquals(1, stats.hits);
+		assertEquals(1, stats.misses);
+		assertEquals(2, stats.returns);
+		assertEquals(1, stats.free);
+		assertEquals(1, stats.instances);
+		magazines.flush();
+		magazines.getStatistics(stats);
+		assertEquals(1, stats.free);
+	}
+
+	/**
+	 * Test that an overflowing magazine spills a batch back to the backing Pool and refills from it again.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testSpillAndRefill() throws Exception {
+		DummyLink[] links = new DummyLink[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			links[i] = magazines.getInstance();
+		}
+		for (int i = 0; i < SIZE; i++) {
+			magazines.returnInstance(links[i]);
+		}
+		// The magazine filled-up once and passed half its instances back
+		pool.discardGarbage();
+		assertEquals(SIZE / 2, pool.getInstanceCount());
+		for (int i = 0; i < SIZE / 2; i++) {
+			links[i] = magazines.getInstance();
+		}
+		assertEquals(SIZE / 2, pool.getInstanceCount());
+		for (int i = 0; i < SIZE / 2; i++) {
+			magazines.returnInstance(links[i]);
+		}
+		magazines.discardGarbage();
+		assertEquals(0, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test that discardGarbage() reaches instances parked in the magazine of a thread that has since finished.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testDiscardIdleMagazine() throws Exception {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					magazines.returnInstance(magazines.getInstance());
+				} catch (Pool.PoolExhaustedException e) {
+					// Will fail the instance-count assertion below
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		assertEquals(1, pool.getInstanceCount());
+		magazines.discardGarbage(1);
+		assertEquals(1, pool.getInstanceCount());
+		magazines.discardGarbage();
+		assertEquals(0, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test that an exhausted limited Pool recovers instances parked in other threads' magazines.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testExhaustedRecovery() throws Exception {
+		pool = new Pool<DummyLink>(new DummyLinkFactory(), 1);
+		magazines = new MagazinePool<DummyLink>(pool, SIZE);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					magazines.returnInstance(magazines.getInstance());
+				} catch (Pool.PoolExhaustedException e) {
+					// Will fail the getInstance() below
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		assertNotNull(magazines.getInstance());
+		assertEquals(1, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test a Tree built on a MagazinePool of Nodes
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testTree() throws Exception {
+		Tree.NodePool<String> nodePool = new Tree.NodePool<String>();
+		Tree<String> tree = new Tree<String>(new MagazinePool<Tree.Node<String>.NodeLink>(nodePool, SIZE));
+		for (int i = 0; i < SIZE; i++) {
+			tree.insert(i, "Value" + i);
+		}
+		tree.removeAll();
+		for (int i = 0; i < SIZE; i++) {
+			tree.insert(i, "Value" + i);
+		}
+		assertEquals(SIZE, nodePool.getInstanceCount());
+		assertEquals("Value3", tree.find(3).getValue());
+		tree.removeAll();
+		tree.discardGarbage();
+		assertEquals(0, nodePool.getInstanceCount());
+	}
+
+	/**
+	 * Test that a ManagedFactory's hooks are applied once per use to instances recycled through a magazine, and not
+	 * again as batches move between the magazine and the backing Pool.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testManagedHooks() throws Exception {
+		for (boolean deferReset : new boolean[] { false, true }) {
+			pool = new Pool<DummyLink>(new CheckingFactory(deferReset));
+			magazines = new MagazinePool<DummyLink>(pool, SIZE);
+			DummyLink[] links = new DummyLink[SIZE];
+			for (int i = 0; i < SIZE; i++) {
+				links[i] = magazines.getInstance();
+			}
+			for (int i = 0; i < SIZE; i++) {
+				magazines.returnInstance(links[i]);
+			}
+			for (int i = 0; i < SIZE; i++) {
+				links[i] = magazines.getInstance();
+			}
+			for (int i = 0; i < SIZE; i++) {
+				links[i].counted = links[i].resets;
+				magazines.returnInstance(links[i]);
+			}
+			for (int i = 0; i < SIZE; i++) {
+				links[i] = magazines.getInstance();
+				assertEquals(links[i].counted + 1, links[i].resets);
+			}
+			links[0].broken = true;
+			magazines.returnInstance(links[0]);
+			assertNotSame(links[0], magazines.getInstance());
+			assertEquals(SIZE, pool.getInstanceCount());
+		}
+	}
+
+	/**
+	 * Create the test harness
+	 */
+	@Before
+	public void setUp() {
+		pool = new Pool<DummyLink>(new DummyLinkFactory());
+		magazines = new MagazinePool<DummyLink>(pool, SIZE);
+	}
+
+	/**
+	 * Factory for a Pool<DummyLink> to use to instantiate new DummyLink instances
+	 */
+	private static class DummyLinkFactory implements Factory<DummyLink> {
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+	}
+
+	/**
+	 * A ManagedFactory that counts resets and refuses broken instances.
+	 */
+	private static class CheckingFactory extends ManagedFactory<DummyLink> {
+		CheckingFactory(boolean deferReset) {
+			super(deferReset);
+		}
+
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+
+		@Override
+		public void reset(DummyLink instance) {
+			instance.resets++;
+		}
+
+		@Override
+		public boolean validate(DummyLink instance) {
+			return !instance.broken;
+		}
+	}
+
+	/**
+	 * Dummy implementation of the Link<C> abstract class used for unit-tests.
+	 */
+	private static class DummyLink extends Link<DummyLink> {
+		private int resets = 0;
+		private int counted = 0; // The resets seen before the latest return
+		private boolean broken = false;
+	}
+
+	private static final int SIZE = 8;
+	private Pool<DummyLink> pool;
+	private MagazinePool<DummyLink> magazines;
+}
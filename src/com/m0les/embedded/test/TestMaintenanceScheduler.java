@@ -0,0 +1,149 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.m0les.embedded.MaintenanceScheduler;
+import com.m0les.embedded.Statistics;
+import com.m0les.embedded.Tree;
+import com.m0les.embedded.TrimPolicy;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.MaintenanceScheduler class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestMaintenanceScheduler {
+
+	/**
+	 * Test that a trimmer task takes a Tree's free nodes down to its floor in chunks.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testTrimmer() throws Exception {
+		Tree<String> tree = new Tree<String>();
+		for (int i = 0; i < 20; i++) {
+			tree.insert(i, "Value" + i);
+		}
+		tree.removeAll();
+		MaintenanceScheduler scheduler = new MaintenanceScheduler();
+		DummyTask other = new DummyTask(0);
+		scheduler.add(MaintenanceScheduler.trimmer(tree, tree, 5, 4));
+		scheduler.add(other);
+		scheduler.runIdle(Long.MAX_VALUE);
+		Statistics stats = new Statistics();
+		tree.getStatistics(stats);
+		assertEquals(5, stats.free);
+		assertEquals(5, stats.instances);
+		// 4 trimming steps (the last finding the floor), interleaved with 3 idle steps of the other task
+		assertEquals(7, scheduler.getSteps());
+		assertTrue(0 < other.steps);
+		assertTrue(scheduler.remove(other));
+		assertTrue(!scheduler.remove(other));
+		assertEquals(1, scheduler.size());
+	}
+
+	/**
+	 * Test that the budget limits how long a busy task runs, and that budget use is tracked.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testBudget() throws Exception {
+		MaintenanceScheduler scheduler = new MaintenanceScheduler();
+		DummyTask busy = new DummyTask(Integer.MAX_VALUE);
+		scheduler.add(busy);
+		assertEquals(0, scheduler.runIdle(0));
+		assertEquals(0, busy.steps);
+		final long budget = TimeUnit.MILLISECONDS.toNanos(2);
+		long used = scheduler.runIdle(budget);
+		assertTrue(used >= budget);
+		assertTrue(0 < busy.steps);
+		assertEquals(2, scheduler.getRuns());
+		assertEquals(budget, scheduler.getBudgetGiven());
+		assertEquals(used, scheduler.getBudgetUsed());
+		assertEquals(used, scheduler.getLastUsed());
+	}
+
+	/**
+	 * Test that tasks take turns across calls even when each call only has time for one step.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testRoundRobin() throws Exception {
+		MaintenanceScheduler scheduler = new MaintenanceScheduler();
+		DummyTask first = new DummyTask(Integer.MAX_VALUE);
+		DummyTask second = new DummyTask(Integer.MAX_VALUE);
+		scheduler.add(first);
+		scheduler.add(second);
+		for (int i = 0; i < 4; i++) {
+			scheduler.runIdle(1);
+		}
+		assertEquals(2, first.steps);
+		assertEquals(2, second.steps);
+	}
+
+	/**
+	 * Test that a ticker task ticks a TrimPolicy at most once per period.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testTicker() throws Exception {
+		Tree<String> tree = new Tree<String>();
+		for (int i = 0; i < 8; i++) {
+			tree.insert(i, "Value" + i);
+		}
+		tree.removeAll();
+		TrimPolicy policy = new TrimPolicy(tree, tree, 1.0, 0.0);
+		MaintenanceScheduler scheduler = new MaintenanceScheduler();
+		scheduler.add(MaintenanceScheduler.ticker(policy, TimeUnit.HOURS.toNanos(1)));
+		scheduler.runIdle(Long.MAX_VALUE);
+		assertEquals(8.0, policy.getEstimate(), 0.0);
+		scheduler.runIdle(Long.MAX_VALUE);
+		assertEquals(8.0, policy.getEstimate(), 0.0);
+	}
+
+	/**
+	 * A Task that counts its steps and stays busy for a given number of them
+	 */
+	private static class DummyTask implements MaintenanceScheduler.Task {
+		DummyTask(int busySteps) {
+			this.busySteps = busySteps;
+		}
+
+		@Override
+		public boolean runStep() {
+			return ++steps < busySteps;
+		}
+
+		private final int busySteps;
+		int steps = 0;
+	}
+}
@@ -0,0 +1,221 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import com.m0les.embedded.ConcurrentPool;
+import com.m0les.embedded.Link;
+import com.m0les.embedded.ManagedFactory;
+import com.m0les.embedded.ObjectPool;
+import com.m0les.embedded.Pool;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.ManagedFactory class and the pools' use of it
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestManagedFactory {
+
+	/**
+	 * Test that a Pool resets instances as they are returned and destroys them when discarded.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testPoolReset() throws Exception {
+		DummyFactory factory = new DummyFactory(false);
+		Pool<DummyLink> pool = new Pool<DummyLink>(factory);
+		DummyLink instance = pool.getInstance();
+		instance.value = "used";
+		pool.returnInstance(instance);
+		assertNull(instance.value);
+		assertEquals(1, factory.resets);
+		DummyLink[] links = new DummyLink[2];
+		assertEquals(2, pool.getInstances(links, 2));
+		links[0].value = links[1].value = "used";
+		DummyLink first = links[0];
+		pool.returnInstances(links, 2);
+		assertNull(first.value);
+		assertEquals(3, factory.resets);
+		assertEquals(1, factory.validations);
+		pool.discardGarbage(1);
+		assertEquals(1, factory.destroyed);
+		pool.discardGarbage();
+		assertEquals(2, factory.destroyed);
+		assertEquals(0, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test that deferred resets happen on borrow (including batches) and that unfit instances are replaced.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testPoolDeferred() throws Exception {
+		DummyFactory factory = new DummyFactory(true);
+		Pool<DummyLink> pool = new Pool<DummyLink>(factory);
+		DummyLink kept = pool.getInstance();
+		DummyLink broken = pool.getInstance();
+		kept.value = "used";
+		broken.value = "used";
+		broken.broken = true;
+		pool.returnInstance(kept);
+		pool.returnInstance(broken);
+		assertSame("used", kept.value);
+		assertEquals(0, factory.resets);
+		DummyLink chain = pool.getChain(3);
+		assertSame(kept, chain.next.next);
+		assertNull(chain.next.next.next);
+		assertNull(kept.value);
+		assertEquals(2, factory.resets);
+		assertEquals(1, factory.destroyed);
+		assertEquals(3, pool.getInstanceCount());
+		pool.returnChain(chain);
+		assertEquals(2, factory.resets);
+		assertSame(chain, pool.getInstance());
+		assertEquals(3, factory.resets);
+	}
+
+	/**
+	 * Test that a waiting caller is given a new instance when the one returned to it fails validation.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testWaiterAfterInvalidReturn() throws Exception {
+		DummyFactory factory = new DummyFactory(false);
+		Pool<DummyLink> pool = new Pool<DummyLink>(factory, 1);
+		DummyLink first = pool.getInstance();
+		CompletableFuture<DummyLink> waiting = pool.acquireAsync();
+		assertFalse(waiting.isDone());
+		first.broken = true;
+		pool.returnInstance(first);
+		assertTrue(waiting.isDone());
+		assertNotSame(first, waiting.get());
+		assertEquals(1, factory.destroyed);
+		assertEquals(1, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test that a ConcurrentPool honours the hooks.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testConcurrentPool() throws Exception {
+		DummyFactory factory = new DummyFactory(false);
+		ConcurrentPool<DummyLink> pool = new ConcurrentPool<DummyLink>(factory, 2);
+		DummyLink first = pool.getInstance();
+		DummyLink second = pool.getInstance();
+		first.value = "used";
+		first.broken = true;
+		pool.returnInstance(first);
+		assertNull(first.value);
+		second.broken = true;
+		pool.returnInstance(second);
+		DummyLink fresh = pool.getInstance();
+		assertNotSame(first, fresh);
+		assertNotSame(second, fresh);
+		assertEquals(2, factory.destroyed);
+		assertEquals(1, pool.getInstanceCount());
+		pool.returnInstance(fresh);
+		pool.discardGarbage();
+		assertEquals(3, factory.destroyed);
+	}
+
+	/**
+	 * Test that an ObjectPool honours the hooks.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testObjectPool() throws Exception {
+		DummyFactory factory = new DummyFactory(true);
+		ObjectPool<DummyLink> pool = new ObjectPool<DummyLink>(factory);
+		DummyLink[] links = new DummyLink[3];
+		assertEquals(3, pool.getInstances(links, 3));
+		links[1].broken = true;
+		DummyLink good = links[0];
+		good.value = "used";
+		pool.returnInstances(links, 3);
+		assertSame("used", good.value);
+		assertEquals(3, pool.getInstances(links, 3));
+		assertNull(good.value);
+		assertEquals(1, factory.destroyed);
+		assertEquals(3, pool.getInstanceCount());
+		pool.returnInstances(links, 3);
+		pool.discardGarbage(1);
+		assertEquals(3, factory.destroyed);
+	}
+
+	/**
+	 * A ManagedFactory that counts its hook calls.
+	 */
+	private static class DummyFactory extends ManagedFactory<DummyLink> {
+		DummyFactory(boolean deferReset) {
+			super(deferReset);
+		}
+
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+
+		@Override
+		public void reset(DummyLink instance) {
+			instance.value = null;
+			resets++;
+		}
+
+		@Override
+		public boolean validate(DummyLink instance) {
+			validations++;
+			return !instance.broken;
+		}
+
+		@Override
+		public void destroy(DummyLink instance) {
+			destroyed++;
+		}
+
+		private int resets = 0;
+		private int validations = 0;
+		private int destroyed = 0;
+	}
+
+	/**
+	 * Dummy implementation of the Link<C> abstract class used for unit-tests.
+	 */
+	private static class DummyLink extends Link<DummyLink> {
+		private Object value = null;
+		private boolean broken = false;
+	}
+}
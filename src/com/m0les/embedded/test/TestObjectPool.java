@@ -0,0 +1,163 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.m0les.embedded.Factory;
+import com.m0les.embedded.ObjectPool;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+import com.m0les.embedded.Statistics;
+import com.m0les.embedded.TrimPolicy;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.ObjectPool class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestObjectPool {
+
+	/**
+	 * Test instantiating-from and exhausting a limited-size pool of a JDK class
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testInstantiation() throws Exception {
+		final int LIMIT = 3;
+		ObjectPool<StringBuilder> pool = new ObjectPool<StringBuilder>(new BuilderFactory(), LIMIT);
+		StringBuilder[] builders = new StringBuilder[LIMIT];
+		for (int i = 0; i < LIMIT; i++) {
+			builders[i] = pool.getInstance();
+			assertNotNull(builders[i]);
+		}
+		try {
+			pool.getInstance();
+			fail("Exceeded the limit");
+		} catch (PoolExhaustedException e) {
+			// Expected
+		}
+		assertNull(pool.tryGetInstance());
+		pool.returnInstance(builders[1]);
+		assertSame(builders[1], pool.getInstance());
+		assertEquals(LIMIT, pool.getInstanceCount());
+		assertEquals("ObjectPool(3)", pool.toString());
+	}
+
+	/**
+	 * Test that an unlimited pool's stack grows to hold everything returned to it, and that discards keep the most
+	 * recently returned instances.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testGrowAndDiscard() throws Exception {
+		final int COUNT = 40;
+		ObjectPool<long[]> pool = new ObjectPool<long[]>(new Factory<long[]>() {
+			@Override
+			public long[] newInstance() {
+				return new long[4];
+			}
+		});
+		long[][] arrays = new long[COUNT][];
+		for (int i = 0; i < COUNT; i++) {
+			arrays[i] = pool.getInstance();
+		}
+		for (int i = 0; i < COUNT; i++) {
+			pool.returnInstance(arrays[i]);
+		}
+		assertEquals(COUNT, pool.getInstanceCount());
+		pool.discardGarbage(2);
+		assertEquals(2, pool.getInstanceCount());
+		assertSame(arrays[COUNT - 1], pool.getInstance());
+		assertSame(arrays[COUNT - 2], pool.getInstance());
+		pool.returnInstance(arrays[COUNT - 1]);
+		pool.discardGarbage();
+		assertEquals(1, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test getting and returning instances in batches, including a batch that only partially fits a limited pool.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testBatch() throws Exception {
+		final int LIMIT = 5;
+		ObjectPool<StringBuilder> pool = new ObjectPool<StringBuilder>(new BuilderFactory(), LIMIT);
+		StringBuilder[] builders = new StringBuilder[LIMIT + 1];
+		assertEquals(3, pool.getInstances(builders, 3));
+		pool.returnInstances(builders, 2);
+		assertNull(builders[0]);
+		assertNull(builders[1]);
+		assertNotNull(builders[2]);
+		assertEquals(LIMIT - 1, pool.getInstances(builders, LIMIT + 1));
+		assertEquals(LIMIT, pool.getInstanceCount());
+		assertEquals(0, pool.getInstances(builders, 1));
+		pool.returnInstances(builders, LIMIT - 1);
+		pool.discardGarbage(1);
+		assertEquals(2, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test the activity counters and that a TrimPolicy can manage an ObjectPool.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testStatistics() throws Exception {
+		ObjectPool<StringBuilder> pool = new ObjectPool<StringBuilder>(new BuilderFactory(), 4);
+		StringBuilder[] builders = new StringBuilder[4];
+		pool.getInstances(builders, 4);
+		pool.returnInstances(builders, 4);
+		pool.returnInstance(pool.getInstance());
+		assertNull(builders[0]);
+		Statistics stats = new Statistics();
+		pool.getStatistics(stats);
+		assertEquals(1, stats.hits);
+		assertEquals(4, stats.misses);
+		assertEquals(5, stats.returns);
+		assertEquals(0, stats.exhaustions);
+		assertEquals(4, stats.free);
+		assertEquals(4, stats.highWater);
+		assertEquals(4, stats.limit);
+		TrimPolicy policy = new TrimPolicy(pool, pool, 1.0, 0.0);
+		assertEquals(4, policy.tick());
+		assertEquals(0, policy.tick());
+		assertEquals(0, pool.getInstanceCount());
+	}
+
+	/**
+	 * Factory for StringBuilders, standing in for any class that can't extend Link
+	 */
+	private static class BuilderFactory implements Factory<StringBuilder> {
+		@Override
+		public StringBuilder newInstance() {
+			return new StringBuilder();
+		}
+	}
+}
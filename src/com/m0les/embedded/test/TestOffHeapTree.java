@@ -0,0 +1,137 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.m0les.embedded.OffHeapTree;
+import com.m0les.embedded.Pool.PoolExhaustedException;
+import com.m0les.embedded.Statistics;
+
+/**
+ * Test and cover the behaviour of the OffHeapTree class.
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestOffHeapTree
+{
+	@Test
+	public void testNavigation() throws Exception
+	{
+		OffHeapTree tree = new OffHeapTree( 8 );
+		assertEquals( OffHeapTree.NIL, tree.getFirst() );
+		for( int i = 8; i >= 1; i-- )
+		{
+			tree.insert( i, (long) i << 40 );
+		}
+		int cursor = tree.getFirst();
+		for( int i = 1; i <= 8; i++ )
+		{
+			assertEquals( i, tree.getKey( cursor ) );
+			assertEquals( (long) i << 40, tree.getValue( cursor ) );
+			cursor = tree.getNext( cursor );
+		}
+		assertEquals( OffHeapTree.NIL, cursor );
+		assertEquals( 7, tree.getKey( tree.getPrev( tree.getLast() ) ) );
+		assertEquals( OffHeapTree.NIL, tree.find( 9 ) );
+		tree.setValue( tree.find( 3 ), -3L );
+		assertEquals( -3L, tree.getValue( tree.find( 3 ) ) );
+	}
+
+	/**
+	 * Test a long run of random inserts and removes against a TreeMap, across more than one chunk of records.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRandom() throws Exception
+	{
+		OffHeapTree tree = new OffHeapTree();
+		TreeMap<Integer, Long> reference = new TreeMap<Integer, Long>();
+		Random random = new Random( 1234 );
+		for( int i = 0; i < 100000; i++ )
+		{
+			tree.insert( i, i );
+			reference.put( i, Long.valueOf( i ) );
+		}
+		for( int i = 0; i < 100000; i++ )
+		{
+			int key = random.nextInt( 120000 );
+			int cursor = tree.find( key );
+			if( OffHeapTree.NIL == cursor )
+			{
+				tree.insert( key, -key );
+				reference.put( key, Long.valueOf( -key ) );
+			}
+			else
+			{
+				tree.remove( cursor );
+				reference.remove( key );
+			}
+		}
+		assertEquals( reference.size(), tree.size() );
+		int cursor = tree.getFirst();
+		for( Map.Entry<Integer, Long> entry : reference.entrySet() )
+		{
+			assertEquals( entry.getKey().intValue(), tree.getKey( cursor ) );
+			assertEquals( entry.getValue().longValue(), tree.getValue( cursor ) );
+			cursor = tree.getNext( cursor );
+		}
+		assertEquals( OffHeapTree.NIL, cursor );
+	}
+
+	@Test
+	public void testRemoveAll() throws Exception
+	{
+		OffHeapTree tree = new OffHeapTree( 4 );
+		for( int round = 0; round < 3; round++ )
+		{
+			for( int i = 0; i < 4; i++ )
+			{
+				tree.insert( i, i );
+			}
+			tree.removeAll();
+			assertEquals( OffHeapTree.NIL, tree.getFirst() );
+		}
+		Statistics stats = new Statistics();
+		tree.getStatistics( stats );
+		assertEquals( 12, stats.misses );
+		assertEquals( 12, stats.returns );
+		assertEquals( 4, stats.highWater );
+		assertEquals( 4, stats.limit );
+	}
+
+	@Test(expected=PoolExhaustedException.class)
+	public void testLimitedPool() throws PoolExhaustedException
+	{
+		OffHeapTree tree = new OffHeapTree( 2 );
+		tree.insert( 1, 1L );
+		tree.insert( 2, 2L );
+		tree.remove( tree.find( 1 ) );
+		tree.insert( 3, 3L );
+		tree.insert( 4, 4L );
+	}
+}
@@ -3,9 +3,14 @@ package com.m0les.embedded.test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.ref.Reference;
 import java.lang.reflect.Field;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -14,6 +19,7 @@ import com.m0les.embedded.Link;
 import com.m0les.embedded.Pool;
 import com.m0les.embedded.Pool.PoolExhaustedException;
 import com.m0les.embedded.Recycler;
+import com.m0les.embedded.Statistics;
 
 /**
  * A suite of unit and coverage tests for the com.m0les.embedded.Pool class
@@ -201,6 +207,485 @@ public class TestPool {
 		assertEquals( 0, pool.getInstanceCount() );
 	}
 	
+	/**
+	 * Test getting and returning instances in batches, including a batch that only partially fits a limited pool.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBatch() throws Exception{
+		final int LIMIT = 5;
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), LIMIT );
+		DummyLink[] links = new DummyLink[LIMIT + 1];
+		assertEquals( 3, pool.getInstances( links, 3 ) );
+		assertEquals( 3, pool.getInstanceCount() );
+		pool.returnInstances( links, 2 );
+		assertNull( links[0] );
+		assertNull( links[1] );
+		assertNotNull( links[2] );
+		assertEquals( LIMIT - 1, pool.getInstances( links, LIMIT + 1 ) );
+		assertEquals( LIMIT, pool.getInstanceCount() );
+		assertEquals( 0, pool.getInstances( links, 1 ) );
+		pool.returnInstances( links, LIMIT - 1 );
+		pool.discardGarbage( 1 );
+		assertEquals( 2, pool.getInstanceCount() );
+	}
+
+	/**
+	 * Test getting and returning pre-linked chains of instances.
+	 * @throws Exception
+	 */
+	@Test
+	public void testChain() throws Exception{
+		final int LIMIT = 3;
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), LIMIT );
+		assertNull( pool.getChain( 0 ) );
+		DummyLink head = pool.getChain( LIMIT + 1 );
+		int length = 0;
+		for( DummyLink link = head; null != link; link = link.next ){
+			length++;
+		}
+		assertEquals( LIMIT, length );
+		assertNull( pool.getChain( 1 ) );
+		pool.returnChain( head );
+		assertEquals( LIMIT, pool.getInstanceCount() );
+		assertSame( head, pool.getInstance() );
+		pool.returnChain( null );
+	}
+
+	/**
+	 * Test that the activity counters follow single and batch operations, exhaustion and discards.
+	 * @throws Exception
+	 */
+	@Test
+	public void testStatistics() throws Exception{
+		final int LIMIT = 3;
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), LIMIT );
+		Statistics stats = new Statistics();
+		DummyLink first = pool.getInstance();
+		DummyLink second = pool.getInstance();
+		pool.returnInstance( first );
+		assertSame( first, pool.getInstance() );
+		pool.returnInstance( first );
+		pool.returnInstance( second );
+		DummyLink head = pool.getChain( LIMIT + 1 );
+		assertNull( pool.tryGetInstance() );
+		pool.getStatistics( stats );
+		assertEquals( 3, stats.hits );
+		assertEquals( 3, stats.misses );
+		assertEquals( 3, stats.returns );
+		assertEquals( 2, stats.exhaustions );
+		assertEquals( 0, stats.free );
+		assertEquals( LIMIT, stats.highWater );
+		assertEquals( LIMIT, stats.instances );
+		assertEquals( LIMIT, stats.limit );
+		pool.returnChain( head );
+		pool.discardGarbage( 1 );
+		pool.getStatistics( stats );
+		assertEquals( 6, stats.returns );
+		assertEquals( 1, stats.free );
+		assertEquals( 1, stats.instances );
+		assertEquals( LIMIT, stats.highWater );
+	}
+
+	/**
+	 * Test that tryGetInstance() gives null rather than throwing for an exhausted pool, and that a zero timeout
+	 * doesn't wait at all.
+	 * @throws Exception
+	 */
+	@Test
+	public void testTryGetInstance() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 1 );
+		DummyLink link = pool.tryGetInstance();
+		assertNotNull( link );
+		assertNull( pool.tryGetInstance() );
+		try {
+			pool.getInstance( 0, TimeUnit.SECONDS );
+			fail( "Exhausted pool did not throw PoolExhaustedException" );
+		} catch( PoolExhaustedException e ) {
+			// Intended outcome
+		}
+		pool.returnInstance( link );
+		assertSame( link, pool.getInstance( 0, TimeUnit.SECONDS ) );
+	}
+
+	/**
+	 * Test that ordinary callers are held to the soft limit while critical callers can use the reserve, and that
+	 * refusals are counted per tier.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCriticalReserve() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 2, 3 );
+		assertEquals( 2, pool.getSoftLimit() );
+		DummyLink first = pool.getInstance();
+		DummyLink second = pool.getInstance();
+		assertNull( pool.tryGetInstance() );
+		DummyLink critical = pool.getCriticalInstance();
+		assertNull( pool.tryGetCriticalInstance() );
+		pool.returnInstance( critical );
+		assertNull( pool.tryGetInstance() );
+		assertNull( pool.getChain( 1 ) );
+		assertSame( critical, pool.getCriticalInstance() );
+		pool.returnInstance( critical );
+		pool.returnInstance( first );
+		DummyLink chain = pool.getChain( 3 );
+		assertSame( first, chain );
+		assertNull( chain.next );
+		Statistics stats = new Statistics();
+		pool.getStatistics( stats );
+		assertEquals( 4, stats.exhaustions );
+		assertEquals( 1, stats.criticalExhaustions );
+		assertEquals( 3, stats.instances );
+		pool.returnInstance( second );
+		pool.returnInstance( first );
+		try {
+			new Pool<DummyLink>( new DummyLinkFactory(), 3, 2 );
+			fail( "Accepted a soft limit above the hard limit" );
+		} catch( IllegalArgumentException e ) {
+			// Intended outcome
+		}
+	}
+
+	/**
+	 * Test that detached instances count against the hard limit, but not towards the soft limit or peak as if in use.
+	 * @throws Exception
+	 */
+	@Test
+	public void testDetachedNotInUse() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 2, 4 );
+		assertEquals( 4, pool.prefill( 4 ) );
+		pool.detachGarbage( 2 );
+		pool.resetPeak();
+		DummyLink first = pool.getInstance();
+		DummyLink second = pool.getInstance();
+		assertNull( pool.tryGetInstance() );
+		assertNull( pool.tryGetCriticalInstance() );
+		Statistics stats = new Statistics();
+		pool.getStatistics( stats );
+		assertEquals( 2, stats.peak );
+		assertEquals( 2, stats.highWater );
+		assertEquals( 4, stats.instances );
+		assertTrue( !pool.discardDetached( 10 ) );
+		assertNotNull( pool.getCriticalInstance() );
+		pool.returnInstance( first );
+		pool.returnInstance( second );
+	}
+
+	/**
+	 * Test that a prefilled, sealed pool either refuses or records allocations.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSeal() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 3 );
+		assertEquals( 2, pool.prefill( 2 ) );
+		assertEquals( 1, pool.prefill( 5 ) );
+		pool.seal( true );
+		assertTrue( pool.isSealed() );
+		pool.discardGarbage( 2 );
+		DummyLink first = pool.getInstance();
+		DummyLink second = pool.getInstance();
+		assertNull( pool.tryGetInstance() );
+		Statistics stats = new Statistics();
+		pool.getStatistics( stats );
+		assertEquals( 0, stats.misses );
+		assertEquals( 1, stats.exhaustions );
+		assertEquals( 0, stats.sealViolations );
+		pool.seal( false );
+		assertNotNull( pool.getInstance() );
+		pool.getStatistics( stats );
+		assertEquals( 1, stats.sealViolations );
+		assertNotNull( pool.getLastViolation() );
+		pool.returnInstance( first );
+		pool.returnInstance( second );
+		try {
+			pool.prefill( 3 );
+			fail( "Prefilled a sealed pool" );
+		} catch( IllegalStateException e ) {
+			// Intended outcome
+		}
+	}
+
+	/**
+	 * Test that instances beyond the floor go to the soft overflow tier and are taken back before new ones are made
+	 * @throws Exception
+	 */
+	@Test
+	public void testSoftOverflow() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 4 );
+		DummyLink[] links = new DummyLink[4];
+		for( int i = 0; i < links.length; i++ ){
+			links[i] = pool.getInstance();
+		}
+		for( int i = 0; i < links.length; i++ ){
+			pool.returnInstance( links[i] );
+		}
+		pool.setSoftOverflow( true );
+		pool.discardGarbage( 1 );
+		assertEquals( 1, pool.getInstanceCount() );
+		assertEquals( 3, pool.getOverflowCount() );
+		for( int i = 0; i < links.length; i++ ){
+			assertSame( links[links.length - 1 - i], pool.getInstance() );
+		}
+		Statistics stats = new Statistics();
+		pool.getStatistics( stats );
+		assertEquals( 4, stats.misses );
+		assertEquals( 4, stats.hits );
+		assertEquals( 3, stats.softHits );
+		assertEquals( 0, stats.softLost );
+		assertEquals( 4, stats.instances );
+		assertEquals( 0, pool.getOverflowCount() );
+		for( int i = 0; i < links.length; i++ ){
+			pool.returnInstance( links[i] );
+		}
+		pool.discardGarbage( 0 );
+		assertEquals( 0, pool.getInstanceCount() );
+		assertEquals( 4, pool.getOverflowCount() );
+		pool.discardGarbage();
+		assertEquals( 0, pool.getOverflowCount() );
+	}
+
+	/**
+	 * Test that trimming repeatedly into the soft overflow tier keeps it as one reference, rather than one per trim
+	 * @throws Exception
+	 */
+	@Test
+	public void testSoftOverflowBounded() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory() );
+		pool.setSoftOverflow( true );
+		Field field = Pool.class.getDeclaredField( "overflow" );
+		field.setAccessible( true );
+		Reference<?> previous = null;
+		for( int i = 1; i <= 100; i++ ){
+			pool.prefill( 6 );
+			pool.discardGarbage( 5 );
+			Reference<?> tier = (Reference<?>) field.get( pool );
+			if( null != previous ){
+				assertTrue( previous != tier );
+				assertNull( previous.get() );
+			}
+			previous = tier;
+			assertEquals( i, pool.getOverflowCount() );
+			assertEquals( 5, pool.getInstanceCount() );
+		}
+		for( int i = 0; i < 105; i++ ){
+			pool.getInstance();
+		}
+		Statistics stats = new Statistics();
+		pool.getStatistics( stats );
+		assertEquals( 100, stats.softHits );
+		assertEquals( 105, stats.hits );
+		assertEquals( 0, stats.misses );
+	}
+
+	/**
+	 * Test that detached instances are only discarded as steps are taken
+	 * @throws Exception
+	 */
+	@Test
+	public void testDetachGarbage() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory() );
+		DummyLink[] links = new DummyLink[200];
+		for( int i = 0; i < links.length; i++ ){
+			links[i] = pool.getInstance();
+		}
+		for( int i = 0; i < links.length; i++ ){
+			pool.returnInstance( links[i] );
+		}
+		pool.detachGarbage( 10 );
+		Statistics stats = new Statistics();
+		pool.getStatistics( stats );
+		assertEquals( 10, stats.free );
+		assertEquals( 200, stats.instances );
+		assertTrue( pool.discardDetached( 50 ) );
+		assertEquals( 150, pool.getInstanceCount() );
+		pool.detachGarbage( 0 );
+		assertTrue( !pool.discardDetached( 1, TimeUnit.SECONDS ) );
+		assertEquals( 0, pool.getInstanceCount() );
+	}
+
+	/**
+	 * Test that discarding detached instances makes room for a caller already waiting on the limit
+	 * @throws Exception
+	 */
+	@Test
+	public void testDiscardDetachedServesWaiters() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 2 );
+		pool.prefill( 2 );
+		pool.detachGarbage( 0 );
+		CompletableFuture<DummyLink> future = pool.acquireAsync();
+		assertTrue( !future.isDone() );
+		while( pool.discardDetached( 10 ) );
+		assertTrue( future.isDone() );
+		assertEquals( 1, pool.getInstanceCount() );
+		pool.returnInstance( future.get() );
+	}
+
+	/**
+	 * Test that a timed wait on an exhausted pool gives-up with a PoolExhaustedException
+	 * @throws Exception
+	 */
+	@Test(expected=PoolExhaustedException.class)
+	public void testWaitTimeout() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 1 );
+		pool.getInstance();
+		pool.getInstance( 10, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Test that waiting callers are handed returned instances in the order they started waiting.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWaitFifo() throws Exception{
+		final Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 2 );
+		final DummyLink first = pool.getInstance();
+		final DummyLink second = pool.getInstance();
+		final DummyLink[] received = new DummyLink[2];
+		Thread[] threads = new Thread[2];
+		for( int i = 0; i < threads.length; i++ ){
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						received[index] = pool.getInstance( 10, TimeUnit.SECONDS );
+					} catch( Exception e ) {
+						// Leaves received[index] null, failing the test
+					}
+				}
+			};
+			threads[i].start();
+			waitUntilParked( threads[i] );
+		}
+		pool.returnInstances( new DummyLink[] { first, second }, 2 );
+		for( Thread thread : threads ){
+			thread.join();
+		}
+		assertSame( first, received[0] );
+		assertSame( second, received[1] );
+		assertEquals( 2, pool.getInstanceCount() );
+	}
+
+	/**
+	 * Test that interrupting a waiting caller throws InterruptedException and leaves the queue of waiters usable.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWaitInterrupted() throws Exception{
+		final Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 1 );
+		final DummyLink link = pool.getInstance();
+		final boolean[] interrupted = new boolean[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					pool.getInstance( 10, TimeUnit.SECONDS );
+				} catch( InterruptedException e ) {
+					interrupted[0] = true;
+				} catch( PoolExhaustedException e ) {
+					// Leaves interrupted[0] false, failing the test
+				}
+			}
+		};
+		thread.start();
+		waitUntilParked( thread );
+		thread.interrupt();
+		thread.join();
+		assertTrue( interrupted[0] );
+		pool.returnInstance( link );
+		assertSame( link, pool.tryGetInstance() );
+	}
+
+	/**
+	 * Test that a Receiver is served straight away when an instance is available, and otherwise queued and served
+	 * by the next return.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAcquire() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 1 );
+		DummyReceiver receiver = new DummyReceiver();
+		assertTrue( pool.acquire( receiver ) );
+		DummyLink link = receiver.received;
+		assertNotNull( link );
+		receiver.received = null;
+		assertTrue( !pool.acquire( receiver ) );
+		assertNull( receiver.received );
+		pool.returnInstance( link );
+		assertSame( link, receiver.received );
+		assertTrue( !pool.cancel( receiver ) );
+		assertNull( pool.tryGetInstance() );
+	}
+
+	/**
+	 * Test that a cancelled Receiver is not served and the returned instance stays in the pool.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAcquireCancel() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 1 );
+		DummyLink link = pool.getInstance();
+		DummyReceiver receiver = new DummyReceiver();
+		assertTrue( !pool.acquire( receiver ) );
+		assertTrue( pool.cancel( receiver ) );
+		pool.returnInstance( link );
+		assertNull( receiver.received );
+		assertSame( link, pool.tryGetInstance() );
+	}
+
+	/**
+	 * Test acquireAsync(), including futures that are cancelled or completed elsewhere before an instance is returned.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAcquireAsync() throws Exception{
+		Pool<DummyLink> pool = new Pool<DummyLink>( new DummyLinkFactory(), 1 );
+		CompletableFuture<DummyLink> future = pool.acquireAsync();
+		assertTrue( future.isDone() );
+		DummyLink link = future.get();
+		assertNotNull( link );
+
+		future = pool.acquireAsync();
+		assertTrue( !future.isDone() );
+		future.cancel( false );
+		pool.returnInstance( link );
+		assertSame( link, pool.tryGetInstance() );
+
+		future = pool.acquireAsync();
+		future.complete( new DummyLink() );
+		pool.returnInstance( link );
+		assertSame( link, pool.tryGetInstance() );
+
+		future = pool.acquireAsync();
+		pool.returnInstance( link );
+		assertSame( link, future.get( 0, TimeUnit.SECONDS ) );
+		assertEquals( 1, pool.getInstanceCount() );
+	}
+
+	/**
+	 * A Receiver that just records what it received
+	 */
+	private static class DummyReceiver extends Pool.Receiver<DummyLink> {
+		@Override
+		protected void receive(DummyLink instance) {
+			received = instance;
+		}
+
+		DummyLink received = null;
+	}
+
+	/**
+	 * Wait for a thread to park itself inside the pool.
+	 * @param thread The thread to wait for
+	 * @throws InterruptedException
+	 */
+	private static void waitUntilParked( Thread thread ) throws InterruptedException{
+		while( Thread.State.TIMED_WAITING != thread.getState() ){
+			Thread.sleep( 1 );
+		}
+	}
+
 	/**
 	 * Factory for a Pool<DummyLink> to use to instantiate new DummyLink instances
 	 */
@@ -0,0 +1,243 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.m0les.embedded.Factory;
+import com.m0les.embedded.Link;
+import com.m0les.embedded.ManagedFactory;
+import com.m0les.embedded.Pool;
+import com.m0les.embedded.PoolDiagnostics;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.PoolDiagnostics class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestPoolDiagnostics {
+
+	/**
+	 * Test that double and foreign returns are reported and don't corrupt the chain.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testBadReturns() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		PoolDiagnostics<DummyLink> diagnostics = new PoolDiagnostics<DummyLink>(1, 1, TimeUnit.HOURS, listener);
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory(), 0, diagnostics);
+		DummyLink first = pool.getInstance();
+		DummyLink second = pool.getInstance();
+		assertEquals(2, diagnostics.getOutstanding());
+		pool.returnInstance(first);
+		pool.returnInstance(first);
+		assertEquals(1, diagnostics.getDoubleReturns());
+		assertSame(first, listener.instance);
+		assertNotNull(listener.site);
+		pool.returnInstance(new DummyLink());
+		assertEquals(1, diagnostics.getForeignReturns());
+		DummyLink[] links = new DummyLink[] { second, first };
+		pool.returnInstances(links, 2);
+		assertEquals(2, diagnostics.getDoubleReturns());
+		assertEquals(2, pool.getInstanceCount());
+		assertNotSame(pool.getInstance(), pool.getInstance());
+		assertNull(pool.getChain(1).next);
+		assertEquals(3, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test leak scanning and that each leak is only reported once per borrow.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testLeaks() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		PoolDiagnostics<DummyLink> diagnostics = new PoolDiagnostics<DummyLink>(0, 0, TimeUnit.NANOSECONDS, listener);
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory(), 0, diagnostics);
+		DummyLink leaked = pool.getInstance();
+		DummyLink returned = pool.getInstance();
+		pool.returnInstance(returned);
+		Thread.sleep(1);
+		assertEquals(1, diagnostics.scanLeaks());
+		assertSame(leaked, listener.instance);
+		assertNull(listener.site);
+		assertTrue(0 < listener.age);
+		assertEquals(0, diagnostics.scanLeaks());
+		assertEquals(1, diagnostics.getLeaks());
+		pool.discardGarbage();
+		pool.returnInstance(leaked);
+		assertEquals(0, diagnostics.getOutstanding());
+	}
+
+	/**
+	 * Test that generations and poison catch uses after return.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testUseAfterReturn() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		PoolDiagnostics<DummyLink> diagnostics = new PoolDiagnostics<DummyLink>(1, 1, TimeUnit.HOURS, listener,
+				new DummyPoison());
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory(), 0, diagnostics);
+		DummyLink instance = pool.getInstance();
+		long generation = diagnostics.getGeneration(instance);
+		assertTrue(diagnostics.check(instance, generation));
+		instance.value = 1;
+		pool.returnInstance(instance);
+		assertEquals(-1, diagnostics.getGeneration(instance));
+		assertFalse(diagnostics.check(instance, generation));
+		assertEquals(1, diagnostics.getUsesAfterReturn());
+		instance.value = 2;
+		assertSame(instance, pool.getInstance());
+		assertEquals(2, diagnostics.getUsesAfterReturn());
+		assertFalse(diagnostics.check(instance, generation));
+		assertTrue(diagnostics.check(instance, diagnostics.getGeneration(instance)));
+		pool.returnInstance(instance);
+		pool.getInstance();
+		assertEquals(3, diagnostics.getUsesAfterReturn());
+	}
+
+	/**
+	 * Test that a ManagedFactory's resets and a Poison don't undo each other, whether resets are deferred or not.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testPoisonWithResets() throws Exception {
+		for (boolean deferReset : new boolean[] { false, true }) {
+			PoolDiagnostics<DummyLink> diagnostics = new PoolDiagnostics<DummyLink>(1, 1, TimeUnit.HOURS, null,
+					new DummyPoison());
+			Pool<DummyLink> pool = new Pool<DummyLink>(new ResettingFactory(deferReset), 0, diagnostics);
+			DummyLink instance = pool.getInstance();
+			instance.value = 1;
+			pool.returnInstance(instance);
+			assertSame(instance, pool.getInstance());
+			assertEquals(0, instance.value);
+			assertEquals(0, diagnostics.getUsesAfterReturn());
+			DummyLink[] links = new DummyLink[] { instance };
+			pool.returnInstances(links, 1);
+			instance.value = 2;
+			assertSame(instance, pool.getChain(1));
+			assertEquals(0, instance.value);
+			assertEquals(1, diagnostics.getUsesAfterReturn());
+		}
+	}
+
+	/**
+	 * A Listener that remembers the last report.
+	 */
+	private static class RecordingListener implements PoolDiagnostics.Listener<DummyLink> {
+		@Override
+		public void doubleReturn(DummyLink instance, Throwable borrowSite) {
+			this.instance = instance;
+			site = borrowSite;
+		}
+
+		@Override
+		public void foreignReturn(DummyLink instance) {
+			this.instance = instance;
+			site = null;
+		}
+
+		@Override
+		public void leaked(DummyLink instance, long ageNanos, Throwable borrowSite) {
+			this.instance = instance;
+			age = ageNanos;
+			site = borrowSite;
+		}
+
+		@Override
+		public void usedAfterReturn(DummyLink instance, Throwable borrowSite) {
+			this.instance = instance;
+			site = borrowSite;
+		}
+
+		private DummyLink instance = null;
+		private Throwable site = null;
+		private long age = 0;
+	}
+
+	/**
+	 * A Poison that marks the value member.
+	 */
+	private static class DummyPoison implements PoolDiagnostics.Poison<DummyLink> {
+		@Override
+		public void poison(DummyLink instance) {
+			instance.value = POISON;
+		}
+
+		@Override
+		public boolean isIntact(DummyLink instance) {
+			return POISON == instance.value;
+		}
+
+		private static final int POISON = 0xdeadbeef;
+	}
+
+	/**
+	 * Dummy implementation of the Factory<C> interface used for unit-tests.
+	 */
+	private static class DummyLinkFactory implements Factory<DummyLink> {
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+	}
+
+	/**
+	 * A ManagedFactory that resets the value member.
+	 */
+	private static class ResettingFactory extends ManagedFactory<DummyLink> {
+		ResettingFactory(boolean deferReset) {
+			super(deferReset);
+		}
+
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+
+		@Override
+		public void reset(DummyLink instance) {
+			instance.value = 0;
+		}
+	}
+
+	/**
+	 * Dummy implementation of the Link<C> abstract class used for unit-tests.
+	 */
+	private static class DummyLink extends Link<DummyLink> {
+		private int value = 0;
+	}
+}
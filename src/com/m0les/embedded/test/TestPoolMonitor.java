@@ -0,0 +1,79 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+import com.m0les.embedded.PoolMonitor;
+import com.m0les.embedded.Tree;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.PoolMonitor class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestPoolMonitor {
+
+	/**
+	 * Test that a registered Tree's node-pool counters can be read through the platform MBean server.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testRegister() throws Exception {
+		Tree<String> tree = new Tree<String>(4);
+		PoolMonitor monitor = PoolMonitor.register("test-tree", tree);
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertTrue(server.isRegistered(monitor.getName()));
+			for (int i = 0; i < 3; i++) {
+				tree.insert(i, "Value" + i);
+			}
+			tree.removeAll();
+			tree.insert(1, "Value1");
+			assertEquals(3, ((Integer) server.getAttribute(monitor.getName(), "InstanceCount")).intValue());
+			assertEquals(4, ((Integer) server.getAttribute(monitor.getName(), "Limit")).intValue());
+			assertEquals(1L, ((Long) server.getAttribute(monitor.getName(), "Hits")).longValue());
+			assertEquals(3L, monitor.getMisses());
+			assertEquals(3L, monitor.getReturns());
+			assertEquals(2, monitor.getFree());
+			assertEquals(3, monitor.getHighWater());
+			try {
+				PoolMonitor.register("test-tree", tree);
+				fail("Registered the same name twice");
+			} catch (InstanceAlreadyExistsException e) {
+				// Expected
+			}
+		} finally {
+			monitor.unregister();
+		}
+		assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(monitor.getName()));
+	}
+}
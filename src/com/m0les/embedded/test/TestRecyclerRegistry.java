@@ -0,0 +1,144 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.MemoryNotificationInfo;
+
+import javax.management.Notification;
+
+import org.junit.Test;
+
+import com.m0les.embedded.Recycler;
+import com.m0les.embedded.RecyclerRegistry;
+import com.m0les.embedded.Statistics;
+import com.m0les.embedded.Tree;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.RecyclerRegistry class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestRecyclerRegistry {
+
+	/**
+	 * Test that Recyclers are trimmed in ascending priority order, each down to its own floor.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testTrimOrder() throws Exception {
+		RecyclerRegistry registry = new RecyclerRegistry(0.9);
+		StringBuilder order = new StringBuilder();
+		DummyRecycler high = new DummyRecycler("H", order);
+		DummyRecycler low = new DummyRecycler("L", order);
+		DummyRecycler middle = new DummyRecycler("M", order);
+		registry.register(high, 10, 100);
+		registry.register(low, -5, 0);
+		registry.register(middle, 0, 7);
+		registry.register(middle, 5, 8);
+		assertEquals(3, registry.size());
+		registry.trim();
+		assertEquals("LMH", order.toString());
+		assertEquals(0, low.maxRemaining);
+		assertEquals(8, middle.maxRemaining);
+		assertEquals(100, high.maxRemaining);
+		assertTrue(registry.unregister(middle));
+		assertTrue(!registry.unregister(middle));
+		order.setLength(0);
+		registry.trim();
+		assertEquals("LH", order.toString());
+		assertEquals(2, registry.getTrimCount());
+	}
+
+	/**
+	 * Test that pressure notifications trim registered Trees and other notifications don't.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testNotification() throws Exception {
+		RecyclerRegistry registry = new RecyclerRegistry(1.0);
+		Tree<String> tree = new Tree<String>();
+		for (int i = 0; i < 10; i++) {
+			tree.insert(i, "Value" + i);
+		}
+		tree.removeAll();
+		registry.register(tree, 0, 4);
+		registry.handleNotification(new Notification("some.other.notification", this, 1), null);
+		assertEquals(0, registry.getTrimCount());
+		registry.handleNotification(
+				new Notification(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED, this, 2), null);
+		assertEquals(1, registry.getTrimCount());
+		Statistics stats = new Statistics();
+		tree.getStatistics(stats);
+		assertEquals(4, stats.free);
+		assertEquals(4, stats.instances);
+	}
+
+	/**
+	 * Test installing and uninstalling the platform listeners.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testInstall() throws Exception {
+		RecyclerRegistry registry = new RecyclerRegistry(0.99);
+		registry.install();
+		registry.install();
+		registry.uninstall();
+		registry.uninstall();
+		try {
+			new RecyclerRegistry(0.0);
+			fail("Accepted a threshold of zero");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * A Recycler that records when and how it was trimmed
+	 */
+	private static class DummyRecycler implements Recycler {
+		DummyRecycler(String name, StringBuilder order) {
+			this.name = name;
+			this.order = order;
+		}
+
+		@Override
+		public void discardGarbage() {
+			discardGarbage(0);
+		}
+
+		@Override
+		public void discardGarbage(int maxRemaining) {
+			this.maxRemaining = maxRemaining;
+			order.append(name);
+		}
+
+		private final String name;
+		private final StringBuilder order;
+		int maxRemaining = -1;
+	}
+}
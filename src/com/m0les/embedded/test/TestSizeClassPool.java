@@ -0,0 +1,125 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+import com.m0les.embedded.SizeClassPool;
+import com.m0les.embedded.Statistics;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.SizeClassPool class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestSizeClassPool {
+
+	/**
+	 * Test the class lengths generated for plain powers of two and for finer classes.
+	 */
+	@Test
+	public void testClasses() {
+		assertEquals(4, SizeClassPool.bytes(50, 400, 1, 0).getClassLengths().length);
+		int[] lengths = SizeClassPool.bytes(50, 400, 1, 0).getClassLengths();
+		assertEquals(64, lengths[0]);
+		assertEquals(512, lengths[3]);
+		lengths = SizeClassPool.ints(64, 256, 4, 0).getClassLengths();
+		assertEquals(9, lengths.length);
+		assertEquals(64, lengths[0]);
+		assertEquals(80, lengths[1]);
+		assertEquals(112, lengths[3]);
+		assertEquals(128, lengths[4]);
+		assertEquals(160, lengths[5]);
+		assertEquals(256, lengths[8]);
+		try {
+			SizeClassPool.longs(10, 5, 1, 0);
+			fail("Accepted a maximum below the minimum");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test rounding, reuse and the rounding-waste figures.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testReuse() throws Exception {
+		SizeClassPool<long[]> pool = SizeClassPool.longs(16, 1024, 1, 0);
+		long[] array = pool.getArray(100);
+		assertEquals(128, array.length);
+		assertEquals(28 * 8, pool.getWastedBytes());
+		assertEquals(100 * 8, pool.getRequestedBytes());
+		pool.returnArray(array);
+		assertSame(array, pool.getArray(65));
+		assertEquals(91 * 8, pool.getWastedBytes());
+		assertEquals(5000, pool.getArray(5000).length);
+		assertEquals(1, pool.getOversizeCount());
+		pool.returnArray(new long[5000]);
+		pool.returnArray(new long[100]);
+		assertNull(pool.getSizeClass(5000));
+		assertEquals(1, pool.getSizeClass(128).getInstanceCount());
+	}
+
+	/**
+	 * Test per-class limits, statistics and trimming.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testLimitsAndTrim() throws Exception {
+		SizeClassPool<byte[]> pool = SizeClassPool.bytes(8, 64, 1, 2);
+		byte[] a = pool.getArray(8);
+		byte[] b = pool.getArray(7);
+		byte[] c = pool.getArray(64);
+		try {
+			pool.getArray(1);
+			fail("Exceeded a class limit");
+		} catch (PoolExhaustedException e) {
+			// Expected
+		}
+		pool.returnArray(a);
+		pool.returnArray(b);
+		pool.returnArray(c);
+		Statistics stats = new Statistics();
+		pool.getStatistics(stats);
+		assertEquals(3, stats.misses);
+		assertEquals(3, stats.returns);
+		assertEquals(1, stats.exhaustions);
+		assertEquals(3, stats.free);
+		assertEquals(8, stats.limit);
+		pool.discardGarbage(1);
+		pool.getStatistics(stats);
+		assertEquals(2, stats.free);
+		pool.discardGarbage();
+		pool.getStatistics(stats);
+		assertEquals(0, stats.instances);
+		assertArrayEquals(new byte[8], pool.getArray(8));
+	}
+}
@@ -0,0 +1,196 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.m0les.embedded.Pool.PoolExhaustedException;
+import com.m0les.embedded.SlabPool;
+import com.m0les.embedded.Statistics;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.SlabPool class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestSlabPool {
+
+	/**
+	 * Test that slices are direct, independent, fixed-size views and that a limited pool is exhausted.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testSlices() throws Exception {
+		SlabPool pool = new SlabPool(16, 2, 2);
+		SlabPool.Slice[] slices = new SlabPool.Slice[4];
+		for (int i = 0; i < 4; i++) {
+			slices[i] = pool.getInstance();
+			ByteBuffer buffer = slices[i].buffer();
+			assertTrue(buffer.isDirect());
+			assertEquals(16, buffer.capacity());
+			assertEquals(0, buffer.position());
+			buffer.putLong(0, i);
+		}
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, slices[i].buffer().getLong(0));
+		}
+		assertEquals(4, pool.getInstanceCount());
+		assertEquals(64, pool.getReservedBytes());
+		assertNull(pool.tryGetInstance());
+		try {
+			pool.getInstance();
+			fail("Exceeded the slab limit");
+		} catch (PoolExhaustedException e) {
+			// Expected
+		}
+		slices[2].buffer().put((byte) 1);
+		pool.returnInstance(slices[2]);
+		SlabPool.Slice again = pool.getInstance();
+		assertSame(slices[2], again);
+		assertEquals(0, again.buffer().position());
+	}
+
+	/**
+	 * Test that misuse of returned Slices is caught.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testMisuse() throws Exception {
+		SlabPool pool = new SlabPool(16, 2, 0);
+		SlabPool other = new SlabPool(16, 2, 0);
+		SlabPool.Slice slice = pool.getInstance();
+		try {
+			other.returnInstance(slice);
+			fail("Returned a Slice to the wrong pool");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		pool.returnInstance(slice);
+		try {
+			pool.returnInstance(slice);
+			fail("Returned a Slice twice");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		try {
+			new SlabPool(0, 1, 1);
+			fail("Accepted an empty slice size");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test that trimming releases whole free slabs (newest first) and never a partly-used one.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testDiscard() throws Exception {
+		SlabPool pool = new SlabPool(8, 4, 0);
+		SlabPool.Slice[] slices = new SlabPool.Slice[12];
+		for (int i = 0; i < 12; i++) {
+			slices[i] = pool.getInstance();
+		}
+		assertEquals(12, pool.getInstanceCount());
+		for (int i = 1; i < 12; i++) {
+			pool.returnInstance(slices[i]);
+		}
+		pool.discardGarbage(4);
+		assertEquals(8, pool.getInstanceCount());
+		pool.discardGarbage();
+		assertEquals(4, pool.getInstanceCount());
+		SlabPool.Slice slice = pool.getInstance();
+		assertNotSame(slices[0], slice);
+		pool.returnInstance(slice);
+		pool.returnInstance(slices[0]);
+		pool.discardGarbage();
+		assertEquals(0, pool.getInstanceCount());
+		assertEquals(0, pool.getReservedBytes());
+	}
+
+	/**
+	 * Test that trimming keeps the oldest free slabs when free and partly-used slabs are mixed.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testDiscardMixed() throws Exception {
+		SlabPool pool = new SlabPool(8, 2, 0);
+		SlabPool.Slice[] slices = new SlabPool.Slice[8];
+		for (int i = 0; i < 8; i++) {
+			slices[i] = pool.getInstance();
+		}
+		// Slabs 0 and 2 stay partly used, slabs 1 and 3 are all free
+		for (int i = 0; i < 8; i++) {
+			if (0 != i && 4 != i) {
+				pool.returnInstance(slices[i]);
+			}
+		}
+		pool.discardGarbage(4);
+		assertEquals(6, pool.getInstanceCount());
+		assertSame(slices[1], pool.getInstance());
+		SlabPool.Slice slice = pool.getInstance();
+		assertTrue(slices[2] == slice || slices[3] == slice);
+		pool.returnInstance(slice);
+		pool.returnInstance(slices[1]);
+		pool.returnInstance(slices[0]);
+		pool.returnInstance(slices[4]);
+		pool.discardGarbage();
+		assertEquals(0, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test the activity counters.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testStatistics() throws Exception {
+		SlabPool pool = new SlabPool(8, 2, 1);
+		Statistics stats = new Statistics();
+		SlabPool.Slice first = pool.getInstance();
+		SlabPool.Slice second = pool.getInstance();
+		assertNull(pool.tryGetInstance());
+		pool.returnInstance(first);
+		pool.getStatistics(stats);
+		assertEquals(1, stats.hits);
+		assertEquals(1, stats.misses);
+		assertEquals(1, stats.returns);
+		assertEquals(1, stats.exhaustions);
+		assertEquals(1, stats.free);
+		assertEquals(2, stats.highWater);
+		assertEquals(2, stats.instances);
+		assertEquals(2, stats.limit);
+		pool.returnInstance(second);
+	}
+}
@@ -6,12 +6,15 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.m0les.embedded.MagazinePool;
 import com.m0les.embedded.Pool.PoolExhaustedException;
+import com.m0les.embedded.Statistics;
 import com.m0les.embedded.Tree;
 import com.m0les.embedded.Tree.Node;
 
@@ -75,6 +78,100 @@ public class TestTree
 		assertEquals( 0, pool.getInstanceCount() );
 	}
 	
+	@Test
+	public void testConcurrentPool() throws Exception {
+		Tree.ConcurrentNodePool<String>pool = new Tree.ConcurrentNodePool<String>( 8 );
+		tree = new Tree<String>( pool );
+		DataNode[] nodeSrc = makeDataset( 8 );
+		insertSequence( nodeSrc );
+		assertSequence( nodeSrc );
+		assertEquals( 8, pool.getInstanceCount() );
+		tree.removeAll();
+		insertSequence( nodeSrc );
+		assertEquals( 8, pool.getInstanceCount() );
+		tree.removeAll();
+		pool.discardGarbage();
+		assertEquals( 0, pool.getInstanceCount() );
+	}
+	
+	@Test
+	public void testSealedPool() throws Exception {
+		Tree.NodePool<String>pool = new Tree.NodePool<String>();
+		assertEquals( 8, pool.prefill( 8 ) );
+		pool.seal( true );
+		tree = new Tree<String>( pool );
+		DataNode[] nodeSrc = makeDataset( 8 );
+		insertSequence( nodeSrc );
+		assertSequence( nodeSrc );
+		try {
+			tree.insert( 100, "Hundred" );
+			fail( "Sealed pool allocated a node" );
+		} catch( PoolExhaustedException e ) {
+			// Intended outcome
+		}
+		tree.removeAll();
+		insertSequence( nodeSrc );
+		assertEquals( 8, pool.getInstanceCount() );
+		assertNull( pool.getLastViolation() );
+	}
+	
+	@Test
+	public void testDetachAll() throws Exception {
+		final int SIZE = 1000;
+		Tree.NodePool<String>pool = new Tree.NodePool<String>();
+		tree = new Tree<String>( pool );
+		for( int i = 0; i < SIZE; i++ ){
+			tree.insert( i, "Value" + i );
+		}
+		tree.detachAll();
+		assertNull( tree.getFirst() );
+		tree.insert( -1, "Fresh" );
+		assertEquals( "Fresh", tree.find( -1 ).getValue() );
+		int steps = 0;
+		while( tree.recycleDetached( 10 ) ){
+			steps++;
+		}
+		assertTrue( steps < 2 * SIZE / 10 );
+		Statistics stats = new Statistics();
+		pool.getStatistics( stats );
+		assertEquals( SIZE, stats.free );
+		tree.insert( -2, "Again" );
+		tree.detachAll();
+		assertTrue( tree.recycleDetached( 1 ) );
+		assertTrue( !tree.recycleDetached( 1, TimeUnit.SECONDS ) );
+		pool.getStatistics( stats );
+		assertEquals( SIZE + 1, stats.free );
+	}
+	
+	@Test
+	public void testRemoveRecycles() throws Exception {
+		Tree.NodePool<String>pool = new Tree.NodePool<String>();
+		tree = new Tree<String>( pool );
+		DataNode[] nodeSrc = makeDataset( 8 );
+		insertSequence( nodeSrc );
+		for( int i = 0; i < nodeSrc.length; i++ ){
+			tree.remove( tree.find( nodeSrc[i].key ) );
+		}
+		Statistics stats = new Statistics();
+		pool.getStatistics( stats );
+		assertEquals( 8, stats.instances );
+		assertEquals( 8, stats.free );
+	}
+	
+	@Test
+	public void testMagazineRemoveClears() throws Exception {
+		tree = new Tree<String>( new MagazinePool<Node<String>.NodeLink>( new Tree.NodePool<String>(), 8 ) );
+		DataNode[] nodeSrc = makeDataset( 3 );
+		insertSequence( nodeSrc );
+		Node<String> first = tree.find( 1 );
+		Node<String> root = tree.find( 2 );
+		tree.remove( first );
+		assertNull( first.getValue() );
+		tree.removeAll();
+		assertNull( root.getValue() );
+		assertNull( getNode( root, GREATER_FIELD ) );
+	}
+	
 	@Test
 	public void testNoPoolGarbage() throws Exception {
 		final int SIZE = 8;
@@ -344,10 +441,30 @@ public class TestTree
 	@SuppressWarnings("unchecked")
 	private static Node<String> getNode( Object obj, String fieldName ) throws SecurityException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException
 	{
-		Field field = obj.getClass().getDeclaredField( fieldName );
+		Field field = findField( obj.getClass(), fieldName );
 		field.setAccessible( true );
 		return (Node<String>)field.get( obj );
 	}
+
+	/**
+	 * Find a declared field of a class or of one of its superclasses (The links and colouring of Trees are kept by the
+	 * AbstractTree engine they share).
+	 */
+	private static Field findField( Class<?> type, String fieldName ) throws NoSuchFieldException
+	{
+		for( Class<?> current = type; null != current; current = current.getSuperclass() )
+		{
+			try
+			{
+				return current.getDeclaredField( fieldName );
+			}
+			catch( NoSuchFieldException e )
+			{
+				// Try the superclass
+			}
+		}
+		throw new NoSuchFieldException( fieldName );
+	}
 	
 	private static boolean isPrime( Node<String> node ) throws SecurityException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException
 	{
@@ -355,7 +472,7 @@ public class TestTree
 		{
 			return false; // All leaf (null) nodes are not prime
 		}
-		Field field = Node.class.getDeclaredField( PRIME_FIELD );
+		Field field = findField( Node.class, PRIME_FIELD );
 		field.setAccessible( true );
 		return ( (Boolean)field.get( node ) ).booleanValue();
 	}
@@ -0,0 +1,188 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.m0les.embedded.ConcurrentPool;
+import com.m0les.embedded.Factory;
+import com.m0les.embedded.Link;
+import com.m0les.embedded.Pool;
+import com.m0les.embedded.Recycler;
+import com.m0les.embedded.TrimPolicy;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.TrimPolicy class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestTrimPolicy {
+
+	/**
+	 * Test that a pool keeps enough idle instances for a recent burst, then shrinks as demand falls away.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testFollowsDemand() throws Exception {
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory());
+		TrimPolicy policy = new TrimPolicy(pool, pool, 0.5, 0.0);
+		DummyLink[] links = new DummyLink[8];
+		pool.getInstances(links, 8);
+		pool.returnInstances(links, 8);
+		assertEquals(8, policy.tick());
+		assertEquals(8, pool.getInstanceCount());
+		// Quiet windows: the floor decays towards zero
+		assertEquals(4, policy.tick());
+		assertEquals(4, pool.getInstanceCount());
+		assertEquals(2, policy.tick());
+		assertEquals(2, pool.getInstanceCount());
+		// A burst inside a window is remembered even though it has ended by the tick
+		pool.getInstances(links, 6);
+		pool.returnInstances(links, 6);
+		assertEquals(4, policy.tick());
+		assertEquals(4, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test that a ConcurrentPool reports the peak of each window rather than a point sample, so a burst that has ended
+	 * by the tick is still remembered, and the next window starts from the number in use.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testConcurrentPoolWindow() throws Exception {
+		ConcurrentPool<DummyLink> pool = new ConcurrentPool<DummyLink>(new DummyLinkFactory());
+		TrimPolicy policy = new TrimPolicy(pool, pool, 1.0, 0.0);
+		DummyLink[] links = new DummyLink[8];
+		pool.getInstances(links, 8);
+		pool.returnInstances(links, 8);
+		assertEquals(8, policy.tick());
+		assertEquals(8, pool.getInstanceCount());
+		pool.getInstances(links, 2);
+		// Only the 2 in use now were in use during this window
+		assertEquals(0, policy.tick());
+		assertEquals(2, pool.getInstanceCount());
+		pool.getInstances(links, 5);
+		pool.returnInstances(links, 5);
+		// A burst to 7 in use that has ended by the tick, less the 2 still in use
+		assertEquals(5, policy.tick());
+		assertEquals(7, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test that instances still in use don't count as idle instances to keep.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testInUse() throws Exception {
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory());
+		TrimPolicy policy = new TrimPolicy(pool, pool, 1.0, 0.5);
+		DummyLink[] links = new DummyLink[8];
+		pool.getInstances(links, 8);
+		pool.returnInstances(links, 4);
+		// Peak of 8 plus 50% headroom, less the 4 still in use
+		assertEquals(8, policy.tick());
+		assertEquals(8, policy.getFloor());
+		assertEquals(8.0, policy.getEstimate(), 0.0);
+		assertEquals(8, pool.getInstanceCount());
+		for (int i = 4; i < 8; i++) {
+			pool.returnInstance(links[i]);
+		}
+		// Demand has dropped to 4, plus 50% headroom, with nothing in use
+		assertEquals(6, policy.tick());
+		assertEquals(6, pool.getInstanceCount());
+	}
+
+	/**
+	 * Test a plain (un-Metered) Recycler driven through observe().
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testObserve() throws Exception {
+		DummyRecycler recycler = new DummyRecycler();
+		TrimPolicy policy = new TrimPolicy(recycler, null, 1.0, 1.0);
+		policy.observe(10);
+		policy.observe(3);
+		assertEquals(17, policy.tick());
+		assertEquals(17, recycler.maxRemaining);
+		policy.observe(0);
+		assertEquals(6, policy.tick());
+		assertEquals(6, recycler.maxRemaining);
+	}
+
+	/**
+	 * Test that out-of-range parameters are refused.
+	 */
+	@Test
+	public void testArguments() {
+		try {
+			new TrimPolicy(new DummyRecycler(), null, 0.0, 0.0);
+			fail("Accepted a weight of zero");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		try {
+			new TrimPolicy(new DummyRecycler(), null, 0.5, -1.0);
+			fail("Accepted negative headroom");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * A Recycler that just records the last floor it was trimmed to
+	 */
+	private static class DummyRecycler implements Recycler {
+		@Override
+		public void discardGarbage() {
+			maxRemaining = 0;
+		}
+
+		@Override
+		public void discardGarbage(int maxRemaining) {
+			this.maxRemaining = maxRemaining;
+		}
+
+		int maxRemaining = -1;
+	}
+
+	/**
+	 * Factory for a Pool<DummyLink> to use to instantiate new DummyLink instances
+	 */
+	private static class DummyLinkFactory implements Factory<DummyLink> {
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+	}
+
+	/**
+	 * Dummy implementation of the Link<C> abstract class used for unit-tests.
+	 */
+	private static class DummyLink extends Link<DummyLink> {
+	}
+}
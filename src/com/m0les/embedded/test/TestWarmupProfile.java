@@ -0,0 +1,119 @@
+package com.m0les.embedded.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.junit.Test;
+
+import com.m0les.embedded.Factory;
+import com.m0les.embedded.Link;
+import com.m0les.embedded.Pool;
+import com.m0les.embedded.Statistics;
+import com.m0les.embedded.WarmupProfile;
+
+/**
+ * A suite of unit and coverage tests for the com.m0les.embedded.WarmupProfile class
+ * 
+ * @author Miles Goodhew
+ * @version $Id$
+ */
+
+/* LICENSE (2-clause BSD):
+ * Copyright (c) 2011, Miles "M0les" Goodhew
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the distribution.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class TestWarmupProfile {
+
+	/**
+	 * Test that marks captured in one run are stored, loaded and used to prefill pools in the next.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		File file = File.createTempFile("warmup", ".properties");
+		assertTrue(file.delete());
+		try {
+			WarmupProfile profile = new WarmupProfile();
+			assertFalse(profile.load(file));
+			Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory());
+			Pool<DummyLink> idle = new Pool<DummyLink>(new DummyLinkFactory());
+			profile.register("busy", pool);
+			profile.register("idle", idle);
+			DummyLink[] links = new DummyLink[5];
+			pool.getInstances(links, 5);
+			pool.returnInstances(links, 5);
+			profile.capture();
+			profile.store(file);
+			profile.store(file);
+
+			WarmupProfile next = new WarmupProfile(0.5);
+			assertTrue(next.load(file));
+			assertEquals(5, next.getMark("busy"));
+			assertEquals(0, next.getMark("idle"));
+			Pool<DummyLink> restarted = new Pool<DummyLink>(new DummyLinkFactory(), 7);
+			next.register("busy", restarted);
+			assertEquals(7, next.warm());
+			restarted.getInstances(links, 5);
+			Statistics stats = new Statistics();
+			restarted.getStatistics(stats);
+			assertEquals(0, stats.misses);
+			assertEquals(5, stats.hits);
+			restarted.returnInstances(links, 5);
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test that unreadable marks are ignored and that sealed pools aren't prefilled.
+	 * 
+	 * @throws Exception should never occur and will fail test
+	 */
+	@Test
+	public void testBadMarks() throws Exception {
+		WarmupProfile profile = new WarmupProfile();
+		profile.load(new ByteArrayInputStream("a=lots\nb=-3\nc= 4\n".getBytes("ISO-8859-1")));
+		assertEquals(0, profile.getMark("a"));
+		assertEquals(0, profile.getMark("b"));
+		assertEquals(4, profile.getMark("c"));
+		Pool<DummyLink> pool = new Pool<DummyLink>(new DummyLinkFactory());
+		pool.seal(true);
+		profile.register("c", pool);
+		assertEquals(0, profile.warm());
+	}
+
+	/**
+	 * Dummy implementation of the Factory<C> interface used for unit-tests.
+	 */
+	private static class DummyLinkFactory implements Factory<DummyLink> {
+		@Override
+		public DummyLink newInstance() {
+			return new DummyLink();
+		}
+	}
+
+	/**
+	 * Dummy implementation of the Link<C> abstract class used for unit-tests.
+	 */
+	private static class DummyLink extends Link<DummyLink> {
+	}
+}